@@ -0,0 +1,48 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.json.pojo.SmartPropertyListInfo;
+import org.bitcoinj.base.BitcoinNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OmniPropertyListCache#getPlaceholderIds()}, which is called on every placeholder-loading timer tick
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OmniPropertyListCacheBenchmark {
+    // Roughly the number of properties on MainNet
+    @Param({"2000"})
+    public int properties;
+    private OmniPropertyListCache cache;
+
+    @Setup
+    public void setup() {
+        cache = new OmniPropertyListCache(BitcoinNetwork.MAINNET);
+        for (long id = 1; id <= properties; id++) {
+            cache.cachePutIfNew(new SmartPropertyListInfo(CurrencyID.of(id), "Property " + id, "", "", "", "", true));
+        }
+    }
+
+    @Benchmark
+    public List<CurrencyID> getPlaceholderIds() {
+        return cache.getPlaceholderIds();
+    }
+}
@@ -0,0 +1,103 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.HttpResponse;
+import io.reactivex.rxjava3.core.Flowable;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request paths that don't reach the upstream server: a {@link CachedRpcService} hit (rendered into an
+ * HTTP response) and an {@link ExtraRpcRegistry} method. The proxy runs in an {@link ApplicationContext}
+ * (without the HTTP server) against a local stub that is only called to fill the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyServiceBenchmark {
+    private HttpServer stub;
+    private ApplicationContext context;
+    private RxJsonRpcProxyService service;
+    private ExtraRpcRegistry extraRpcRegistry;
+    private final JsonRpcRequest cachedRequest = new JsonRpcRequest("getblockcount");
+    private final JsonRpcRequest extraRequest = new JsonRpcRequest("btcproxy.proxyinfo");
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        stub = startStub();
+        context = ApplicationContext.run(Map.of(
+                "btcproxyd.rpcproxy.network-id", "org.bitcoin.regtest",
+                "btcproxyd.rpcproxy.uri", "http://127.0.0.1:" + stub.getAddress().getPort()));
+        service = context.getBean(RxJsonRpcProxyService.class);
+        extraRpcRegistry = context.getBean(ExtraRpcRegistry.class);
+        // Fill the cache
+        cachedHit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        stub.stop(0);
+    }
+
+    @Benchmark
+    public HttpResponse<?> cachedHit() {
+        return Flowable.fromPublisher(service.rpcProxy(cachedRequest, false)).blockingFirst();
+    }
+
+    @Benchmark
+    public Object extraInvoke() {
+        return extraRpcRegistry.invoke(extraRequest).blockingGet();
+    }
+
+    @Benchmark
+    public HttpResponse<?> extraRendered() {
+        return Flowable.fromPublisher(service.rpcProxy(extraRequest, false)).blockingFirst();
+    }
+
+    // Answers getchaintips with a fixed tip, and every other method with 1
+    private static HttpServer startStub() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            String result = request.path("method").asText().equals("getchaintips")
+                    ? "[{\"height\":100,\"hash\":\"0f9188f13cb7b2c71f2a335e3a4fc328bf5beb436012afca590b1a11466e2206\",\"branchlen\":0,\"status\":\"active\"}]"
+                    : "1";
+            byte[] body = ("{\"result\":" + result + ",\"error\":null,\"id\":" + request.path("id") + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,54 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserializing a request into a {@link JsonRpcRequest} versus scanning it with {@link ScannedRequest}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestParsingBenchmark {
+    @Param({
+            "{\"jsonrpc\":\"1.0\",\"id\":\"1\",\"method\":\"getblockcount\",\"params\":[]}",
+            "{\"jsonrpc\":\"2.0\",\"id\":42,\"method\":\"getblock\",\"params\":[\"00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054\",2]}"
+    })
+    public String json;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        body = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonRpcRequest deserialize() throws IOException {
+        return mapper.readValue(body, JsonRpcRequest.class);
+    }
+
+    @Benchmark
+    public Optional<ScannedRequest> scan() {
+        return ScannedRequest.scan(mapper.getFactory(), body);
+    }
+}
@@ -0,0 +1,52 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup (including the permission check) for permitted, denied and unknown methods
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    // The default allow list
+    private static final List<String> allowList = List.of("getblockcount", "getbestblockhash", "getblock",
+            "getblockchaininfo", "getblockhash", "getblockheader", "getblockstats", "getchaintips", "getchaintxstats",
+            "getdifficulty", "gettxout", "gettxoutproof", "verifytxoutproof", "getmemoryinfo", "getrpcinfo", "uptime",
+            "getconnectioncount", "getnettotals", "getnetworkinfo", "btcproxy.help", "btcproxy.proxyinfo");
+    @Param({"getblockcount", "getnetworkinfo", "stop", "unknownmethod"})
+    public String method;
+    private RouteTable table;
+
+    @Setup
+    public void setup() {
+        table = RouteTable.build(allowList, List.of("btcproxy.help", "btcproxy.proxyinfo"), List.of("gettxoutproof"), true, Map.of());
+    }
+
+    @Benchmark
+    public MethodRoute route() {
+        return table.route(method);
+    }
+
+    @Benchmark
+    public boolean permitted() {
+        return table.route(method).handler() != MethodRoute.Handler.DENIED;
+    }
+}
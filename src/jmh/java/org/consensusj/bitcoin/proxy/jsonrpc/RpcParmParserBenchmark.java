@@ -0,0 +1,52 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import org.bitcoinj.base.Address;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RpcParmParser} conversions, as used by the extra RPC methods
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcParmParserBenchmark {
+    public Object intNumber = 31;
+    public Object intString = "31";
+    public Object address = "1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2";
+    public List<Object> addresses = List.of("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2", "3J98t1WpEZ73CNmQviecrnyiWrnqRhWNLy",
+            "bc1qar0srrr7xfkvy5l643lydnw9re59gtzzwf5mdq");
+
+    @Benchmark
+    public int parmToIntFromNumber() {
+        return RpcParmParser.parmToInt(intNumber);
+    }
+
+    @Benchmark
+    public int parmToIntFromString() {
+        return RpcParmParser.parmToInt(intString);
+    }
+
+    @Benchmark
+    public Address parmToAddress() {
+        return RpcParmParser.parmToAddress(address);
+    }
+
+    @Benchmark
+    public List<Address> parmsToAddressList() {
+        return RpcParmParser.parmsToAddressList(addresses);
+    }
+}
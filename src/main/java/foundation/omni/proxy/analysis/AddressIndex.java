@@ -0,0 +1,55 @@
+package foundation.omni.proxy.analysis;
+
+import org.bitcoinj.base.Address;
+import org.bitcoinj.base.DefaultAddressParser;
+import org.bitcoinj.base.Network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each address an {@code int} so {@link RichListSnapshot}s can refer to holders without an object
+ * per holder. Each address is stored once, however many snapshots refer to it. Addresses are never removed.
+ */
+final class AddressIndex {
+    private final Network network;
+    private final DefaultAddressParser parser = new DefaultAddressParser();
+    // Both guarded by this
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> addresses = new ArrayList<>();
+
+    AddressIndex(Network network) {
+        this.network = network;
+    }
+
+    synchronized int idOf(String address) {
+        Integer id = ids.get(address);
+        if (id == null) {
+            id = addresses.size();
+            addresses.add(address);
+            ids.put(address, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param ids address ids
+     * @return the addresses
+     */
+    List<Address> addresses(int[] ids) {
+        String[] strings = new String[ids.length];
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                strings[i] = addresses.get(ids[i]);
+            }
+        }
+        return Arrays.stream(strings).map(s -> (Address) parser.parseAddress(s, network)).toList();
+    }
+
+    synchronized int size() {
+        return addresses.size();
+    }
+}
@@ -1,36 +1,62 @@
 package foundation.omni.proxy.analysis;
 
+import foundation.omni.CurrencyID;
+import foundation.omni.OmniValue;
 import foundation.omni.rpc.OmniClient;
+import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.processors.BehaviorProcessor;
 import org.consensusj.analytics.service.RichListService;
 import org.consensusj.analytics.service.TokenRichList;
 import org.consensusj.bitcoin.json.pojo.ChainTip;
+import org.consensusj.bitcoin.proxy.jsonrpc.ChainGeneration;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Caching wrapper for RichListService.
+ * Caching RichListService.
  * This should not be a Singleton, (for now) it must be constructed in {@link OmniAnalysisFactory}
+ * <p>
+ * A {@link RichListSnapshot} of all holders is cached per property and {@link ChainGeneration}: a new best block
+ * (or reorg) supersedes them, and a fetch that completes after a newer generation has arrived can't replace the
+ * newer generation's entry. Rich lists of any size, and pages of holders, are served from the snapshot.
+ * <p>
+ * {@link #richListUpdates} is a shared, hot publisher per ID that fetches (through the cache) on each new block and
+ * only emits when the list has changed, so subscribers cause no upstream requests between blocks.
  */
-public class CachedRichListService<N extends Number & Comparable<? super N>, ID> implements RichListService<N, ID> {
+public class CachedRichListService implements RichListService<OmniValue, CurrencyID> {
     private static final Logger log = LoggerFactory.getLogger(CachedRichListService.class);
-    private final RichListService<N, ID> uncachedService;
+    private final RichListSnapshotSource snapshotSource;
     private final OmniClient jsonRpc;
-    private final List<ID> eager;
-    private final ConcurrentHashMap<ID, Single<TokenRichList<N, ID>>> cache = new ConcurrentHashMap<>();
-    private final int cacheSize = 12;
+    private final List<CurrencyID> eager;
+    private final ProxyMetrics metrics;
+    private final Timer refreshTimer;
+    private final ConcurrentHashMap<CurrencyID, Slot> cache = new ConcurrentHashMap<>();
+    // Only updated by the ChainTip subscription
+    private final AtomicReference<ChainGeneration> generation = new AtomicReference<>(ChainGeneration.INITIAL);
+    private final BehaviorProcessor<ChainGeneration> generations = BehaviorProcessor.create();
+    private final ConcurrentHashMap<CurrencyID, Flowable<RichListSnapshot>> updates = new ConcurrentHashMap<>();
     private Disposable chainTipSubscription;
+    /**
+     * Maximum entries in a rich list or page
+     */
+    public static final int maxEntries = 10_000;
 
-    public CachedRichListService(RichListService<N, ID> uncachedService, OmniClient omniClient, List<ID> eager) {
-        this.uncachedService = uncachedService;
+    public CachedRichListService(RichListSnapshotSource snapshotSource, OmniClient omniClient, List<CurrencyID> eager, ProxyMetrics metrics) {
+        this.snapshotSource = snapshotSource;
         this.jsonRpc = omniClient;
         this.eager = eager;
+        this.metrics = metrics;
+        refreshTimer = metrics.refreshTimer("richlist");
     }
 
     public synchronized void start() {
@@ -41,14 +67,51 @@ public class CachedRichListService<N extends Number & Comparable<? super N>, ID>
     }
 
     @Override
-    public Single<TokenRichList<N, ID>> richList(ID id, int i) {
-        if (i > cacheSize) throw new IllegalArgumentException("too big");
-        return fetch(id);
+    public Single<TokenRichList<OmniValue, CurrencyID>> richList(CurrencyID id, int i) {
+        if (i > maxEntries) return Single.error(new IllegalArgumentException("too big"));
+        return fetch(id).map(s -> s.top(i));
+    }
+
+    /**
+     * @param id currency ID
+     * @param offset index of the first holder (0 is the largest)
+     * @param limit maximum number of holders
+     * @return a page of the rich list
+     */
+    public Single<RichListSnapshot.RichListPage> richListPage(CurrencyID id, int offset, int limit) {
+        if (limit > maxEntries) return Single.error(new IllegalArgumentException("too big"));
+        return fetch(id).map(s -> s.page(offset, limit));
+    }
+
+    /**
+     * @param id currency ID
+     * @return {@code true} if the currency's rich list is fetched on every new block anyway
+     */
+    public boolean isTracked(CurrencyID id) {
+        return eager.contains(id);
     }
 
+    /**
+     * @param id currency ID
+     * @param i number of entries
+     * @return a publisher that sends the current rich list and then a new rich list when a block changes it.
+     * Subscribers to a currency share a subscription to the snapshots, which stays connected while it has subscribers.
+     */
     @Override
-    public Publisher<TokenRichList<N, ID>> richListUpdates(ID id, int i) {
-        throw new UnsupportedOperationException("this service is incubating and this method isn't available yet.");
+    public Publisher<TokenRichList<OmniValue, CurrencyID>> richListUpdates(CurrencyID id, int i) {
+        if (i > maxEntries) throw new IllegalArgumentException("too big");
+        return updates.computeIfAbsent(id, this::updatesOf)
+                .distinctUntilChanged((a, b) -> a.sameTop(b, i))
+                .map(s -> s.top(i));
+    }
+
+    private Flowable<RichListSnapshot> updatesOf(CurrencyID id) {
+        return generations
+                .onBackpressureLatest()
+                // A newer block cancels a fetch in progress, a failed fetch is skipped until the next block
+                .switchMapMaybe(g -> fetch(id).toMaybe().onErrorComplete())
+                .replay(1)
+                .refCount();
     }
 
     private void onError(Throwable t) {
@@ -56,29 +119,58 @@ public class CachedRichListService<N extends Number & Comparable<? super N>, ID>
     }
 
     /**
-     * On a new block, invalidate the cache and initiate fetch requests for the Currency IDs on
-     * the "eager" list.
+     * On a new best block, drop superseded entries and initiate fetch requests for the Currency IDs on
+     * the "eager" list. Repeated tips are ignored.
      * 
-     * @param tip the new ChainTip (currently unused)
+     * @param tip the new ChainTip
      */
     private void onNewBlock(ChainTip tip) {
-        log.info("New Block: clearing cache & starting eager fetch");
-        cache.clear();
+        long start = System.nanoTime();
+        ChainGeneration previous = generation.get();
+        ChainGeneration next = previous.next(tip);
+        if (next == previous) {
+            return;
+        }
+        generation.set(next);
+        log.info("New Block {}: dropping superseded entries & starting eager fetch", next.height());
+        cache.values().removeIf(slot -> next.isNewerThan(slot.generation()));
         eager.forEach(id ->
             this.fetch(id).subscribe((r) -> {} , this::onError)
         );
+        generations.onNext(next);
+        metrics.chainTipHandled("richlist", tip, start);
     }
 
-    private Single<TokenRichList<N, ID>> fetch(ID id) {
-        return cache.computeIfAbsent(id, key -> {
-            log.info("Fetching {}", id);
-            return uncachedService.richList(id, cacheSize)
-                    .doOnError(t -> log.error("Got an error from upstream", t))
-                    .doOnSuccess(r -> log.info("got rich list from upstream {}", r.getCurrencyID()))
-                    .cache();
-        })
-        .doOnError(t -> log.error("Error reading from richList cache", t))
-        .doOnSuccess(r -> log.info("pulled from cache {}", r.getCurrencyID()));
+    private Single<RichListSnapshot> fetch(CurrencyID id) {
+        ChainGeneration current = generation.get();
+        // Keep an entry for the current (or a newer) generation, otherwise replace it
+        return cache.compute(id, (key, existing) -> existing != null && !current.isNewerThan(existing.generation())
+                    ? existing
+                    : load(key, current))
+        .snapshot()
+        .doOnError(t -> log.error("Error reading from richList cache", t));
     }
 
+    private Slot load(CurrencyID id, ChainGeneration requested) {
+        log.info("Fetching {}", id);
+        // Reference to the cached Slot, so it (and not a newer entry) can be removed on error
+        AtomicReference<Slot> self = new AtomicReference<>();
+        long start = System.nanoTime();
+        Single<RichListSnapshot> snapshot = snapshotSource.snapshot(id)
+                .doOnSuccess(r -> refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .doOnError(t -> {
+                    log.error("Got an error from upstream", t);
+                    cache.remove(id, self.get());
+                })
+                .doOnSuccess(r -> log.info("got {} holders of {} from upstream", r.size(), r.currencyID()))
+                .cache();
+        self.set(new Slot(requested, snapshot));
+        return self.get();
+    }
+
+    /**
+     * @param generation the generation the snapshot was requested for
+     * @param snapshot the (possibly in-flight) snapshot
+     */
+    private record Slot(ChainGeneration generation, Single<RichListSnapshot> snapshot) {}
 }
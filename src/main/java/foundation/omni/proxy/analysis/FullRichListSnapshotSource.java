@@ -0,0 +1,68 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.rpc.OmniClient;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.bitcoinj.base.Sha256Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds each snapshot from all holders of the property ({@code omni_getallbalancesforid})
+ */
+public class FullRichListSnapshotSource implements RichListSnapshotSource {
+    private static final Logger log = LoggerFactory.getLogger(FullRichListSnapshotSource.class);
+    private final OmniClient client;
+    private final AddressIndex index;
+
+    FullRichListSnapshotSource(OmniClient client, AddressIndex index) {
+        this.client = client;
+        this.index = index;
+    }
+
+    @Override
+    public Single<RichListSnapshot> snapshot(CurrencyID id) {
+        return Single.fromCallable(() -> {
+                    int height = client.send("getblockcount", Integer.class);
+                    String hash = client.send("getblockhash", String.class, height);
+                    log.info("Fetching all holders of {}", id);
+                    return RichListSnapshot.of(id, isDivisible(client, id), height, Sha256Hash.wrap(hash), index,
+                            holders(client, id));
+                })
+                .subscribeOn(Schedulers.io());
+    }
+
+    static boolean isDivisible(OmniClient client, CurrencyID id) throws IOException {
+        return Boolean.TRUE.equals(client.send("omni_getproperty", Map.class, id.getValue()).get("divisible"));
+    }
+
+    /**
+     * @param client client for the Omni Core node
+     * @param id property
+     * @return the total (balance plus reserved) by address of every holder
+     */
+    static Map<String, BigDecimal> holders(OmniClient client, CurrencyID id) throws IOException {
+        List<?> balances = client.send("omni_getallbalancesforid", List.class, id.getValue());
+        Map<String, BigDecimal> holders = new HashMap<>(balances.size() * 2);
+        for (Object entry : balances) {
+            Map<?, ?> balance = (Map<?, ?>) entry;
+            holders.put((String) balance.get("address"), total(balance));
+        }
+        return holders;
+    }
+
+    /**
+     * @param balance an {@code omni_getbalance} result (or an entry of {@code omni_getallbalancesforid})
+     * @return balance plus amounts reserved by DEx and MetaDEx offers
+     */
+    static BigDecimal total(Map<?, ?> balance) {
+        return new BigDecimal((String) balance.get("balance")).add(new BigDecimal((String) balance.get("reserved")));
+    }
+}
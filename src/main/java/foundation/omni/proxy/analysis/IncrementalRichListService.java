@@ -0,0 +1,285 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.rpc.OmniClient;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot source that keeps every holder's balance of the tracked properties in memory and, on each new block,
+ * re-reads only the balances of the addresses involved in that block's Omni transactions. All holders are fetched
+ * (with {@code omni_getallbalancesforid}) only on startup, after a reorg deeper than the journal, for transaction
+ * types that can change the balances of uninvolved addresses (e.g. send-to-owners, MetaDEx trades), and when the
+ * sum of the balances doesn't match the property's total tokens.
+ * <p>
+ * A journal of the addresses touched by each recent block makes reorgs cheap: the addresses touched by the
+ * disconnected blocks are re-read along with those of the new blocks. Balances are read at the node's tip,
+ * so a block arriving mid-update is picked up (again) on the next update.
+ * <p>
+ * Requests for properties that aren't tracked are passed to the full source.
+ */
+public class IncrementalRichListService implements RichListSnapshotSource {
+    private static final Logger log = LoggerFactory.getLogger(IncrementalRichListService.class);
+    /** Transaction types that only change the balances of their sending and reference addresses */
+    static final Set<Integer> localTxTypes = Set.of(
+            0,      // Simple send (including crowdsale purchases)
+            4,      // Send all
+            20,     // DEx sell offer
+            22,     // DEx accept
+            50, 51, 54, // Create property (fixed, crowdsale, managed)
+            53,     // Close crowdsale
+            55,     // Grant
+            56,     // Revoke
+            70,     // Change issuer
+            185, 186);  // Freeze, unfreeze
+    private final OmniClient client;
+    private final RichListSnapshotSource fullSource;
+    private final AddressIndex index;
+    private final List<CurrencyID> tracked;
+    private final int maxReorgDepth;
+    private final Timer fullTimer;
+    // All state is confined to this single thread
+    private final Scheduler scheduler = Schedulers.from(Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "incremental-richlist");
+        thread.setDaemon(true);
+        return thread;
+    }));
+    private final Map<CurrencyID, Holdings> holdings = new HashMap<>();
+    // Recent blocks, oldest first, the last entry is the block the holdings are at
+    private final ArrayDeque<JournalEntry> journal = new ArrayDeque<>();
+
+    /**
+     * @param client client for the Omni Core node
+     * @param fullSource source for properties that aren't tracked
+     * @param index index to add holders to
+     * @param tracked properties to maintain incrementally
+     * @param maxReorgDepth blocks to keep in the journal, deeper reorgs cause a full fetch
+     * @param metrics metrics
+     */
+    IncrementalRichListService(OmniClient client, RichListSnapshotSource fullSource, AddressIndex index,
+                               List<CurrencyID> tracked, int maxReorgDepth, ProxyMetrics metrics) {
+        this.client = client;
+        this.fullSource = fullSource;
+        this.index = index;
+        this.tracked = List.copyOf(tracked);
+        this.maxReorgDepth = Math.max(maxReorgDepth, 1);
+        fullTimer = metrics.refreshTimer("richlist-full");
+    }
+
+    @Override
+    public Single<RichListSnapshot> snapshot(CurrencyID id) {
+        if (!tracked.contains(id)) {
+            return fullSource.snapshot(id);
+        }
+        return Single.fromCallable(() -> {
+                    update();
+                    return holdings.get(id).snapshot();
+                })
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Bring the holdings up to the node's current tip
+     */
+    private void update() throws IOException {
+        int tip = send("getblockcount", Integer.class);
+        if (journal.isEmpty()) {
+            fetchAll(tip);
+            return;
+        }
+        if (journal.getLast().height() == tip && journal.getLast().hash().equals(blockHash(tip))) {
+            return;
+        }
+        try {
+            update(tip);
+        } catch (IOException | RuntimeException e) {
+            // The journal may record blocks whose balances weren't re-read, so fetch all holders next time
+            journal.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Disconnect and connect blocks up to {@code tip} and re-read the balances they touch
+     */
+    private void update(int tip) throws IOException {
+        Set<String> touched = new HashSet<>();
+        Set<CurrencyID> refetch = new HashSet<>();
+        // Disconnect blocks that are no longer in the best chain
+        while (!journal.isEmpty() && (journal.getLast().height() > tip
+                || !journal.getLast().hash().equals(blockHash(journal.getLast().height())))) {
+            JournalEntry disconnected = journal.removeLast();
+            log.info("Block {} {} disconnected", disconnected.height(), disconnected.hash());
+            touched.addAll(disconnected.addresses());
+            refetch.addAll(disconnected.refetch());
+        }
+        if (journal.isEmpty()) {
+            log.warn("Reorg deeper than {} blocks", maxReorgDepth);
+            fetchAll(tip);
+            return;
+        }
+        // Connect the new blocks
+        for (int height = journal.getLast().height() + 1; height <= tip; height++) {
+            JournalEntry connected = readBlock(height);
+            touched.addAll(connected.addresses());
+            refetch.addAll(connected.refetch());
+            journal.addLast(connected);
+            if (journal.size() > maxReorgDepth) {
+                journal.removeFirst();
+            }
+        }
+        if (refetch.contains(null)) {
+            fetchAll(tip);
+            return;
+        }
+        for (CurrencyID id : tracked) {
+            Holdings h = holdings.get(id);
+            if (refetch.contains(id)) {
+                holdings.put(id, fetch(id));
+            } else {
+                for (String address : touched) {
+                    h.put(address, balance(address, id));
+                }
+                if (!h.isConsistent(totalTokens(id))) {
+                    log.warn("Holdings of {} don't add up to the total tokens, fetching all", id);
+                    holdings.put(id, fetch(id));
+                }
+            }
+            holdings.get(id).at(tip, journal.getLast().hash());
+        }
+        log.info("Updated rich lists to block {}, {} addresses touched", tip, touched.size());
+    }
+
+    private void fetchAll(int tip) throws IOException {
+        String hash = blockHash(tip);
+        for (CurrencyID id : tracked) {
+            Holdings h = fetch(id);
+            h.at(tip, hash);
+            holdings.put(id, h);
+        }
+        journal.clear();
+        journal.addLast(new JournalEntry(tip, hash, Set.of(), Set.of()));
+    }
+
+    /**
+     * Read the Omni transactions in a block
+     *
+     * @param height block height
+     * @return the addresses they touch and the properties that must be fetched in full ({@code null} for all)
+     */
+    private JournalEntry readBlock(int height) throws IOException {
+        Set<String> addresses = new HashSet<>();
+        Set<CurrencyID> refetch = new HashSet<>();
+        List<?> txids = send("omni_listblocktransactions", List.class, height);
+        for (Object txid : txids) {
+            Map<?, ?> tx = send("omni_gettransaction", Map.class, txid);
+            if (!Boolean.TRUE.equals(tx.get("valid"))) {
+                continue;
+            }
+            addAddress(addresses, tx.get("sendingaddress"));
+            addAddress(addresses, tx.get("referenceaddress"));
+            if (!(tx.get("type_int") instanceof Integer type) || !localTxTypes.contains(type)) {
+                List<CurrencyID> involved = PropertyChangeScanner.propertiesOf(tx);
+                if (involved.isEmpty()) {
+                    refetch.add(null);
+                } else {
+                    refetch.addAll(involved);
+                }
+            }
+        }
+        return new JournalEntry(height, blockHash(height), addresses, refetch);
+    }
+
+    private Holdings fetch(CurrencyID id) throws IOException {
+        log.info("Fetching all holders of {}", id);
+        long start = System.nanoTime();
+        Holdings h = new Holdings(id, FullRichListSnapshotSource.isDivisible(client, id));
+        FullRichListSnapshotSource.holders(client, id).forEach(h::put);
+        fullTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return h;
+    }
+
+    private BigDecimal balance(String address, CurrencyID id) throws IOException {
+        return FullRichListSnapshotSource.total(send("omni_getbalance", Map.class, address, id.getValue()));
+    }
+
+    private BigDecimal totalTokens(CurrencyID id) throws IOException {
+        return new BigDecimal((String) send("omni_getproperty", Map.class, id.getValue()).get("totaltokens"));
+    }
+
+    private String blockHash(int height) throws IOException {
+        return send("getblockhash", String.class, height);
+    }
+
+    private <R> R send(String method, Class<R> resultType, Object... params) throws IOException {
+        return client.send(method, resultType, params);
+    }
+
+    private static void addAddress(Set<String> addresses, Object address) {
+        if (address instanceof String s && !s.isEmpty()) {
+            addresses.add(s);
+        }
+    }
+
+    /**
+     * @param height block height
+     * @param hash block hash
+     * @param addresses addresses touched by the block's Omni transactions
+     * @param refetch properties that must be fetched in full ({@code null} element for all)
+     */
+    private record JournalEntry(int height, String hash, Set<String> addresses, Set<CurrencyID> refetch) {}
+
+    /**
+     * Balances of all holders of a property
+     */
+    private final class Holdings {
+        private final CurrencyID id;
+        private final boolean divisible;
+        private final Map<String, BigDecimal> balances = new HashMap<>();
+        private long height;
+        private Sha256Hash hash;
+
+        Holdings(CurrencyID id, boolean divisible) {
+            this.id = id;
+            this.divisible = divisible;
+        }
+
+        void put(String address, BigDecimal balance) {
+            if (balance.signum() == 0) {
+                balances.remove(address);
+            } else {
+                balances.put(address, balance);
+            }
+        }
+
+        void at(long height, String hash) {
+            this.height = height;
+            this.hash = Sha256Hash.wrap(hash);
+        }
+
+        boolean isConsistent(BigDecimal totalTokens) {
+            return balances.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add).compareTo(totalTokens) == 0;
+        }
+
+        RichListSnapshot snapshot() {
+            return RichListSnapshot.of(id, divisible, height, hash, index, balances);
+        }
+    }
+}
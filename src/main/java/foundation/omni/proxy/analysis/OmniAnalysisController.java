@@ -3,28 +3,158 @@ package foundation.omni.proxy.analysis;
 import foundation.omni.CurrencyID;
 import foundation.omni.OmniValue;
 import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Error;
 import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Header;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.hateoas.JsonError;
+import io.micronaut.http.sse.Event;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
-import org.consensusj.analytics.service.RichListService;
 import org.consensusj.analytics.service.TokenRichList;
+import org.consensusj.bitcoin.proxy.jsonrpc.EntityTags;
+import org.consensusj.bitcoin.proxy.jsonrpc.HttpCachePolicy;
+
+import java.util.Locale;
 
 /**
- * Simple controller to expose REST API for an Omni rich list.
+ * Simple controller to expose REST API for Omni rich lists (of any size, or by page), a Server-Sent Events stream
+ * of their updates, and the property list.
  */
 @Controller("/omni/analysis")
 @Requires(property="omniproxyd.enabled", value = "true")
 public class OmniAnalysisController {
-    private final int richListSize = 12;
-    private final RichListService<OmniValue, CurrencyID> richListService;
+    static final String defaultRichListSize = "12";
+    private final CachedRichListService richListService;
+    private final OmniPropertyListService propertyListService;
+    private final HttpCachePolicy httpCachePolicy;
 
-    public OmniAnalysisController(CachedRichListService<OmniValue, CurrencyID> richListService) {
+    public OmniAnalysisController(CachedRichListService richListService, OmniPropertyListService propertyListService,
+                                  HttpCachePolicy httpCachePolicy) {
         this.richListService = richListService;
+        this.propertyListService = propertyListService;
+        this.httpCachePolicy = httpCachePolicy;
+    }
+
+    /**
+     * @param currencyId currency ID
+     * @param size number of entries (at most {@value CachedRichListService#maxEntries})
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @return the largest holders (a {@link TokenRichList}), tagged with the block they are for
+     */
+    @Get(uri="/richlist/{currencyId}{?size}", produces = MediaType.APPLICATION_JSON)
+    public Single<HttpResponse<?>> richList(int currencyId,
+                                            @QueryValue(defaultValue = defaultRichListSize) int size,
+                                            @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        return richListService.richList(CurrencyID.of(currencyId), size)
+                .map(list -> httpCachePolicy.atBlock(list.getBlockHash(), ifNoneMatch, list));
+    }
+
+    /**
+     * @param currencyId currency ID
+     * @param offset index of the first holder (0 is the largest)
+     * @param limit maximum number of holders (at most {@value CachedRichListService#maxEntries})
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @return a page of holders, largest first (a {@link RichListSnapshot.RichListPage}), tagged with the block
+     * they are for
+     */
+    @Get(uri="/richlist/{currencyId}/holders{?offset,limit}", produces = MediaType.APPLICATION_JSON)
+    public Single<HttpResponse<?>> richListPage(int currencyId,
+                                                @QueryValue(defaultValue = "0") int offset,
+                                                @QueryValue(defaultValue = "100") int limit,
+                                                @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        return richListService.richListPage(CurrencyID.of(currencyId), offset, limit)
+                .map(page -> httpCachePolicy.atBlock(page.blockHash(), ifNoneMatch, page));
+    }
+
+    /**
+     * @param currencyId currency ID
+     * @param size number of entries (at most {@value CachedRichListService#maxEntries})
+     * @return the current rich list, and then a new one each time a block changes it
+     */
+    @Get(uri="/richlist/{currencyId}/updates{?size}", produces = MediaType.TEXT_EVENT_STREAM)
+    public Flowable<Event<TokenRichList<OmniValue, CurrencyID>>> richListUpdates(int currencyId,
+                                                                                @QueryValue(defaultValue = defaultRichListSize) int size) {
+        return Flowable.fromPublisher(richListService.richListUpdates(CurrencyID.of(currencyId), size))
+                .map(Event::of);
+    }
+
+    /**
+     * The full info of every property, sorted by ID. Clients should send the {@code ETag} they were given as
+     * {@code If-None-Match}, and get {@code 304 Not Modified} while the list is unchanged.
+     *
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @param acceptEncoding the {@code Accept-Encoding} request header, if any
+     * @return the properties (pre-serialized, and gzipped if accepted), or {@code 304 Not Modified}
+     */
+    @Get(uri="/properties", produces = MediaType.APPLICATION_JSON)
+    public Single<HttpResponse<?>> properties(@Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                              @Nullable @Header(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return propertyListService.getPropertyListSnapshot().<HttpResponse<?>>map(snapshot -> {
+            if (EntityTags.matches(ifNoneMatch, snapshot.etag())) {
+                // A 304 has the headers the 200 would have, so caches keep treating the response the same way
+                return HttpResponse.notModified()
+                        .header(HttpHeaders.ETAG, snapshot.etag())
+                        .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            // The compressor leaves a response that already has a Content-Encoding alone
+            boolean gzip = acceptsGzip(acceptEncoding);
+            MutableHttpResponse<byte[]> response = HttpResponse.ok(gzip ? snapshot.gzipped() : snapshot.json())
+                    .contentType(MediaType.APPLICATION_JSON_TYPE)
+                    .header(HttpHeaders.ETAG, snapshot.etag())
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return gzip ? response.header(HttpHeaders.CONTENT_ENCODING, "gzip") : response;
+        });
+    }
+
+    /**
+     * @param acceptEncoding the {@code Accept-Encoding} request header, if any
+     * @return {@code true} if it accepts {@code gzip} (by name, or with {@code *}) with a non-zero quality value
+     */
+    static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.length() > 2 && (param.startsWith("q=") || param.startsWith("Q="))) {
+                    accepted = quality(param.substring(2)) > 0;
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return accepted;
+            } else if (coding.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    // An invalid quality value is treated as 0
+    private static double quality(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
-    @Get(uri="/richlist/{currencyId}", produces = MediaType.APPLICATION_JSON)
-    public Single<TokenRichList<OmniValue, CurrencyID>> richList(int currencyId) {
-        return richListService.richList(CurrencyID.of(currencyId), richListSize);
+    @Error(exception = IllegalArgumentException.class)
+    public HttpResponse<JsonError> badRequest(HttpRequest<?> request, IllegalArgumentException e) {
+        return HttpResponse.badRequest(new JsonError(e.getMessage()));
     }
 }
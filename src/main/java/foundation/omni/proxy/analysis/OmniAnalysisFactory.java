@@ -2,10 +2,8 @@ package foundation.omni.proxy.analysis;
 
 import com.fasterxml.jackson.databind.Module;
 import foundation.omni.CurrencyID;
-import foundation.omni.OmniValue;
 import foundation.omni.json.conversion.OmniServerModule;
 import foundation.omni.netapi.ConsensusService;
-import foundation.omni.netapi.analytics.OmniLayerRichListService;
 import foundation.omni.netapi.omnicore.OmniCoreClient;
 import foundation.omni.rpc.OmniClient;
 import io.micronaut.context.annotation.Context;
@@ -14,6 +12,7 @@ import io.micronaut.context.annotation.Requires;
 import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Network;
 import org.consensusj.bitcoin.proxy.jsonrpc.JsonRpcProxyConfiguration;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
 
 import jakarta.inject.Singleton;
 import java.util.List;
@@ -25,7 +24,9 @@ import java.util.List;
 @Factory
 @Requires(property="omniproxyd.enabled", value = "true")
 public class OmniAnalysisFactory {
-    
+    // Blocks journaled by IncrementalRichListService
+    private static final int maxReorgDepth = 100;
+
     @Singleton
     public Module jacksonModule() {
         return new OmniServerModule();
@@ -38,10 +39,14 @@ public class OmniAnalysisFactory {
 
     @Singleton
     @Context
-    public CachedRichListService<OmniValue, CurrencyID> omniRichListService(OmniClient omniClient, ConsensusService client) {
+    public CachedRichListService omniRichListService(OmniClient omniClient, ProxyMetrics metrics, OmniProxyConfiguration config) {
         List<CurrencyID> richListEagerFetch  = eagerFetchList(omniClient.getNetwork());
-        var uncached = new OmniLayerRichListService<OmniValue, CurrencyID>(client);
-        var cached = new CachedRichListService<>(uncached, omniClient, richListEagerFetch);
+        AddressIndex index = new AddressIndex(omniClient.getNetwork());
+        RichListSnapshotSource source = new FullRichListSnapshotSource(omniClient, index);
+        if (config.getIncrementalRichList()) {
+            source = new IncrementalRichListService(omniClient, source, index, richListEagerFetch, maxReorgDepth, metrics);
+        }
+        var cached = new CachedRichListService(source, omniClient, richListEagerFetch, metrics);
         cached.start();
         return cached;
     }
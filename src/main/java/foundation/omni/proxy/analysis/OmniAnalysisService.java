@@ -1,7 +1,6 @@
 package foundation.omni.proxy.analysis;
 
 import foundation.omni.CurrencyID;
-import foundation.omni.OmniValue;
 import io.micronaut.context.annotation.Context;
 import io.micronaut.context.annotation.Requires;
 import org.consensusj.bitcoin.proxy.jsonrpc.ExtraRpcRegistry;
@@ -10,19 +9,19 @@ import jakarta.inject.Singleton;
 import static org.consensusj.bitcoin.proxy.jsonrpc.RpcParmParser.*;
 
 /**
- * Service that adds "extra" RPCs, such as {@code omniproxy.help}, {@code omniproxy.getrichlist}
+ * Service that adds "extra" RPCs, such as {@code omniproxy.help}, {@code omniproxy.getrichlist}, {@code omniproxy.getrichlistpage}
  */
 @Singleton
 @Context
 @Requires(property="omniproxyd.enabled", value = "true")
 public class OmniAnalysisService {
     private final ExtraRpcRegistry rpcRegistry;
-    private final CachedRichListService<OmniValue, CurrencyID> richListService;
+    private final CachedRichListService richListService;
     private final OmniPropertyListService propertyListService;
     private final OmniBalanceService omniBalanceService;
 
     public OmniAnalysisService(ExtraRpcRegistry extraRpcRegistry,
-                               CachedRichListService<OmniValue, CurrencyID> cachedRichListService,
+                               CachedRichListService cachedRichListService,
                                OmniPropertyListService propertyListService,
                                OmniBalanceService omniBalanceService) {
         rpcRegistry = extraRpcRegistry;
@@ -37,9 +36,15 @@ public class OmniAnalysisService {
         rpcRegistry.register("omniproxy.getrichlist",
                 "currency-id list-size(12)",
                 params -> richListService.richList(toCurrencyId(params.get(0)), parmToInt(params.get(1))));
+        rpcRegistry.register("omniproxy.getrichlistpage",
+                "currency-id offset limit",
+                params -> richListService.richListPage(toCurrencyId(params.get(0)), parmToInt(params.get(1)), parmToInt(params.get(2))));
         rpcRegistry.register("omniproxy.listproperties",
                 "",
-                params -> propertyListService.getProperties());
+                params -> propertyListService.getPropertyListSnapshot().map(PropertyListSnapshot::rpcResponse));
+        rpcRegistry.register("omniproxy.getwarmupinfo",
+                "",
+                params -> propertyListService.getWarmupProgress());
         rpcRegistry.register("omniproxy.getproperty",
                 "currency-id",
                 params -> propertyListService.getProperty(toCurrencyId(params.get(0))));
@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import static foundation.omni.CurrencyID.BTC;
@@ -27,6 +28,7 @@ public class OmniPropertyListCache {
 
     private final BitcoinNetwork network;
     private final ConcurrentHashMap<CurrencyID, OmniPropertyInfo> map = new ConcurrentHashMap<>(2000);
+    private final AtomicLong modCount = new AtomicLong();
 
     public OmniPropertyListCache(BitcoinNetwork network) {
         this.network = network;
@@ -42,6 +44,17 @@ public class OmniPropertyListCache {
         return map.values().stream();
     }
 
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return a count that changes whenever an entry is added or replaced
+     */
+    public long modCount() {
+        return modCount.get();
+    }
+
     public List<CurrencyID> getPlaceholderIds() {
         return map.values().stream()
                 .filter(this::isPlaceholder)
@@ -52,6 +65,7 @@ public class OmniPropertyListCache {
     public void cachePut(OmniPropertyInfo info) {
         log.debug("Updating {}/{} TxID {} Amount {}", info.getPropertyid(), info.getName(), info.getCreationtxid(), info.getTotaltokens());
         map.put(info.getPropertyid(), info);
+        modCount.incrementAndGet();
     }
 
     public void cachePutBitcoin(TxOutSetInfo outSetInfo) {
@@ -60,7 +74,10 @@ public class OmniPropertyListCache {
     }
 
     public void cachePutIfNew(SmartPropertyListInfo splInfo) {
-        map.computeIfAbsent(splInfo.getPropertyid(), id -> new OmniPropertyInfo(network, splInfo));
+        map.computeIfAbsent(splInfo.getPropertyid(), id -> {
+            modCount.incrementAndGet();
+            return new OmniPropertyInfo(network, splInfo);
+        });
     }
 
     /**
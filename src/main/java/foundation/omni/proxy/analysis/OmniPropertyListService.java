@@ -1,16 +1,21 @@
 package foundation.omni.proxy.analysis;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import foundation.omni.CurrencyID;
 import foundation.omni.json.pojo.OmniPropertyInfo;
 import foundation.omni.json.pojo.SmartPropertyListInfo;
 import foundation.omni.rpc.OmniClient;
+import io.micrometer.core.instrument.Timer;
 import io.micronaut.context.annotation.Requires;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import org.bitcoinj.base.BitcoinNetwork;
 import org.consensusj.bitcoin.json.pojo.ChainTip;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
 import org.consensusj.bitcoin.rx.ChainTipPublisher;
 import org.consensusj.bitcoin.rx.jsonrpc.service.TxOutSetService;
 import org.slf4j.Logger;
@@ -19,9 +24,18 @@ import org.slf4j.LoggerFactory;
 import jakarta.inject.Singleton;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static foundation.omni.CurrencyID.BTC;
 import static foundation.omni.CurrencyID.OMNI;
 import static foundation.omni.CurrencyID.TOMNI;
 import static foundation.omni.CurrencyID.USDT;
@@ -29,6 +43,16 @@ import static foundation.omni.CurrencyID.USDT;
 /**
  * Maintain a cache of {@link OmniPropertyInfo} for serving requests. The cache is loaded
  * using data received from {@link OmniClient}.
+ * <p>
+ * If {@code omniproxyd.property-snapshot-file} is set, the cache is saved to it (see {@link PropertyCacheSnapshot})
+ * periodically and on {@link #close()}. A snapshot is tagged with the latest block whose property updates have all
+ * completed, and is not saved while updates are in progress. On startup the snapshot is loaded before requests are
+ * served, and only properties changed by Omni transactions since the snapshot's block are reloaded (unless scanning
+ * the blocks would cost more than reloading every property).
+ * <p>
+ * If {@code omniproxyd.incremental-property-updates} is set, each new block's Omni transactions are scanned (see
+ * {@link PropertyChangeScanner}) and only the properties they change are fetched. The full property list is then
+ * only fetched every {@code omniproxyd.property-list-reconcile-blocks} blocks (and after deep reorgs) to reconcile.
  */
 @Singleton
 @Requires(property="omniproxyd.enabled", value = "true")
@@ -39,24 +63,62 @@ public class OmniPropertyListService implements Closeable {
     private final OmniPropertyListCache cache;
     private final List<CurrencyID> activeProperties;
     private final TxOutSetService txOutSetService;
-    private final Flowable<Long> timerInterval;
+    private final PropertyWarmup warmup;
+    private final ProxyMetrics metrics;
+    private final Timer listTimer;
+    private final Timer propertyTimer;
+    private final ObjectMapper mapper;
+    private final Path snapshotFile;
+    private final Duration snapshotInterval;
+    // Blocks since a snapshot beyond which every property is reloaded rather than scanning the blocks (also if
+    // there are fewer properties than blocks to scan, as each block costs at least one request)
+    private static final long maxSnapshotAge = 144;
+    // Null unless incremental property updates are enabled
+    private final PropertyChangeScanner changeScanner;
+    private final int reconcileBlocks;
 
     private Disposable chainTipSubscription;
-    private Disposable intervalSubscription;
     private Disposable outSetSubscription;
+    private Disposable snapshotSubscription;
+    private volatile ChainTip lastTip;
+    // Blocks whose property updates are in progress
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    // True until the properties changed since a loaded snapshot have been handed to the warm-up
+    private volatile boolean snapshotRefreshPending = false;
+    private volatile int lastReconcileHeight = -1;
+    private volatile PropertyListSnapshot listSnapshot;
+    private final Object listSnapshotLock = new Object();
+    // Guarded by this
+    private long savedModCount = -1;
 
-    OmniPropertyListService(OmniClient omniClient, ChainTipPublisher chainTipPublisher) {
+    OmniPropertyListService(OmniClient omniClient, ChainTipPublisher chainTipPublisher, ProxyMetrics metrics,
+                            OmniProxyConfiguration config, ObjectMapper jsonMapper) {
         rxJsonClient = omniClient;
         cache = new OmniPropertyListCache((BitcoinNetwork) rxJsonClient.getNetwork());
         activeProperties = rxJsonClient.getNetwork().equals(BitcoinNetwork.MAINNET) ? List.of(OMNI, TOMNI, USDT) : List.of(OMNI, TOMNI);
         txOutSetService = new TxOutSetService(omniClient, chainTipPublisher);
-        timerInterval = Flowable.interval(3,1, TimeUnit.SECONDS);
+        this.metrics = metrics;
+        listTimer = metrics.refreshTimer("property-list");
+        propertyTimer = metrics.refreshTimer("properties");
+        warmup = new PropertyWarmup(cache, id -> timed(propertyTimer, omniGetPropertyMaybe(id)));
+        metrics.warmupRemaining("properties", warmup, PropertyWarmup::placeholders);
+        mapper = jsonMapper;
+        snapshotFile = config.getPropertySnapshotFile() != null ? Path.of(config.getPropertySnapshotFile()) : null;
+        snapshotInterval = config.getPropertySnapshotInterval();
+        changeScanner = config.getIncrementalPropertyUpdates() ? new PropertyChangeScanner(omniClient, 100) : null;
+        reconcileBlocks = Math.max(config.getPropertyListReconcileBlocks(), 1);
     }
 
     /**
      * Subscribe to publishers
      */
     public synchronized void start() {
+        // Load the snapshot (if any) before anything else updates the cache
+        if (snapshotFile != null && snapshotSubscription == null) {
+            loadSnapshot();
+            snapshotSubscription = Flowable.interval(snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS)
+                    .subscribe(i -> saveSnapshot(), this::onError);
+        }
         // Subscribe to a new block (ChainTip) stream
         if (chainTipSubscription == null) {
             log.info("starting");
@@ -69,17 +131,19 @@ public class OmniPropertyListService implements Closeable {
                             t -> log.error("TxOutSetService", t),
                             () -> log.error("TxOutSetService completed"));
         }
-        // Timer ticks used for resolving placeholders
-        if (intervalSubscription == null) {
-            intervalSubscription = timerInterval.subscribe(i -> loadPlaceholders(), this::onError);
-        }
+        // Replace placeholders with full property info
+        warmup.start();
     }
 
     @Override
     public void close() {
         chainTipSubscription.dispose();
-        intervalSubscription.dispose();
+        warmup.close();
         outSetSubscription.dispose();
+        if (snapshotSubscription != null) {
+            snapshotSubscription.dispose();
+            saveSnapshot();
+        }
     }
 
     /**
@@ -90,6 +154,21 @@ public class OmniPropertyListService implements Closeable {
         return Single.just(cache.getAll().toList());
     }
 
+    /**
+     * Return the entire cache, sorted and serialized. The snapshot is only rebuilt after the cache has changed.
+     * @return snapshot of the entire cache
+     */
+    public Single<PropertyListSnapshot> getPropertyListSnapshot() {
+        return Single.fromCallable(this::propertyListSnapshot);
+    }
+
+    /**
+     * @return progress of loading full property info for every property
+     */
+    public Single<WarmupProgress> getWarmupProgress() {
+        return Single.fromSupplier(warmup::progress);
+    }
+
     /**
      * Return a single entry from the cache
      * @param id property to request
@@ -106,46 +185,173 @@ public class OmniPropertyListService implements Closeable {
      *      <li>initiate get-property requests for the Currency IDs on the "active" list</li>
      *      <li>Poll the entire smart property list to look for additions</li>
      * </ol>
-     * TODO: Find changed properties by looking at transactions in the block
+     * or, with incremental property updates, by fetching the properties changed by the block's transactions.
      *
-     * @param tip the new ChainTip (currently unused)
+     * @param tip the new ChainTip
      */
     private void onNewBlock(ChainTip tip) {
+        long start = System.nanoTime();
+        // Counted before lastTip is set, so saveSnapshot can tell when the updates for lastTip have completed
+        pendingUpdates.incrementAndGet();
+        lastTip = tip;
+        Completable update = changeScanner != null
+                ? Single.fromCallable(changeScanner::update)
+                        .subscribeOn(Schedulers.io())
+                        .flatMapCompletable(changed -> onBlockScanned(tip, changed))
+                : reconcile(tip);
+        var disposable = update
+                .doFinally(pendingUpdates::decrementAndGet)
+                .subscribe(() -> {}, this::onError);
+        metrics.chainTipHandled("properties", tip, start);
+    }
+
+    private Completable onBlockScanned(ChainTip tip, Optional<Set<CurrencyID>> changed) {
+        if (changed.isEmpty() || lastReconcileHeight < 0 || tip.getHeight() - lastReconcileHeight >= reconcileBlocks) {
+            return reconcile(tip);
+        } else {
+            log.info("New Block -- updating {} changed properties", changed.get().size());
+            return fetchProperties(changed.get());
+        }
+    }
+
+    /**
+     * Fetch the CurrencyIDs on the "active" list and poll the entire smart property list to look for additions
+     */
+    private Completable reconcile(ChainTip tip) {
         log.info("New Block -- updating CurrencyIDs on the eager list and fetching any new properties created");
-        activeProperties.forEach(this::getPropertyAsync);
-        omniListPropertiesMaybe().subscribe(list -> list.forEach(cache::cachePutIfNew), this::onError);
+        lastReconcileHeight = tip.getHeight();
+        Completable list = timed(listTimer, omniListPropertiesMaybe())
+                .doOnSuccess(properties -> {
+                    properties.forEach(cache::cachePutIfNew);
+                    warmup.listed();
+                })
+                .ignoreElement();
+        return Completable.mergeArray(fetchProperties(activeProperties), list);
     }
 
 
-    private void onError(Throwable t){
-        log.error("Fatal stream error", t);
+    /**
+     * Load the snapshot file into the cache and start reloading the properties that changed since it was saved
+     */
+    private void loadSnapshot() {
+        PropertyCacheSnapshot.Contents contents;
+        try {
+            contents = PropertyCacheSnapshot.read(snapshotFile, mapper);
+        } catch (NoSuchFileException e) {
+            log.info("No property cache snapshot at {}", snapshotFile);
+            return;
+        } catch (Exception e) {
+            log.warn("Can't load property cache snapshot {}, loading from the node", snapshotFile, e);
+            return;
+        }
+        contents.properties().forEach(cache::cachePut);
+        synchronized (this) {
+            savedModCount = cache.modCount();
+        }
+        log.info("Loaded {} properties from snapshot at block {}", contents.properties().size(), contents.height());
+        snapshotRefreshPending = true;
+        var disposable = Single.fromCallable(() -> changedSince(rxJsonClient, contents))
+                .subscribeOn(Schedulers.io())
+                .subscribe(changed -> {
+                    log.info("{} properties changed since the snapshot", changed.size());
+                    warmup.refresh(changed);
+                    warmup.listed();
+                    snapshotRefreshPending = false;
+                }, t -> {
+                    log.error("Can't scan for properties changed since the snapshot, reloading all properties", t);
+                    warmup.refresh(propertyIds(contents));
+                    warmup.listed();
+                    snapshotRefreshPending = false;
+                });
     }
 
     /**
-     * Load a batch of placeholder properties
+     * @param client client for the Omni Core node
+     * @param contents a loaded snapshot
+     * @return the properties that may have changed since the snapshot was saved
      */
-    private void loadPlaceholders() {
-        final int maxFetchPerTimerTick = 10;
-        // Find all properties needing loading
-        List<CurrencyID> placeholders = cache.getPlaceholderIds();
-        // Create a prioritized (ascending numeric order by ID) list to load on this tick
-        List<CurrencyID> loadList = placeholders.stream()
-                .sorted()
-                .limit(maxFetchPerTimerTick)
-                .toList();
-        if (loadList.size() > 0) {
-            log.info("Found {} placeholder properties, loading {}, starting with {}", placeholders.size(), loadList.size(), loadList.get(0));
+    static Set<CurrencyID> changedSince(OmniClient client, PropertyCacheSnapshot.Contents contents) throws IOException {
+        long height = contents.height();
+        int tip = client.send("getblockcount", Integer.class);
+        if (tip < height || tip - height > Math.min(maxSnapshotAge, contents.properties().size())
+                || !contents.hash().toString().equals(client.send("getblockhash", String.class, height))) {
+            log.info("Snapshot is too old or not in the best chain, reloading all properties");
+            return propertyIds(contents);
         }
-        loadList.forEach(this::getPropertyAsync);
+        return PropertyChangeScanner.changedIn(client, height + 1, tip);
+    }
+
+    private static Set<CurrencyID> propertyIds(PropertyCacheSnapshot.Contents contents) {
+        return Set.copyOf(contents.properties().stream().map(OmniPropertyInfo::getPropertyid).toList());
     }
 
     /**
-     * Try to get a property and if successful, put it in the cache
-     * @param id property to fetch
+     * Save the cache, tagged with the latest block, unless updates for a block (or refreshes handed to the warm-up)
+     * are still in progress, as the cache would then not reflect every change up to that block
      */
-    private void getPropertyAsync(CurrencyID id) {
-        log.debug("Fetching {}", id);
-        var disposable = omniGetPropertyMaybe(id).subscribe(cache::cachePut, this::onError);
+    private synchronized void saveSnapshot() {
+        ChainTip tip = lastTip;
+        long modCount = cache.modCount();
+        if (tip == null || modCount == savedModCount) {
+            return;
+        }
+        if (pendingUpdates.get() > 0 || snapshotRefreshPending || warmup.isRefreshing()) {
+            log.debug("Property updates in progress, not saving a snapshot");
+            return;
+        }
+        List<OmniPropertyInfo> properties = cache.getAll().filter(p -> !p.getPropertyid().equals(BTC)).toList();
+        try {
+            PropertyCacheSnapshot.write(snapshotFile, mapper, tip.getHeight(), tip.getHash(), properties);
+            savedModCount = modCount;
+            log.info("Saved {} properties to {} at block {}", properties.size(), snapshotFile, tip.getHeight());
+        } catch (IOException e) {
+            log.error("Can't save property cache snapshot {}", snapshotFile, e);
+        }
+    }
+
+    private PropertyListSnapshot propertyListSnapshot() throws IOException {
+        PropertyListSnapshot current = listSnapshot;
+        if (current != null && current.modCount() == cache.modCount()) {
+            return current;
+        }
+        synchronized (listSnapshotLock) {
+            long modCount = cache.modCount();
+            current = listSnapshot;
+            if (current == null || current.modCount() != modCount) {
+                current = PropertyListSnapshot.of(mapper, modCount, cache.getAll(), current);
+                listSnapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private void onError(Throwable t){
+        log.error("Fatal stream error", t);
+    }
+
+    /**
+     * Fetch properties and put them in the cache. Properties that can't be fetched are handed to the warm-up to
+     * retry, so the returned Completable completes once each property has been fetched or handed over.
+     * @param ids properties to fetch
+     */
+    private Completable fetchProperties(Collection<CurrencyID> ids) {
+        return Flowable.fromIterable(ids)
+                .flatMapCompletable(id -> timed(propertyTimer, omniGetPropertyMaybe(id))
+                        .doOnSuccess(cache::cachePut)
+                        .doOnComplete(() -> warmup.refresh(List.of(id)))
+                        .ignoreElement()
+                        .onErrorComplete(t -> {
+                            log.warn("Can't fetch {}, retrying later", id, t);
+                            warmup.refresh(List.of(id));
+                            return true;
+                        }));
+    }
+
+    private static <T> Maybe<T> timed(Timer timer, Maybe<T> fetch) {
+        return Maybe.defer(() -> {
+            long start = System.nanoTime();
+            return fetch.doOnSuccess(r -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
     }
 
     private Maybe<OmniPropertyInfo> omniGetPropertyMaybe(CurrencyID id) {
@@ -1,11 +1,48 @@
 package foundation.omni.proxy.analysis;
 
 import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
 
 /**
- * OmniProxy Configuration. For now only config is enable/disable.
+ * OmniProxy Configuration.
  */
 @ConfigurationProperties("omniproxyd")
 public interface OmniProxyConfiguration {
     boolean getEnabled();
+
+    /**
+     * @return {@code true} to maintain the eagerly-fetched rich lists incrementally from each block's
+     * transactions (see {@link IncrementalRichListService}) rather than fetching all holders on each block
+     */
+    @Bindable(defaultValue = "false")
+    boolean getIncrementalRichList();
+
+    /**
+     * @return file the property cache is saved to (periodically and on shutdown) and loaded from on startup,
+     * {@code null} to not save it
+     */
+    @Nullable
+    String getPropertySnapshotFile();
+
+    /**
+     * @return how often to save the property cache if it has changed
+     */
+    @Bindable(defaultValue = "10m")
+    Duration getPropertySnapshotInterval();
+
+    /**
+     * @return {@code true} to refresh only the properties changed by each block's Omni transactions, rather than
+     * fetching the full property list and the active properties on each block
+     */
+    @Bindable(defaultValue = "false")
+    boolean getIncrementalPropertyUpdates();
+
+    /**
+     * @return with incremental property updates, how many blocks between fetches of the full property list
+     */
+    @Bindable(defaultValue = "144")
+    int getPropertyListReconcileBlocks();
 }
@@ -0,0 +1,122 @@
+package foundation.omni.proxy.analysis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import foundation.omni.CurrencyID;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.OnClose;
+import io.micronaut.websocket.annotation.OnMessage;
+import io.micronaut.websocket.annotation.OnOpen;
+import io.micronaut.websocket.annotation.ServerWebSocket;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
+import org.consensusj.bitcoin.proxy.push.PushConfiguration;
+import org.consensusj.bitcoin.proxy.push.PushSink;
+import org.consensusj.bitcoin.proxy.push.PushTopic;
+import org.consensusj.bitcoin.proxy.push.WebSocketSessionSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket endpoint that sends the current rich list for a currency on connect and each changed rich list
+ * after that. Only currencies whose rich lists are fetched on every block anyway
+ * ({@link CachedRichListService#isTracked}) are available, so clients can't add upstream load. All clients of a
+ * currency share one subscription to {@link CachedRichListService#richListUpdates}, which is disposed when the
+ * last client leaves, and each rich list is serialized once.
+ */
+@ServerWebSocket("/omni/analysis/ws/richlist/{currencyId}")
+@Requires(property="omniproxyd.enabled", value = "true")
+@Requires(property = "btcproxyd.push.enabled", notEquals = "false")
+public class OmniRichListWebSocket {
+    private static final Logger log = LoggerFactory.getLogger(OmniRichListWebSocket.class);
+    private static final int richListSize = Integer.parseInt(OmniAnalysisController.defaultRichListSize);
+    private final CachedRichListService richListService;
+    private final ObjectMapper mapper;
+    private final ProxyMetrics metrics;
+    private final PushConfiguration config;
+    // Only tracked currencies, so the topics (and their meters) are bounded
+    private final ConcurrentHashMap<CurrencyID, RichListTopic> topics = new ConcurrentHashMap<>();
+
+    public OmniRichListWebSocket(CachedRichListService richListService, ObjectMapper jsonMapper,
+                                 ProxyMetrics metrics, PushConfiguration config) {
+        this.richListService = richListService;
+        this.mapper = jsonMapper;
+        this.metrics = metrics;
+        this.config = config;
+    }
+
+    @OnOpen
+    public void onOpen(String currencyId, WebSocketSession session) {
+        Optional<CurrencyID> id = trackedCurrency(currencyId);
+        if (id.isEmpty()) {
+            session.close(new CloseReason(CloseReason.POLICY_VIOLATION.getCode(), "No rich list updates for " + currencyId));
+            return;
+        }
+        RichListTopic topic = topics.computeIfAbsent(id.get(), RichListTopic::new);
+        if (!topic.subscribe(session.getId(), new WebSocketSessionSink(session))) {
+            session.close(CloseReason.TRY_AGAIN_LATER);
+        }
+    }
+
+    @OnMessage
+    public void onMessage(String currencyId, String message, WebSocketSession session) {
+    }
+
+    @OnClose
+    public void onClose(String currencyId, WebSocketSession session) {
+        trackedCurrency(currencyId)
+                .map(topics::get)
+                .ifPresent(topic -> topic.unsubscribe(session.getId()));
+    }
+
+    private Optional<CurrencyID> trackedCurrency(String currencyId) {
+        CurrencyID id;
+        try {
+            id = CurrencyID.of(Long.parseLong(currencyId));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        return richListService.isTracked(id) ? Optional.of(id) : Optional.empty();
+    }
+
+    /**
+     * A topic that is subscribed to the rich list updates of its currency while it has subscribers
+     */
+    private final class RichListTopic {
+        private final CurrencyID id;
+        private final PushTopic topic;
+        // Guarded by this
+        private Disposable updates;
+
+        RichListTopic(CurrencyID id) {
+            this.id = id;
+            topic = new PushTopic("richlist-" + id.getValue(), config, metrics);
+        }
+
+        synchronized boolean subscribe(Object key, PushSink sink) {
+            if (!topic.subscribe(key, sink)) {
+                return false;
+            }
+            if (updates == null) {
+                updates = Flowable.fromPublisher(richListService.richListUpdates(id, richListSize))
+                        .map(mapper::writeValueAsString)
+                        .subscribe(topic::publish, t -> log.error("rich list updates for {} failed", id, t));
+            }
+            return true;
+        }
+
+        synchronized void unsubscribe(Object key) {
+            topic.unsubscribe(key);
+            if (topic.subscriberCount() == 0 && updates != null) {
+                updates.dispose();
+                updates = null;
+                topic.clearLatest();
+            }
+        }
+    }
+}
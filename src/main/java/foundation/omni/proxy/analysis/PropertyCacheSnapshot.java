@@ -0,0 +1,78 @@
+package foundation.omni.proxy.analysis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import foundation.omni.json.pojo.OmniPropertyInfo;
+import org.bitcoinj.base.Sha256Hash;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Snapshot file of an {@link OmniPropertyListCache}, so a restarted proxy can serve complete property info
+ * immediately. The file is a header (magic, version, block height and hash) followed by length-prefixed
+ * JSON-encoded properties. It is replaced atomically when written and memory-mapped when read.
+ */
+final class PropertyCacheSnapshot {
+    private static final int magic = 0x4f504c43;   // "OPLC"
+    private static final int version = 1;
+
+    private PropertyCacheSnapshot() {}
+
+    /**
+     * @param height height of the block the properties are up-to-date with
+     * @param hash hash of the block the properties are up-to-date with
+     * @param properties the properties
+     */
+    record Contents(long height, Sha256Hash hash, List<OmniPropertyInfo> properties) {}
+
+    static void write(Path file, ObjectMapper mapper, long height, Sha256Hash hash,
+                      Collection<OmniPropertyInfo> properties) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeLong(height);
+            out.write(hash.getBytes());
+            out.writeInt(properties.size());
+            for (OmniPropertyInfo property : properties) {
+                byte[] json = mapper.writeValueAsBytes(property);
+                out.writeInt(json.length);
+                out.write(json);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Contents read(Path file, ObjectMapper mapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != magic || buffer.getInt() != version) {
+                throw new IOException("Not a property cache snapshot (or an unsupported version): " + file);
+            }
+            long height = buffer.getLong();
+            byte[] hash = new byte[Sha256Hash.LENGTH];
+            buffer.get(hash);
+            int count = buffer.getInt();
+            List<OmniPropertyInfo> properties = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] json = new byte[buffer.getInt()];
+                buffer.get(json);
+                properties.add(mapper.readValue(json, OmniPropertyInfo.class));
+            }
+            return new Contents(height, Sha256Hash.wrap(hash), properties);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated property cache snapshot: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.rpc.OmniClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds the properties whose {@code omni_getproperty} info Omni transactions may have changed. Used statically
+ * for a range of blocks, or as an instance that follows the chain with a journal of the properties changed by each
+ * recent block, so that after a reorg the properties changed by the disconnected blocks are reported again.
+ */
+final class PropertyChangeScanner {
+    private static final Logger log = LoggerFactory.getLogger(PropertyChangeScanner.class);
+    // Transaction fields that name a property, "purchasedpropertyid" is in crowdsale purchases
+    private static final List<String> propertyFields = List.of("propertyid", "propertyidforsale", "propertyiddesired",
+            "purchasedpropertyid");
+    /** Transaction types that change the info of the property they name */
+    static final Set<Integer> propertyTxTypes = Set.of(
+            50, 51, 54, // Create property (fixed, crowdsale, managed)
+            53,     // Close crowdsale
+            55,     // Grant
+            56,     // Revoke
+            70,     // Change issuer
+            71, 72);    // Enable, disable freezing
+    private final OmniClient client;
+    private final int maxDepth;
+    // Recent blocks, oldest first, the last entry is the block last scanned
+    private final ArrayDeque<Block> journal = new ArrayDeque<>();
+
+    /**
+     * @param client client for the Omni Core node
+     * @param maxDepth blocks to keep in the journal, deeper reorgs (and longer gaps) are reported as unknown changes
+     */
+    PropertyChangeScanner(OmniClient client, int maxDepth) {
+        this.client = client;
+        this.maxDepth = Math.max(maxDepth, 1);
+    }
+
+    /**
+     * Scan the blocks since the last call, up to the node's current tip
+     *
+     * @return the properties that may have changed, or empty if unknown (on the first call, after a reorg deeper than
+     * the journal or after more than {@code maxDepth} new blocks) and the caller should reload everything
+     */
+    synchronized Optional<Set<CurrencyID>> update() throws IOException {
+        int tip = client.send("getblockcount", Integer.class);
+        if (journal.isEmpty() || tip - journal.getLast().height() > maxDepth) {
+            reset(tip);
+            return Optional.empty();
+        }
+        try {
+            return scan(tip);
+        } catch (IOException | RuntimeException e) {
+            // Blocks may have been disconnected without their changes being reported, so the next call reports unknown changes
+            journal.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Disconnect and connect blocks up to {@code tip}
+     *
+     * @param tip the node's current tip
+     * @return the properties that may have changed, or empty if unknown
+     */
+    private Optional<Set<CurrencyID>> scan(int tip) throws IOException {
+        Set<CurrencyID> changed = new HashSet<>();
+        // Disconnect blocks that are no longer in the best chain
+        while (!journal.isEmpty() && (journal.getLast().height() > tip
+                || !journal.getLast().hash().equals(blockHash(journal.getLast().height())))) {
+            Block disconnected = journal.removeLast();
+            log.info("Block {} {} disconnected", disconnected.height(), disconnected.hash());
+            changed.addAll(disconnected.changed());
+        }
+        if (journal.isEmpty()) {
+            log.warn("Reorg deeper than {} blocks", maxDepth);
+            reset(tip);
+            return Optional.empty();
+        }
+        // Connect the new blocks
+        for (long height = journal.getLast().height() + 1; height <= tip; height++) {
+            Block connected = new Block(height, blockHash(height), changedIn(client, height));
+            changed.addAll(connected.changed());
+            journal.addLast(connected);
+            if (journal.size() > maxDepth) {
+                journal.removeFirst();
+            }
+        }
+        return Optional.of(changed);
+    }
+
+    private void reset(long tip) throws IOException {
+        journal.clear();
+        journal.addLast(new Block(tip, blockHash(tip), Set.of()));
+    }
+
+    private String blockHash(long height) throws IOException {
+        return client.send("getblockhash", String.class, height);
+    }
+
+    /**
+     * @param client client for the Omni Core node
+     * @param fromHeight first block
+     * @param toHeight last block (inclusive)
+     * @return properties changed by the valid Omni transactions in the blocks
+     */
+    static Set<CurrencyID> changedIn(OmniClient client, long fromHeight, long toHeight) throws IOException {
+        Set<CurrencyID> changed = new HashSet<>();
+        for (long height = fromHeight; height <= toHeight; height++) {
+            changed.addAll(changedIn(client, height));
+        }
+        return changed;
+    }
+
+    private static Set<CurrencyID> changedIn(OmniClient client, long height) throws IOException {
+        Set<CurrencyID> changed = new HashSet<>();
+        List<?> txids = client.send("omni_listblocktransactions", List.class, height);
+        for (Object txid : txids) {
+            Map<?, ?> tx = client.send("omni_gettransaction", Map.class, txid);
+            if (!Boolean.TRUE.equals(tx.get("valid"))) {
+                continue;
+            }
+            if (tx.get("type_int") instanceof Integer type && propertyTxTypes.contains(type)) {
+                changed.addAll(propertiesOf(tx));
+            } else if (tx.get("purchasedpropertyid") instanceof Number purchased) {
+                // A crowdsale purchase changes the tokens issued by the crowdsale
+                changed.add(CurrencyID.of(purchased.longValue()));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param tx an {@code omni_gettransaction} result
+     * @return the properties it names
+     */
+    static List<CurrencyID> propertiesOf(Map<?, ?> tx) {
+        return propertyFields.stream()
+                .map(tx::get)
+                .filter(Number.class::isInstance)
+                .map(p -> CurrencyID.of(((Number) p).longValue()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * @param height block height
+     * @param hash block hash
+     * @param changed properties changed by the block's Omni transactions
+     */
+    private record Block(long height, String hash, Set<CurrencyID> changed) {}
+}
@@ -0,0 +1,69 @@
+package foundation.omni.proxy.analysis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import foundation.omni.json.pojo.OmniPropertyInfo;
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.bitcoin.proxy.jsonrpc.SerializedRpcResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The complete property list, sorted by ID and serialized once, as a JSON array (also gzipped) and as a
+ * JSON-RPC response for {@code omniproxy.listproperties}. The ETag is derived from the content, so it only
+ * changes when some property actually changed.
+ *
+ * @param modCount {@link OmniPropertyListCache#modCount()} the snapshot was built at
+ * @param etag strong entity tag (quoted)
+ * @param json the properties as a JSON array
+ * @param gzipped {@code json} gzipped
+ * @param rpcResponse JSON-RPC response with {@code json} as the result
+ */
+public record PropertyListSnapshot(long modCount, String etag, byte[] json, byte[] gzipped,
+                                   SerializedRpcResponse rpcResponse) {
+    private static final byte[] resultField = "{\"result\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] nullError = ",\"error\":null}".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @param mapper mapper to serialize the properties
+     * @param modCount modification count of the cache
+     * @param properties the cached properties, in any order
+     * @param previous the previous snapshot, returned (with the new {@code modCount}) if the content is unchanged
+     * @return a snapshot
+     */
+    static PropertyListSnapshot of(ObjectMapper mapper, long modCount, Stream<OmniPropertyInfo> properties,
+                                   PropertyListSnapshot previous) throws IOException {
+        List<OmniPropertyInfo> sorted = properties
+                .sorted(Comparator.comparingLong(p -> p.getPropertyid().getValue()))
+                .toList();
+        byte[] json = mapper.writeValueAsBytes(sorted);
+        if (previous != null && Arrays.equals(json, previous.json())) {
+            return new PropertyListSnapshot(modCount, previous.etag(), previous.json(), previous.gzipped(),
+                    previous.rpcResponse());
+        }
+        String etag = "\"" + Sha256Hash.of(json).toString().substring(0, 32) + "\"";
+        return new PropertyListSnapshot(modCount, etag, json, gzip(json), SerializedRpcResponse.of(rpcResponse(json), false));
+    }
+
+    private static byte[] rpcResponse(byte[] result) {
+        byte[] response = new byte[resultField.length + result.length + nullError.length];
+        System.arraycopy(resultField, 0, response, 0, resultField.length);
+        System.arraycopy(result, 0, response, resultField.length, result.length);
+        System.arraycopy(nullError, 0, response, resultField.length + result.length, nullError.length);
+        return response;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
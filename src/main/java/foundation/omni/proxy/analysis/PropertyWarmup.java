@@ -0,0 +1,258 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.json.pojo.OmniPropertyInfo;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Replaces placeholder entries in an {@link OmniPropertyListCache} with full {@link OmniPropertyInfo}.
+ * Properties are fetched in waves of concurrent {@code omni_getproperty} requests. The concurrency adapts to the
+ * node: it grows while request latency stays near the best latency seen, shrinks when latency rises, and halves
+ * (with an exponential pause between waves) when requests fail with an error, e.g. because the node's RPC work queue
+ * is full. Properties passed to {@link #refresh} are reloaded the same way, after the placeholders. Properties whose
+ * fetch fails (with an error or an empty result) go to the end of later waves, and are given up on after
+ * {@value #maxAttempts} failures in a row.
+ * When there is nothing to load it checks again once a second.
+ */
+class PropertyWarmup implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PropertyWarmup.class);
+    private static final int minConcurrency = 1;
+    private static final int maxConcurrency = 32;
+    private static final int initialConcurrency = 4;
+    // Requests per wave, per unit of concurrency
+    private static final int waveDepth = 4;
+    private static final long idleMillis = 1_000;
+    private static final long minBackoffMillis = 250;
+    private static final long maxBackoffMillis = 30_000;
+    // Consecutive failed fetches after which a property is given up on
+    private static final int maxAttempts = 5;
+    private final OmniPropertyListCache cache;
+    private final Function<CurrencyID, Maybe<OmniPropertyInfo>> fetch;
+    private final long startNanos = System.nanoTime();
+    // Only updated between waves, which don't overlap
+    private volatile int concurrency = initialConcurrency;
+    private volatile long backoffMillis = 0;
+    private volatile double bestLatencyMicros = Double.MAX_VALUE;
+    private volatile int placeholders = -1;
+    private volatile long warmNanos = -1;
+    private volatile boolean listed = false;
+    private final LongAdder loaded = new LongAdder();
+    private final Set<CurrencyID> stale = ConcurrentHashMap.newKeySet();
+    // Consecutive failed fetches, by property
+    private final Map<CurrencyID, Integer> failures = new ConcurrentHashMap<>();
+    // Properties given up on after maxAttempts failed fetches, until they are passed to refresh
+    private final Set<CurrencyID> failed = ConcurrentHashMap.newKeySet();
+    // Stale properties being reloaded by the current wave
+    private volatile List<CurrencyID> refreshing = List.of();
+    // Guarded by this
+    private Disposable next;
+    private boolean closed = false;
+
+    /**
+     * @param cache the cache to fill
+     * @param fetch fetches a property, completing empty or with an error if it couldn't
+     */
+    PropertyWarmup(OmniPropertyListCache cache, Function<CurrencyID, Maybe<OmniPropertyInfo>> fetch) {
+        this.cache = cache;
+        this.fetch = fetch;
+    }
+
+    synchronized void start() {
+        if (next == null) {
+            schedule(0);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (next != null) {
+            next.dispose();
+        }
+    }
+
+    /**
+     * Called once the property list has been loaded into the cache, until then an empty list of placeholders
+     * doesn't mean the cache is warm
+     */
+    void listed() {
+        listed = true;
+    }
+
+    /**
+     * @param ids properties to reload (also if they were given up on)
+     */
+    void refresh(Collection<CurrencyID> ids) {
+        ids.forEach(id -> {
+            failures.remove(id);
+            failed.remove(id);
+        });
+        stale.addAll(ids);
+    }
+
+    /**
+     * @return {@code true} if properties passed to {@link #refresh} haven't all been reloaded yet
+     */
+    boolean isRefreshing() {
+        return !refreshing.isEmpty() || !stale.isEmpty();
+    }
+
+    /**
+     * @return warm-up progress
+     */
+    WarmupProgress progress() {
+        long warm = warmNanos;
+        return new WarmupProgress(cache.size(), Math.max(placeholders, 0), stale.size(), loaded.sum(), failed.size(),
+                concurrency, warm >= 0, warm >= 0 ? warm / 1e9 : null);
+    }
+
+    /**
+     * @return placeholders left at the start of the last wave, or {@code -1} before the first wave
+     */
+    int placeholders() {
+        return placeholders;
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (!closed) {
+            next = Completable.timer(delayMillis, TimeUnit.MILLISECONDS).subscribe(this::wave, this::onError);
+        }
+    }
+
+    private void wave() {
+        var disposable = loadWave().subscribe(this::schedule, this::onError);
+    }
+
+    /**
+     * Load a wave of placeholders and stale properties, then adapt the concurrency to how the node coped
+     *
+     * @return the delay in milliseconds before the next wave
+     */
+    Single<Long> loadWave() {
+        List<CurrencyID> ids = cache.getPlaceholderIds().stream().filter(id -> !failed.contains(id)).toList();
+        placeholders = ids.size();
+        if (ids.isEmpty() && stale.isEmpty()) {
+            if (warmNanos < 0 && listed) {
+                warmNanos = System.nanoTime() - startNanos;
+                log.info("Property cache warm: {} properties in {} s ({} failed)", cache.size(), warmNanos / 1_000_000_000,
+                        failed.size());
+            }
+            return Single.just(idleMillis);
+        }
+        int width = concurrency;
+        // Properties that failed before go last, so they can't take up every wave
+        Comparator<CurrencyID> order = Comparator.<CurrencyID>comparingInt(id -> failures.getOrDefault(id, 0))
+                .thenComparing(Comparator.naturalOrder());
+        List<CurrencyID> wave = new ArrayList<>(ids.stream().sorted(order).limit((long) width * waveDepth).toList());
+        // Stale placeholders are loaded as placeholders
+        stale.removeAll(wave);
+        List<CurrencyID> refreshing = stale.stream().sorted(order).limit((long) width * waveDepth - wave.size()).toList();
+        this.refreshing = refreshing;
+        refreshing.forEach(stale::remove);
+        wave.addAll(refreshing);
+        log.info("{} placeholder and {} stale properties, loading {} starting with {} ({} concurrent)",
+                ids.size(), stale.size() + refreshing.size(), wave.size(), wave.get(0), width);
+        Set<CurrencyID> done = ConcurrentHashMap.newKeySet();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        LongAdder micros = new LongAdder();
+        return Flowable.fromIterable(wave)
+                .flatMapMaybe(id -> Maybe.defer(() -> {
+                            long start = System.nanoTime();
+                            return fetch.apply(id)
+                                    .subscribeOn(Schedulers.io())
+                                    .doOnSuccess(info -> {
+                                        micros.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                                        succeeded.incrementAndGet();
+                                        done.add(id);
+                                    })
+                                    .doOnError(t -> errors.incrementAndGet())
+                                    .onErrorComplete();
+                        }), false, width)
+                .doOnNext(cache::cachePut)
+                .ignoreElements()
+                .toSingle(() -> {
+                    loaded.add(succeeded.get());
+                    for (CurrencyID id : wave) {
+                        if (done.contains(id)) {
+                            failures.remove(id);
+                        } else if (!giveUp(id) && refreshing.contains(id)) {
+                            stale.add(id);
+                        }
+                    }
+                    this.refreshing = List.of();
+                    adapt(width, errors.get(), succeeded.get(), succeeded.get() > 0 ? micros.sum() / (double) succeeded.get() : 0);
+                    return backoffMillis;
+                });
+    }
+
+    /**
+     * Count a failed (error or empty) fetch of a property
+     *
+     * @param id the property
+     * @return {@code true} if the property has failed too often and is no longer fetched
+     */
+    private boolean giveUp(CurrencyID id) {
+        int attempts = failures.merge(id, 1, Integer::sum);
+        if (attempts < maxAttempts) {
+            return false;
+        }
+        failures.remove(id);
+        failed.add(id);
+        log.warn("Giving up on property {} after {} failed attempts", id, attempts);
+        return true;
+    }
+
+    /**
+     * Additive increase, multiplicative decrease of the concurrency. Only errors are taken as a sign that the node
+     * is overloaded, an empty result is a problem with the property.
+     *
+     * @param width concurrency of the wave
+     * @param errors requests in the wave that failed with an error
+     * @param succeeded requests in the wave that returned a property
+     * @param meanMicros mean latency of successful requests
+     */
+    private void adapt(int width, int errors, int succeeded, double meanMicros) {
+        if (errors > 0) {
+            concurrency = Math.max(minConcurrency, width / 2);
+            backoffMillis = Math.min(maxBackoffMillis, Math.max(minBackoffMillis, backoffMillis * 2));
+            log.warn("{} property requests failed, concurrency now {}, pausing {} ms", errors, concurrency, backoffMillis);
+            return;
+        }
+        backoffMillis = 0;
+        if (succeeded == 0) {
+            // No latency to go by
+            return;
+        }
+        bestLatencyMicros = Math.min(bestLatencyMicros, meanMicros);
+        concurrency = meanMicros > 2 * bestLatencyMicros
+                ? Math.max(minConcurrency, width - 1)
+                : Math.min(maxConcurrency, width + 2);
+    }
+
+    private void onError(Throwable t) {
+        log.error("Property warm-up failed, retrying", t);
+        backoffMillis = maxBackoffMillis;
+        schedule(backoffMillis);
+    }
+}
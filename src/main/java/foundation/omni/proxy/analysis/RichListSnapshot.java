@@ -0,0 +1,152 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import foundation.omni.OmniDivisibleValue;
+import foundation.omni.OmniIndivisibleValue;
+import foundation.omni.OmniValue;
+import org.bitcoinj.base.Address;
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.analytics.service.TokenRichList;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All holders of a property at a block, largest first. Amounts are kept as willets (or indivisible units)
+ * in a {@code long[]} and holders as ids in an {@link AddressIndex}, so a snapshot costs 12 bytes per holder
+ * and any top-N list or page is served from it without asking the node.
+ */
+public final class RichListSnapshot {
+    private final CurrencyID currencyID;
+    private final boolean divisible;
+    private final long blockHeight;
+    private final Sha256Hash blockHash;
+    private final long timestamp;
+    private final AddressIndex index;
+    private final int[] holders;
+    private final long[] amounts;
+    private final long total;
+
+    private RichListSnapshot(CurrencyID currencyID, boolean divisible, long blockHeight, Sha256Hash blockHash,
+                             AddressIndex index, int[] holders, long[] amounts) {
+        this.currencyID = currencyID;
+        this.divisible = divisible;
+        this.blockHeight = blockHeight;
+        this.blockHash = blockHash;
+        this.timestamp = System.currentTimeMillis();
+        this.index = index;
+        this.holders = holders;
+        this.amounts = amounts;
+        this.total = Arrays.stream(amounts).sum();
+    }
+
+    /**
+     * @param currencyID property
+     * @param divisible {@code true} if the property is divisible
+     * @param blockHeight height of the block the balances are for
+     * @param blockHash hash of the block the balances are for
+     * @param index index to add the holders to
+     * @param balances amount (in coins, not willets) by address, zero amounts are skipped
+     * @return a snapshot
+     */
+    static RichListSnapshot of(CurrencyID currencyID, boolean divisible, long blockHeight, Sha256Hash blockHash,
+                               AddressIndex index, Map<String, BigDecimal> balances) {
+        List<Map.Entry<String, BigDecimal>> sorted = new ArrayList<>(balances.size());
+        balances.entrySet().stream()
+                .filter(e -> e.getValue().signum() != 0)
+                .forEach(sorted::add);
+        sorted.sort(Map.Entry.<String, BigDecimal>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        int[] holders = new int[sorted.size()];
+        long[] amounts = new long[sorted.size()];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = index.idOf(sorted.get(i).getKey());
+            BigDecimal amount = sorted.get(i).getValue();
+            amounts[i] = divisible ? amount.movePointRight(8).longValueExact() : amount.longValueExact();
+        }
+        return new RichListSnapshot(currencyID, divisible, blockHeight, blockHash, index, holders, amounts);
+    }
+
+    public CurrencyID currencyID() {
+        return currencyID;
+    }
+
+    public long blockHeight() {
+        return blockHeight;
+    }
+
+    public Sha256Hash blockHash() {
+        return blockHash;
+    }
+
+    /**
+     * @return number of holders
+     */
+    public int size() {
+        return holders.length;
+    }
+
+    /**
+     * @param n number of entries
+     * @return the {@code n} largest holders, and the sum of the rest as the other balance
+     */
+    public TokenRichList<OmniValue, CurrencyID> top(int n) {
+        int end = Math.min(Math.max(n, 0), holders.length);
+        long other = total - Arrays.stream(amounts, 0, end).sum();
+        return new TokenRichList<>(blockHeight, blockHash, timestamp, currencyID, entries(0, end), value(other));
+    }
+
+    /**
+     * @param offset index of the first holder (0 is the largest)
+     * @param limit maximum number of holders
+     * @return a page of holders
+     */
+    public RichListPage page(int offset, int limit) {
+        int start = Math.min(Math.max(offset, 0), holders.length);
+        int end = (int) Math.min((long) start + Math.max(limit, 0), holders.length);
+        return new RichListPage(currencyID, blockHeight, blockHash, start, holders.length, entries(start, end));
+    }
+
+    /**
+     * @param other another snapshot of the same property
+     * @param n number of entries
+     * @return {@code true} if {@link #top(int)} would have the same holders and amounts in both snapshots
+     */
+    boolean sameTop(RichListSnapshot other, int n) {
+        int end = Math.min(Math.max(n, 0), holders.length);
+        return end == Math.min(Math.max(n, 0), other.holders.length)
+                && total - Arrays.stream(amounts, 0, end).sum() == other.total - Arrays.stream(other.amounts, 0, end).sum()
+                && Arrays.equals(holders, 0, end, other.holders, 0, end)
+                && Arrays.equals(amounts, 0, end, other.amounts, 0, end);
+    }
+
+    private List<TokenRichList.TokenBalancePair<OmniValue>> entries(int start, int end) {
+        List<Address> addresses = index.addresses(Arrays.copyOfRange(holders, start, end));
+        List<TokenRichList.TokenBalancePair<OmniValue>> entries = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            entries.add(new TokenRichList.TokenBalancePair<>(addresses.get(i - start), value(amounts[i])));
+        }
+        return entries;
+    }
+
+    private OmniValue value(long amount) {
+        return divisible ? OmniDivisibleValue.of(BigDecimal.valueOf(amount, 8)) : OmniIndivisibleValue.of(amount);
+    }
+
+    /**
+     * A page of a rich list
+     *
+     * @param currencyID property
+     * @param blockHeight height of the block the balances are for
+     * @param blockHash hash of the block the balances are for
+     * @param offset index of the first entry (0 is the largest holder)
+     * @param holders total number of holders
+     * @param entries the holders on this page
+     */
+    public record RichListPage(CurrencyID currencyID, long blockHeight, Sha256Hash blockHash, int offset, int holders,
+                               List<TokenRichList.TokenBalancePair<OmniValue>> entries) {}
+}
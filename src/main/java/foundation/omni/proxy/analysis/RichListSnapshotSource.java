@@ -0,0 +1,15 @@
+package foundation.omni.proxy.analysis;
+
+import foundation.omni.CurrencyID;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Source of {@link RichListSnapshot}s for {@link CachedRichListService}
+ */
+public interface RichListSnapshotSource {
+    /**
+     * @param id property
+     * @return a snapshot of all holders at the node's current tip
+     */
+    Single<RichListSnapshot> snapshot(CurrencyID id);
+}
@@ -0,0 +1,16 @@
+package foundation.omni.proxy.analysis;
+
+/**
+ * Progress of loading full property info into the {@link OmniPropertyListCache}
+ *
+ * @param properties properties in the cache
+ * @param placeholders properties not loaded yet
+ * @param stale properties waiting to be reloaded (e.g. changed since a snapshot was saved)
+ * @param loaded properties loaded so far
+ * @param failed properties given up on after repeated failures
+ * @param concurrency current request concurrency
+ * @param warm {@code true} once the property list was loaded and had no placeholders left
+ * @param secondsToWarm seconds from startup until the cache was warm, {@code null} if not warm yet
+ */
+public record WarmupProgress(int properties, int placeholders, int stale, long loaded, int failed, int concurrency,
+                             boolean warm, Double secondsToWarm) {}
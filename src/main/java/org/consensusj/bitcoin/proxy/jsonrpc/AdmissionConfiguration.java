@@ -0,0 +1,40 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Configuration for {@link AdmissionController}. Limits apply to all upstream servers combined.
+ */
+@ConfigurationProperties("btcproxyd.rpcproxy.admission")
+public interface AdmissionConfiguration {
+    /**
+     * @return {@code true} if admission control is enabled
+     */
+    @Bindable(defaultValue = "true")
+    boolean getEnabled();
+
+    /**
+     * @return maximum upstream requests in flight (Bitcoin Core's default {@code -rpcworkqueue} is 16)
+     */
+    @Bindable(defaultValue = "16")
+    int getMaxConcurrent();
+
+    @Bindable(defaultValue = "16")
+    int getCheapMaxConcurrent();
+
+    @Bindable(defaultValue = "256")
+    int getCheapMaxQueued();
+
+    @Bindable(defaultValue = "8")
+    int getNormalMaxConcurrent();
+
+    @Bindable(defaultValue = "128")
+    int getNormalMaxQueued();
+
+    @Bindable(defaultValue = "2")
+    int getExpensiveMaxConcurrent();
+
+    @Bindable(defaultValue = "8")
+    int getExpensiveMaxQueued();
+}
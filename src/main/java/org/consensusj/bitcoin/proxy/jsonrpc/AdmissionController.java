@@ -0,0 +1,177 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.CompletableEmitter;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Limits the upstream requests in flight so that expensive methods (e.g. {@code scantxoutset}) can't fill
+ * Bitcoin Core's RPC work queue and starve cheap ones (e.g. {@code getblockcount}).
+ * <p>
+ * Each {@link CostClass} has a concurrency limit and a bounded wait queue, and there is an overall concurrency
+ * limit. A request that can't start is queued, and when a request completes, queued requests are started in
+ * priority order ({@code CHEAP} first). A request whose queue is full fails immediately with an
+ * {@link AdmissionRejectedException}. A queued request that is cancelled leaves the queue.
+ */
+@Singleton
+public class AdmissionController {
+    private static final CostClass[] costClasses = CostClass.values();
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final int[] classMaxConcurrent;
+    private final int[] classMaxQueued;
+    // State below is guarded by `this`
+    private int running = 0;
+    private final int[] classRunning = new int[costClasses.length];
+    private final List<ArrayDeque<Permit>> queues = new ArrayList<>();
+
+    @Inject
+    public AdmissionController(AdmissionConfiguration config) {
+        this(config.getEnabled(),
+                config.getMaxConcurrent(),
+                new int[] {config.getCheapMaxConcurrent(), config.getNormalMaxConcurrent(), config.getExpensiveMaxConcurrent()},
+                new int[] {config.getCheapMaxQueued(), config.getNormalMaxQueued(), config.getExpensiveMaxQueued()});
+    }
+
+    /**
+     * @param enabled if {@code false} all requests are admitted immediately
+     * @param maxConcurrent overall limit
+     * @param classMaxConcurrent limit per {@link CostClass}, in declaration order
+     * @param classMaxQueued queue length per {@link CostClass}, in declaration order
+     */
+    AdmissionController(boolean enabled, int maxConcurrent, int[] classMaxConcurrent, int[] classMaxQueued) {
+        this.enabled = enabled;
+        this.maxConcurrent = maxConcurrent;
+        this.classMaxConcurrent = classMaxConcurrent.clone();
+        this.classMaxQueued = classMaxQueued.clone();
+        for (CostClass ignored : costClasses) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * @param costClass cost of the work
+     * @param work upstream call, subscribed to when admitted
+     * @param <T> result type
+     * @return A Single that waits for admission, or fails with {@link AdmissionRejectedException}
+     */
+    public <T> Single<T> admit(CostClass costClass, Single<T> work) {
+        if (!enabled) {
+            return work;
+        }
+        return Single.using(() -> new Permit(costClass), permit -> permit.acquire().andThen(work), Permit::release);
+    }
+
+    /**
+     * @param costClass cost of the work
+     * @param work upstream call, subscribed to when admitted
+     * @param <T> result type
+     * @return A Flowable that waits for admission, or fails with {@link AdmissionRejectedException}
+     */
+    public <T> Flowable<T> admit(CostClass costClass, Publisher<T> work) {
+        if (!enabled) {
+            return Flowable.fromPublisher(work);
+        }
+        return Flowable.using(() -> new Permit(costClass), permit -> permit.acquire().andThen(work), Permit::release);
+    }
+
+    public synchronized int running(CostClass costClass) {
+        return classRunning[costClass.ordinal()];
+    }
+
+    public synchronized int queued(CostClass costClass) {
+        return queues.get(costClass.ordinal()).size();
+    }
+
+    // Must hold lock
+    private boolean canStart(CostClass costClass) {
+        return running < maxConcurrent && classRunning[costClass.ordinal()] < classMaxConcurrent[costClass.ordinal()];
+    }
+
+    // Must hold lock
+    private void start(Permit permit) {
+        running++;
+        classRunning[permit.costClass.ordinal()]++;
+        permit.granted = true;
+    }
+
+    // Must hold lock, returns the emitters of the permits that were started
+    private List<CompletableEmitter> dispatch() {
+        List<CompletableEmitter> started = new ArrayList<>();
+        for (CostClass costClass : costClasses) {
+            ArrayDeque<Permit> queue = queues.get(costClass.ordinal());
+            while (!queue.isEmpty() && canStart(costClass)) {
+                Permit permit = queue.poll();
+                start(permit);
+                started.add(permit.waiting);
+                permit.waiting = null;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Admission of one request. Emitters are only signalled outside the lock.
+     */
+    private final class Permit {
+        private final CostClass costClass;
+        // Fields below are guarded by AdmissionController.this
+        private CompletableEmitter waiting;
+        private boolean granted;
+
+        Permit(CostClass costClass) {
+            this.costClass = costClass;
+        }
+
+        Completable acquire() {
+            return Completable.create(emitter -> {
+                boolean started = false;
+                boolean rejected = false;
+                synchronized (AdmissionController.this) {
+                    ArrayDeque<Permit> queue = queues.get(costClass.ordinal());
+                    if (queue.isEmpty() && canStart(costClass)) {
+                        start(this);
+                        started = true;
+                    } else if (queue.size() >= classMaxQueued[costClass.ordinal()]) {
+                        rejected = true;
+                    } else {
+                        waiting = emitter;
+                        queue.add(this);
+                    }
+                }
+                if (started) {
+                    emitter.onComplete();
+                } else if (rejected) {
+                    emitter.onError(new AdmissionRejectedException(costClass));
+                }
+            });
+        }
+
+        void release() {
+            List<CompletableEmitter> started;
+            synchronized (AdmissionController.this) {
+                if (!granted) {
+                    // Rejected, or cancelled while queued
+                    if (waiting != null) {
+                        queues.get(costClass.ordinal()).remove(this);
+                        waiting = null;
+                    }
+                    return;
+                }
+                granted = false;
+                running--;
+                classRunning[costClass.ordinal()]--;
+                started = dispatch();
+            }
+            started.forEach(CompletableEmitter::onComplete);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import java.util.Locale;
+
+/**
+ * Thrown (signalled) by {@link AdmissionController} when the wait queue for a request's
+ * {@link CostClass} is full.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    /**
+     * JSON-RPC error code (from the implementation-defined server error range) for rejected requests
+     */
+    public static final int JSON_RPC_CODE = -32001;
+    private final CostClass costClass;
+
+    public AdmissionRejectedException(CostClass costClass) {
+        super("Server busy (" + costClass.name().toLowerCase(Locale.ROOT) + " request queue full), try again later");
+        this.costClass = costClass;
+    }
+
+    public CostClass getCostClass() {
+        return costClass;
+    }
+}
@@ -1,21 +1,24 @@
 package org.consensusj.bitcoin.proxy.jsonrpc;
 
+import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
 import org.consensusj.bitcoin.json.pojo.ChainTip;
 import org.consensusj.bitcoin.rx.ChainTipPublisher;
-import org.consensusj.bitcoin.rx.jsonrpc.RxBitcoinClient;
 import org.consensusj.jsonrpc.JsonRpcRequest;
-import org.consensusj.jsonrpc.JsonRpcResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.inject.Singleton;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 // TODO: Refactor to remover usage of RxJava, except ChainTipPublisher which will migrate to Flow.Publisher
 /**
@@ -25,22 +28,59 @@ import java.util.concurrent.ConcurrentHashMap;
  *      <li>are updated with every new block</li>
  *      <li>have no data/fields that change between blocks</li>
  *  </ul>
- *
- *  TODO: Add eager caching for a Set of methods
+ *  Responses are cached as {@link SerializedRpcResponse}s, serialized once per block, so a cache hit
+ *  only needs to splice in the request {@code id}. Error responses are not cached.
+ *  <p>
+ *  Each method has one of three policies:
+ *  <dl>
+ *      <dt>lazy</dt><dd>Invalidated on a new block and fetched by the next request (the default)</dd>
+ *      <dt>warmup</dt><dd>Prefetched as soon as a new block arrives, the previous block's response
+ *      keeps being served until the new response lands</dd>
+ *      <dt>stale-while-revalidate</dt><dd>Like warmup, but intended for expensive methods like
+ *      {@code gettxoutsetinfo}: the previous response is served for as long as the refresh takes and only
+ *      one refresh is in flight at a time</dd>
+ *  </dl>
+ *  Every response carries the height of the block it was fetched for. Callers that need a response for
+ *  the current block can request one with {@code fresh = true}, which waits for a refresh if necessary.
+ *  <p>
+ *  Entries are tagged with the {@link ChainGeneration} they were fetched for. A new best block (including a
+ *  reorg at the same or a lower height) supersedes older generations, repeated tips are ignored, and a fetch
+ *  that completes after a newer generation has arrived never replaces that generation's entry.
+ *  <p>
+ *  A method can also be given a {@link MethodRoute#cacheTtl() cache TTL}, after which its response is treated like
+ *  a response from a previous block (lazy methods are fetched again, other methods are refreshed in the background.)
  */
 @Singleton
 public class CachedRpcService {
     private static final Logger log = LoggerFactory.getLogger(CachedRpcService.class);
-    private final Set<String> cached = Set.of("getchaintips", "getblockcount", "getblockchaininfo", "getbestblockhash", "gettxoutsetinfo");
-    private final ConcurrentHashMap<String, Single<Object>> cache = new ConcurrentHashMap<>();
-    private final RxBitcoinClient rxBitcoinClient;
+    static final Set<String> cachedMethods = Set.of("getchaintips", "getblockcount", "getblockchaininfo", "getbestblockhash", "gettxoutsetinfo");
+    // The response currently being served for each method (possibly for a previous block)
+    private final ConcurrentHashMap<String, Slot> cache = new ConcurrentHashMap<>();
+    // In-flight background refreshes
+    private final ConcurrentHashMap<String, Slot> refreshing = new ConcurrentHashMap<>();
+    private final List<String> warmup;
+    private final List<String> staleWhileRevalidate;
+    // Only updated by the ChainTip subscription
+    private final AtomicReference<ChainGeneration> generation = new AtomicReference<>(ChainGeneration.INITIAL);
+    private final UpstreamRpcClient upstream;
     private final ChainTipPublisher chainTipPublisher;
+    private final MethodRouter router;
+    private final ProxyMetrics metrics;
+    private final Timer refreshTimer;
     private Disposable chainTipSubscription;
 
-    // TODO: Change constructor to take a regular BitcoinClient
-    public CachedRpcService(RxBitcoinClient rxBitcoinClient, ChainTipPublisher chainTipPublisher) {
-        this.rxBitcoinClient = rxBitcoinClient;
+    public CachedRpcService(UpstreamRpcClient upstreamRpcClient,
+                            ChainTipPublisher chainTipPublisher,
+                            MethodRouter router,
+                            ProxyMetrics metrics,
+                            JsonRpcProxyConfiguration config) {
+        upstream = upstreamRpcClient;
         this.chainTipPublisher = chainTipPublisher;
+        this.router = router;
+        this.metrics = metrics;
+        refreshTimer = metrics.refreshTimer("rpc");
+        warmup = cachedOnly("warmup", config.getWarmup());
+        staleWhileRevalidate = cachedOnly("stale-while-revalidate", config.getStaleWhileRevalidate());
     }
 
     @PostConstruct
@@ -53,13 +93,55 @@ public class CachedRpcService {
     }
 
     public boolean isCached(JsonRpcRequest request) {
-        return cached.contains(request.getMethod());
+        return isCached(request.getMethod());
+    }
+
+    public boolean isCached(String method) {
+        return cachedMethods.contains(method);
     }
 
     // TODO: Change to return CompletableFuture
-    public Single<JsonRpcResponse<?>> callCached(JsonRpcRequest request) {
-        return fetch(request.getMethod())
-            .map(result -> responseFromResult(request, result));
+    public Single<CachedResponse> callCached(JsonRpcRequest request) {
+        return callCached(request, false);
+    }
+
+    /**
+     * @param request A request for a cached method
+     * @param fresh if {@code true}, don't return a response from a previous block
+     * @return A response
+     */
+    public Single<CachedResponse> callCached(JsonRpcRequest request, boolean fresh) {
+        String method = request.getMethod();
+        ChainGeneration current = generation.get();
+        Duration ttl = router.route(method).cacheTtl();
+        long now = System.nanoTime();
+        Slot slot = cache.get(method);
+        Single<CachedResponse> response;
+        if (slot != null && slot.isCurrent(current, ttl, now)) {
+            metrics.rpcCache(ProxyMetrics.CacheResult.HIT);
+            response = slot.response();
+        } else if (slot != null && isRefreshed(method)) {
+            if (fresh) {
+                metrics.rpcCache(ProxyMetrics.CacheResult.MISS);
+                response = awaitCurrent(method);
+            } else {
+                // Serve the superseded (or expired) response, it is already being refreshed unless it expired
+                metrics.rpcCache(ProxyMetrics.CacheResult.STALE);
+                refresh(method);
+                response = slot.response();
+            }
+        } else {
+            // No entry, or a lazy entry for a superseded generation (or that expired)
+            Slot loaded = cache.compute(method, (m, existing) -> existing != null && existing.isCurrent(current, ttl, now)
+                            ? existing
+                            : load(m, current));
+            // An entry requested before this call was loaded by another request
+            metrics.rpcCache(loaded.fetchedAt() < now ? ProxyMetrics.CacheResult.HIT : ProxyMetrics.CacheResult.MISS);
+            response = loaded.response();
+        }
+        return response
+                .doOnError(t -> log.error("Error reading from RPC cache", t))
+                .doOnSuccess(r -> log.debug("pulled from cache {}", method));
     }
 
     private void onError(Throwable t) {
@@ -67,28 +149,138 @@ public class CachedRpcService {
     }
 
     /**
-     * On a new block, invalidate the cache.
+     * On a new best block, drop the superseded entries for lazy methods and start refreshing the others.
      *
-     * @param tip the new ChainTip (currently unused)
+     * @param tip the new ChainTip
      */
     private void onNewBlock(ChainTip tip) {
-        log.info("new block -- clearing cache");
-        cache.clear();
+        long start = System.nanoTime();
+        ChainGeneration previous = generation.get();
+        ChainGeneration next = previous.next(tip);
+        if (next == previous) {
+            log.debug("ignoring repeated tip {}", tip.getHash());
+            return;
+        }
+        generation.set(next);
+        log.info("new block {} {} -- refreshing {} {}", next.height(), next.hash(), warmup, staleWhileRevalidate);
+        cache.entrySet().removeIf(e -> !isRefreshed(e.getKey()) && next.isNewerThan(e.getValue().generation()));
+        warmup.forEach(this::refresh);
+        staleWhileRevalidate.forEach(this::refresh);
+        metrics.chainTipHandled("rpc-cache", tip, start);
     }
 
-    private Single<Object> fetch(String method) {
-        return cache.computeIfAbsent(method, key -> {
-            log.info("Fetching {}", method);
-            return rxBitcoinClient.call(() -> rxBitcoinClient.send(method))
-                    .doOnError(t -> log.error("Got an error from upstream", t))
-                    .doOnSuccess(result -> log.info("got result for cache {}", result))
+    // True if the method is refreshed in the background (rather than invalidated) on a new block
+    private boolean isRefreshed(String method) {
+        return warmup.contains(method) || staleWhileRevalidate.contains(method);
+    }
+
+    /**
+     * Wait for a response for the current block, refreshing (again) if an in-flight refresh is for
+     * a previous block.
+     */
+    private Single<CachedResponse> awaitCurrent(String method) {
+        Slot pending = refresh(method);
+        return pending.generation().equals(generation.get())
+                ? pending.response()
+                : pending.response().flatMap(r -> awaitCurrent(method));
+    }
+
+    /**
+     * Start a background refresh of a method unless one is already in flight. When the refresh
+     * completes its response is swapped into the cache, and if a new block arrived while it was
+     * in flight, another refresh is started.
+     *
+     * @param method method to fetch
+     * @return The in-flight refresh
+     */
+    private Slot refresh(String method) {
+        Slot slot = refreshing.computeIfAbsent(method, m -> {
+            ChainGeneration requested = generation.get();
+            long fetchedAt = System.nanoTime();
+            Single<CachedResponse> response = fetch(method, requested)
+                    .doOnSuccess(r -> onRefreshed(method, requested, fetchedAt, r))
+                    .doOnError(t -> {
+                        log.error("Got an error from upstream refreshing {}", method, t);
+                        refreshing.remove(method);
+                    })
                     .cache();
-        })
-        .doOnError(t -> log.error("Error reading from RPC cache", t))
-        .doOnSuccess(r -> log.debug("pulled from cache {}", r));
+            return new Slot(requested, fetchedAt, response);
+        });
+        // Errors are logged above
+        slot.response().subscribe(r -> {}, t -> {});
+        return slot;
     }
 
-    private static <RSLT> JsonRpcResponse<RSLT> responseFromResult(JsonRpcRequest request, RSLT result) {
-        return new JsonRpcResponse<>(request, result);
+    private void onRefreshed(String method, ChainGeneration requested, long fetchedAt, CachedResponse response) {
+        if (response.response().isError()) {
+            log.warn("error response refreshing {}", method);
+        } else {
+            log.info("refreshed {} ({} bytes)", method, response.response().length());
+            Slot fresh = new Slot(requested, fetchedAt, Single.just(response));
+            // Never replace an entry for a newer generation
+            cache.merge(method, fresh, (current, replacement) -> current.generation().isNewerThan(replacement.generation()) ? current : replacement);
+        }
+        refreshing.remove(method);
+        if (generation.get().isNewerThan(requested)) {
+            refresh(method);
+        }
+    }
+
+    private Slot load(String method, ChainGeneration requested) {
+        log.info("Fetching {}", method);
+        // Reference to the cached Slot, so it (and not a newer entry) can be removed on error
+        AtomicReference<Slot> self = new AtomicReference<>();
+        Single<CachedResponse> response = fetch(method, requested)
+                .doOnError(t -> {
+                    log.error("Got an error from upstream", t);
+                    cache.remove(method, self.get());
+                })
+                .doOnSuccess(r -> {
+                    log.info("got result for cache {} ({} bytes)", method, r.response().length());
+                    if (r.response().isError()) {
+                        cache.remove(method, self.get());
+                    }
+                })
+                .cache();
+        self.set(new Slot(requested, System.nanoTime(), response));
+        return self.get();
+    }
+
+    private Single<CachedResponse> fetch(String method, ChainGeneration requested) {
+        String height = requested.height() >= 0 ? Long.toString(requested.height()) : null;
+        return Single.defer(() -> {
+            long start = System.nanoTime();
+            return upstream.call(method, List.of())
+                    .doOnSuccess(r -> refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .map(response -> new CachedResponse(response, height));
+        });
+    }
+
+    private List<String> cachedOnly(String policy, List<String> methods) {
+        return methods.stream()
+                .filter(method -> {
+                    if (!cachedMethods.contains(method)) log.warn("Ignoring {} method {}, it is not cached", policy, method);
+                    return cachedMethods.contains(method);
+                })
+                .toList();
+    }
+
+    /**
+     * A cached response and the height of the block it was fetched for.
+     *
+     * @param response serialized response
+     * @param height block height (formatted once for use in a header) or {@code null} if unknown
+     */
+    public record CachedResponse(SerializedRpcResponse response, String height) {}
+
+    /**
+     * @param generation the generation the response was requested for
+     * @param fetchedAt {@link System#nanoTime()} when the response was requested
+     * @param response the (possibly in-flight) response
+     */
+    private record Slot(ChainGeneration generation, long fetchedAt, Single<CachedResponse> response) {
+        boolean isCurrent(ChainGeneration current, Duration ttl, long now) {
+            return generation.equals(current) && (ttl == null || now - fetchedAt < ttl.toNanos());
+        }
     }
 }
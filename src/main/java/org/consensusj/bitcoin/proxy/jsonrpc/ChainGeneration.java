@@ -0,0 +1,44 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.bitcoin.json.pojo.ChainTip;
+
+import java.util.Objects;
+
+/**
+ * Identifies the chain state that a per-block cache entry was fetched for. A generation is the
+ * (height, best block hash) of a {@link ChainTip} plus an {@code epoch} that increases each time the best
+ * block changes, so generations can be ordered even when a reorg lowers (or keeps) the height.
+ * <p>
+ * A cache entry is valid only for the generation it was fetched for. Comparing by hash (rather than height)
+ * means same-height and multi-block reorgs supersede entries exactly like a new block does, and comparing by
+ * epoch means a fetch that completes late can't replace an entry for a newer generation.
+ *
+ * @param epoch number of best block changes seen, {@code 0} before the first {@link ChainTip}
+ * @param height block height, {@code -1} before the first {@link ChainTip}
+ * @param hash best block hash, {@code null} before the first {@link ChainTip}
+ */
+public record ChainGeneration(long epoch, long height, Sha256Hash hash) {
+    /**
+     * Generation before the first {@link ChainTip} is received
+     */
+    public static final ChainGeneration INITIAL = new ChainGeneration(0, -1, null);
+
+    /**
+     * @param tip a (possibly repeated) chain tip
+     * @return {@code this} if {@code tip} has the same best block, otherwise the next generation
+     */
+    public ChainGeneration next(ChainTip tip) {
+        return Objects.equals(tip.getHash(), hash)
+                ? this
+                : new ChainGeneration(epoch + 1, tip.getHeight(), tip.getHash());
+    }
+
+    /**
+     * @param other another generation
+     * @return {@code true} if this generation was observed after {@code other}
+     */
+    public boolean isNewerThan(ChainGeneration other) {
+        return epoch > other.epoch;
+    }
+}
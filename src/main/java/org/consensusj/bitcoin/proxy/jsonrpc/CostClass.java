@@ -0,0 +1,37 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import java.util.Set;
+
+/**
+ * Relative cost of an upstream RPC method, used by {@link AdmissionController}. Declaration order
+ * is priority order: when upstream capacity frees up, queued {@code CHEAP} requests are admitted first.
+ */
+public enum CostClass {
+    CHEAP,
+    NORMAL,
+    EXPENSIVE;
+
+    // TODO: Make configurable
+    static final Set<String> cheapMethods = Set.of("getblockcount", "getbestblockhash", "getblockhash",
+            "getchaintips", "getdifficulty", "getconnectioncount", "getnettotals", "getmemoryinfo", "getrpcinfo",
+            "uptime", "getnetworkinfo", "getblockchaininfo", "getmempoolinfo", "estimatesmartfee");
+    static final Set<String> expensiveMethods = Set.of("gettxoutsetinfo", "scantxoutset", "scanblocks",
+            "rescanblockchain", "dumptxoutset", "getblockstats", "getchaintxstats", "verifychain", "getrawmempool",
+            "omni_listproperties", "omni_getallbalancesforid", "omni_listtransactions", "omni_listblocktransactions");
+
+    /**
+     * @param method JSON-RPC method
+     * @return the default cost class of the method
+     */
+    public static CostClass of(String method) {
+        if (method == null) {
+            return NORMAL;
+        } else if (cheapMethods.contains(method)) {
+            return CHEAP;
+        } else if (expensiveMethods.contains(method)) {
+            return EXPENSIVE;
+        } else {
+            return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.core.annotation.Nullable;
+
+/**
+ * Helpers for HTTP entity tags (ETags) and conditional requests.
+ */
+public final class EntityTags {
+    private EntityTags() {}
+
+    /**
+     * Weak comparison of an {@code If-None-Match} request header with the current entity tag, as a GET
+     * request must use
+     *
+     * @param ifNoneMatch the {@code If-None-Match} header, if any
+     * @param etag the current entity tag (quoted, possibly weak)
+     * @return {@code true} if the client's copy is current, and a {@code 304 Not Modified} can be sent
+     */
+    public static boolean matches(@Nullable String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String current = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The quoted part of a tag, without the weak indicator
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
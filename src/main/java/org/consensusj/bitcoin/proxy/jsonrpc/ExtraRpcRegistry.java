@@ -11,7 +11,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -22,6 +24,7 @@ import java.util.stream.Collectors;
 public class ExtraRpcRegistry {
     Map<String, String> helpInfo = new HashMap<>();
     private final ConcurrentHashMap<String, RPCMethodInvoke> extraMethods = new ConcurrentHashMap<>();
+    private final List<Runnable> registrationListeners = new CopyOnWriteArrayList<>();
 
     public ExtraRpcRegistry() {
     }
@@ -29,6 +32,21 @@ public class ExtraRpcRegistry {
     public void register(String methodName, String help, RPCMethodInvoke method) {
         extraMethods.put(methodName, method);
         helpInfo.put(methodName, help);
+        registrationListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * @param listener called after each method is registered
+     */
+    public void addRegistrationListener(Runnable listener) {
+        registrationListeners.add(listener);
+    }
+
+    /**
+     * @return the names of the registered methods
+     */
+    public Set<String> methods() {
+        return Set.copyOf(extraMethods.keySet());
     }
 
     public Single<String> help() {
@@ -65,6 +83,10 @@ public class ExtraRpcRegistry {
         return handler.call(request.getParams());
     }
 
+    /**
+     * An extra method. The result is serialized as the {@code result} of the JSON-RPC response, unless it is a
+     * {@link SerializedRpcResponse}, which is sent as-is (with the request's {@code id}).
+     */
     @FunctionalInterface
     public interface RPCMethodInvoke {
         Single<?> call(List<Object> params);
@@ -0,0 +1,31 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link HttpCachePolicy}. The {@code max-age} of a single method can be set with the
+ * {@code http-max-age} {@link MethodPolicyConfiguration method policy}.
+ */
+@ConfigurationProperties("btcproxyd.http-cache")
+public interface HttpCacheConfiguration {
+    /**
+     * @return {@code true} to send validators and caching directives with GET responses
+     */
+    @Bindable(defaultValue = "true")
+    boolean getEnabled();
+
+    /**
+     * @return {@code max-age} of responses that change with the chain tip
+     */
+    @Bindable(defaultValue = "5s")
+    Duration getTipMaxAge();
+
+    /**
+     * @return {@code max-age} of responses for block-keyed data that never changes
+     */
+    @Bindable(defaultValue = "365d")
+    Duration getImmutableMaxAge();
+}
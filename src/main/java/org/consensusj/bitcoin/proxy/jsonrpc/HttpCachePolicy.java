@@ -0,0 +1,236 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.bitcoin.json.pojo.ChainTip;
+import org.consensusj.bitcoin.rx.ChainTipPublisher;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * HTTP validators ({@code ETag}) and {@code Cache-Control} directives for GET requests, so that clients and shared
+ * caches (e.g. a CDN) in front of the proxy can absorb repeated reads. Each request gets one of three policies:
+ * <dl>
+ *     <dt>Immutable</dt><dd>Block-keyed results without chain-dependent fields (e.g. {@code getblock <hash> 0}).
+ *     The ETag is derived from the request (the block or transaction hash is a content hash) and successful
+ *     responses are {@code immutable}.</dd>
+ *     <dt>Tip</dt><dd>Results that change with the chain tip (methods cached per block and block-keyed results with
+ *     {@code confirmations}). The ETag is derived from the best block hash, so a client holding the current version
+ *     is answered with {@code 304 Not Modified} without a cache lookup or upstream request.</dd>
+ *     <dt>Volatile</dt><dd>Everything else. The ETag is a hash of the response, and responses must be revalidated
+ *     unless the method has an {@code http-max-age} policy.</dd>
+ * </dl>
+ */
+@Singleton
+public class HttpCachePolicy {
+    private static final Logger log = LoggerFactory.getLogger(HttpCachePolicy.class);
+    private static final String noCache = "no-cache";
+    private final HttpCacheConfiguration config;
+    private final ChainTipPublisher chainTipPublisher;
+    private final JsonFactory jsonFactory;
+    private volatile ChainTip tip;
+    private Disposable chainTipSubscription;
+
+    enum Freshness {
+        IMMUTABLE,
+        TIP,
+        VOLATILE
+    }
+
+    public HttpCachePolicy(HttpCacheConfiguration config, ChainTipPublisher chainTipPublisher, ObjectMapper jsonMapper) {
+        this.config = config;
+        this.chainTipPublisher = chainTipPublisher;
+        jsonFactory = jsonMapper.getFactory();
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (config.getEnabled() && chainTipSubscription == null) {
+            chainTipSubscription = Flowable.fromPublisher(chainTipPublisher)
+                    .subscribe(t -> tip = t, t -> log.error("HttpCachePolicy onError: ", t));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (chainTipSubscription != null) {
+            chainTipSubscription.dispose();
+        }
+    }
+
+    /**
+     * Answer a GET request with {@code 304 Not Modified} if the client's copy is current, otherwise make the call
+     * and add validators and caching directives to its response.
+     *
+     * @param request the request
+     * @param route the route of the request
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @param call makes the call
+     * @return the response
+     */
+    public Publisher<HttpResponse<?>> conditional(JsonRpcRequest request, MethodRoute route, @Nullable String ifNoneMatch,
+                                                 Supplier<Publisher<HttpResponse<?>>> call) {
+        if (!config.getEnabled() || route.handler() == MethodRoute.Handler.DENIED) {
+            return call.get();
+        }
+        Optional<ImmutableRpcCache.Key> key = ImmutableRpcCache.keyOf(request);
+        Freshness freshness = freshnessOf(route, key);
+        String etag = switch (freshness) {
+            case IMMUTABLE -> keyTag(key.orElseThrow());
+            case TIP -> tipTag();
+            case VOLATILE -> null;
+        };
+        if (etag != null && EntityTags.matches(ifNoneMatch, etag)) {
+            return Flowable.just(notModified(etag, cacheControl(freshness, route)));
+        }
+        return Flowable.fromPublisher(call.get())
+                .map(response -> decorate(response, freshness, route, etag, ifNoneMatch));
+    }
+
+    /**
+     * Respond with data derived from the chain at a block, tagged with the block's hash
+     *
+     * @param blockHash hash of the block the data is for
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @param body the data
+     * @return the response, or {@code 304 Not Modified} if the client has the data for the block
+     */
+    public HttpResponse<?> atBlock(Sha256Hash blockHash, @Nullable String ifNoneMatch, Object body) {
+        if (!config.getEnabled()) {
+            return HttpResponse.ok(body);
+        }
+        String etag = blockTag(blockHash);
+        String cacheControl = maxAge(config.getTipMaxAge());
+        return EntityTags.matches(ifNoneMatch, etag)
+                ? notModified(etag, cacheControl)
+                : HttpResponse.ok(body)
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+
+    static Freshness freshnessOf(MethodRoute route, Optional<ImmutableRpcCache.Key> key) {
+        if (route.handler() == MethodRoute.Handler.CACHED) {
+            return Freshness.TIP;
+        } else if (route.handler() == MethodRoute.Handler.IMMUTABLE && key.isPresent()) {
+            return ImmutableRpcCache.isChainIndependent(key.get()) ? Freshness.IMMUTABLE : Freshness.TIP;
+        } else {
+            return Freshness.VOLATILE;
+        }
+    }
+
+    private HttpResponse<?> decorate(HttpResponse<?> response, Freshness freshness, MethodRoute route,
+                                     @Nullable String etag, @Nullable String ifNoneMatch) {
+        if (!(response instanceof MutableHttpResponse<?> mutable) || response.getStatus() != HttpStatus.OK) {
+            return response;
+        }
+        byte[] body = response.getBody().orElse(null) instanceof byte[] bytes ? bytes : null;
+        switch (freshness) {
+            case IMMUTABLE -> {
+                // An error (e.g. an unknown block) may not be permanent
+                if (body == null || isErrorResponse(body)) {
+                    return mutable.header(HttpHeaders.CACHE_CONTROL, noCache);
+                }
+            }
+            case TIP -> {
+                // A response calculated at a previous block (served while refreshing, or with confirmations from an older
+                // tip) can't have the current tag
+                String height = response.getHeaders().get(RxBitcoinJsonRpcProxyService.BLOCK_HEIGHT_HEADER);
+                ChainTip current = tip;
+                if (current == null || (height != null && !height.equals(Integer.toString(current.getHeight())))) {
+                    return mutable.header(HttpHeaders.CACHE_CONTROL, noCache);
+                }
+                etag = blockTag(current.getHash());
+            }
+            case VOLATILE -> {
+                if (body == null) {
+                    return mutable.header(HttpHeaders.CACHE_CONTROL, cacheControl(freshness, route));
+                }
+                etag = "W/\"" + Sha256Hash.of(body).toString().substring(0, 32) + "\"";
+                if (EntityTags.matches(ifNoneMatch, etag)) {
+                    return notModified(etag, cacheControl(freshness, route));
+                }
+            }
+        }
+        return mutable.header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl(freshness, route));
+    }
+
+    private String cacheControl(Freshness freshness, MethodRoute route) {
+        if (route.httpMaxAge() != null) {
+            return maxAge(route.httpMaxAge());
+        }
+        return switch (freshness) {
+            case IMMUTABLE -> maxAge(config.getImmutableMaxAge()) + ", immutable";
+            case TIP -> maxAge(config.getTipMaxAge());
+            case VOLATILE -> noCache;
+        };
+    }
+
+    private static String maxAge(Duration maxAge) {
+        return "public, max-age=" + maxAge.toSeconds();
+    }
+
+    private static MutableHttpResponse<?> notModified(String etag, String cacheControl) {
+        return HttpResponse.notModified()
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+
+    private @Nullable String tipTag() {
+        ChainTip current = tip;
+        return current != null ? blockTag(current.getHash()) : null;
+    }
+
+    static String blockTag(Sha256Hash blockHash) {
+        return "W/\"" + blockHash.toString().substring(0, 32) + "\"";
+    }
+
+    static String keyTag(ImmutableRpcCache.Key key) {
+        String canonical = key.method() + " " + key.hash() + " " + key.variant();
+        return "\"" + Sha256Hash.of(canonical.getBytes(StandardCharsets.UTF_8)).toString().substring(0, 32) + "\"";
+    }
+
+    /**
+     * @param body a serialized JSON-RPC response
+     * @return {@code true} unless it has a {@code null} (or no) {@code error}
+     */
+    boolean isErrorResponse(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return true;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals("error")) {
+                    return value != JsonToken.VALUE_NULL;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
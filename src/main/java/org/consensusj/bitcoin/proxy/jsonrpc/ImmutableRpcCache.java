@@ -0,0 +1,640 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.consensusj.bitcoin.json.pojo.ChainTip;
+import org.consensusj.bitcoin.rx.ChainTipPublisher;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed cache for RPC results that do not change once their block is buried:
+ * <ul>
+ *     <li>{@code getblock <hash> [verbosity]}</li>
+ *     <li>{@code getblockheader <hash> [verbose]}</li>
+ *     <li>{@code getblockstats <hash>}</li>
+ *     <li>{@code getrawtransaction <txid> [verbose] [blockhash]} (confirmed transactions only)</li>
+ * </ul>
+ * Entries are keyed by method, hash and verbosity and (unlike {@link CachedRpcService}) survive new blocks. The
+ * {@code confirmations} field is the only field of these results that changes as the chain grows, so it is
+ * stored without it and recalculated from the current tip when an entry is served. Results that contain
+ * {@code confirmations} are only cached once buried by {@link ImmutableRpcCacheConfiguration#getMinConfirmations()}
+ * blocks.
+ * <p>
+ * Results are held serialized, so the size limit accounts for the memory they actually use and a hit is served
+ * without Jackson work. Entries are evicted least-recently-used when the size limit is reached, are softly
+ * referenced so the garbage collector can reclaim them under memory pressure, and entries with chain-dependent
+ * fields are evicted when a reorg is suspected: when the height doesn't increase by one, or when the new tip's
+ * parent isn't the previous tip.
+ * <p>
+ * If {@link ImmutableRpcCacheConfiguration#getDiskDirectory()} is set, results are also written (in the background)
+ * to an {@link ImmutableRpcDiskStore}, and a miss in memory checks the disk (on an I/O thread, as the read blocks)
+ * before going upstream. The disk tier
+ * can hold much more of the chain than the heap and survives restarts. As a reorg may have happened while the proxy
+ * was down, entries with chain-dependent fields near the tip are evicted from the disk tier when the first tip
+ * is received.
+ */
+@Singleton
+public class ImmutableRpcCache {
+    private static final Logger log = LoggerFactory.getLogger(ImmutableRpcCache.class);
+    private static final Pattern hashPattern = Pattern.compile("[0-9a-fA-F]{64}");
+    private static final long NO_HEIGHT = -1;
+    // Number of recent evictions remembered to reject entries fetched before them
+    private static final int maxEvictions = 16;
+    // Number of recent blocks whose previous block hash is remembered for checkParent
+    private static final int maxParents = 16;
+    static final Set<String> cacheableMethods = Set.of("getblock", "getblockheader", "getblockstats", "getrawtransaction");
+    private final UpstreamRpcClient upstream;
+    private final ObjectMapper mapper;
+    private final ChainTipPublisher chainTipPublisher;
+    private final ImmutableRpcCacheConfiguration config;
+    private final ProxyMetrics metrics;
+    // Disk tier or null
+    private final ImmutableRpcDiskStore disk;
+    // Orders disk writes with disk evictions, so a write that was queued before an eviction can't land after it
+    private final Object diskWrites = new Object();
+    // Recent evictions, newest last, guarded by `this`
+    private final ArrayDeque<Eviction> evictions = new ArrayDeque<>();
+    // Access-ordered for LRU eviction, guarded by `this`
+    private final LinkedHashMap<Key, Slot> cache = new LinkedHashMap<>(1024, 0.75f, true);
+    // Previous block hash by block hash, from recent verbose headers and blocks (too new to cache), guarded by `this`
+    private final LinkedHashMap<String, String> parents = new LinkedHashMap<>();
+    private long cachedBytes = 0;
+    private volatile ChainGeneration tip = ChainGeneration.INITIAL;
+    private Disposable chainTipSubscription;
+
+    public ImmutableRpcCache(UpstreamRpcClient upstreamRpcClient,
+                             ObjectMapper jsonMapper,
+                             ChainTipPublisher chainTipPublisher,
+                             ImmutableRpcCacheConfiguration config,
+                             ProxyMetrics metrics) {
+        upstream = upstreamRpcClient;
+        mapper = jsonMapper;
+        this.chainTipPublisher = chainTipPublisher;
+        this.config = config;
+        this.metrics = metrics;
+        disk = openDiskStore(config);
+        if (disk != null) {
+            metrics.diskCacheSize("immutable", disk, ImmutableRpcDiskStore::size);
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (chainTipSubscription == null) {
+            log.info("starting");
+            chainTipSubscription = Flowable.fromPublisher(chainTipPublisher)
+                    .subscribe(this::onNewBlock, this::onError);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (chainTipSubscription != null) {
+            chainTipSubscription.dispose();
+        }
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                log.warn("Error closing disk tier", e);
+            }
+        }
+    }
+
+    public boolean isCacheable(JsonRpcRequest request) {
+        return config.getEnabled() && keyOf(request).isPresent();
+    }
+
+    /**
+     * Return a response from the cache, or forward the request upstream and cache the result
+     * if it is immutable.
+     *
+     * @param request a request for which {@link #isCacheable(JsonRpcRequest)} is {@code true}
+     * @return A response with the result or error, serialized minus its {@code id}
+     */
+    public Single<SerializedRpcResponse> call(JsonRpcRequest request) {
+        Key key = keyOf(request).orElseThrow(() -> new IllegalArgumentException("not cacheable: " + request.getMethod()));
+        // The result may have been fetched from a chain that is reorganized before it is cached
+        ChainGeneration generation = tip;
+        Entry entry = get(key);
+        if (entry != null) {
+            log.debug("pulled from cache {}", key);
+            metrics.immutableCache(ProxyMetrics.CacheResult.HIT);
+            return Single.just(entry.response(tip.height()));
+        }
+        metrics.immutableCache(ProxyMetrics.CacheResult.MISS);
+        Single<SerializedRpcResponse> fromUpstream = Single.defer(() -> upstream.retrieveResponse(request))
+                .map(r -> responseFromUpstream(key, r, generation));
+        if (disk == null) {
+            return fromUpstream;
+        }
+        // The disk read and parse block, so they run off the calling (event loop) thread
+        return Maybe.fromCallable(() -> getFromDisk(key))
+                .subscribeOn(Schedulers.io())
+                .doOnEvent((e, t) -> metrics.immutableDiskCache(e != null ? ProxyMetrics.CacheResult.HIT : ProxyMetrics.CacheResult.MISS))
+                .map(e -> {
+                    log.debug("pulled from disk {}", key);
+                    put(key, e, generation);
+                    return e.response(tip.height());
+                })
+                .switchIfEmpty(fromUpstream);
+    }
+
+    private void onError(Throwable t) {
+        log.error("ImmutableRpcCache onError: ", t);
+    }
+
+    /**
+     * Track the chain tip. If the new tip is not a one-block extension of the previous tip, blocks
+     * may have been reorganized out of the chain, so evict entries with chain-dependent fields near the tip.
+     * A tip one block higher may still be on another branch, so its parent is checked (asynchronously).
+     * The same entries are evicted from the disk tier on the first tip, as the chain may have been reorganized
+     * since they were written.
+     *
+     * @param chainTip the new ChainTip
+     */
+    private void onNewBlock(ChainTip chainTip) {
+        long start = System.nanoTime();
+        ChainGeneration previous = tip;
+        ChainGeneration next = previous.next(chainTip);
+        if (next == previous) {
+            return;
+        }
+        tip = next;
+        long height = next.height();
+        long previousHeight = previous.height();
+        if (previousHeight == NO_HEIGHT) {
+            if (disk != null) {
+                long evictAbove = height - config.getMaxReorgDepth();
+                log.info("First chain tip (height {}), evicting disk entries above height {}", height, evictAbove);
+                evictAbove(next, evictAbove);
+            }
+        } else if (height != previousHeight + 1) {
+            long evictAbove = Math.min(previousHeight, height) - config.getMaxReorgDepth();
+            log.warn("Possible reorg (height {} -> {}), evicting entries above height {}", previousHeight, height, evictAbove);
+            evictAbove(next, evictAbove);
+        } else {
+            checkParent(previous, next);
+        }
+        metrics.chainTipHandled("immutable-cache", chainTip, start);
+    }
+
+    /**
+     * Check that a tip one block higher than the previous tip extends it, if not evict entries with
+     * chain-dependent fields near the tip. The header of the new tip is fetched from upstream unless its
+     * previous block hash is known from a verbose header or block that a client already requested. Entries are
+     * also evicted if the check fails, as a reorg can't be ruled out.
+     *
+     * @param previous the previous tip
+     * @param next the new tip, at {@code previous.height() + 1}
+     */
+    private void checkParent(ChainGeneration previous, ChainGeneration next) {
+        long evictAbove = previous.height() - config.getMaxReorgDepth();
+        String knownParent = parentOf(next.hash().toString());
+        if (knownParent != null) {
+            checkParent(previous, next, knownParent, evictAbove);
+            return;
+        }
+        var disposable = upstream.retrieveFromPrimary(new JsonRpcRequest("getblockheader", List.of(next.hash().toString())))
+                .map(body -> mapper.readTree(body).path("result").path("previousblockhash").asText())
+                .subscribe(parentHash -> checkParent(previous, next, parentHash, evictAbove), t -> {
+                    log.warn("Can't check the parent of block {}, evicting entries above height {}", next.hash(), evictAbove, t);
+                    evictAbove(next, evictAbove);
+                });
+    }
+
+    private void checkParent(ChainGeneration previous, ChainGeneration next, String parentHash, long evictAbove) {
+        if (!isChildOf(parentHash, previous)) {
+            log.warn("Reorg (block {} {} doesn't extend {}), evicting entries above height {}",
+                    next.height(), next.hash(), previous.hash(), evictAbove);
+            evictAbove(next, evictAbove);
+        }
+    }
+
+    /**
+     * Remember the previous block hash from a verbose {@code getblockheader} or {@code getblock} result
+     *
+     * @param key cache key of the result
+     * @param result result from upstream
+     */
+    private synchronized void rememberParent(Key key, JsonNode result) {
+        JsonNode parent = result.path("previousblockhash");
+        if (parent.isTextual() && (key.method().equals("getblockheader") || key.method().equals("getblock"))) {
+            parents.put(key.hash(), parent.asText());
+            if (parents.size() > maxParents) {
+                parents.remove(parents.keySet().iterator().next());
+            }
+        }
+    }
+
+    private synchronized String parentOf(String hash) {
+        return parents.get(hash);
+    }
+
+    /**
+     * @param parentHash the {@code previousblockhash} of a block (from a verbose header), or empty if unknown
+     * @param parent a chain tip
+     * @return {@code true} if the block's previous block is {@code parent}
+     */
+    static boolean isChildOf(String parentHash, ChainGeneration parent) {
+        return parent.hash() != null && parentHash.equals(parent.hash().toString());
+    }
+
+    private SerializedRpcResponse responseFromUpstream(Key key, UpstreamRpcClient.UpstreamResponse upstreamResponse,
+                                                       ChainGeneration generation) throws IOException {
+        if (!(mapper.readTree(upstreamResponse.body()) instanceof ObjectNode response)) {
+            throw new IOException("Unexpected response to " + key.method());
+        }
+        boolean error = response.hasNonNull("error");
+        if (!error) {
+            rememberParent(key, response.path("result"));
+        }
+        Entry entry = error ? null : entryFor(key, response.path("result"));
+        if (entry == null) {
+            response.remove("id");
+            return SerializedRpcResponse.of(mapper.writeValueAsBytes(response), error).withStatus(upstreamResponse.status());
+        }
+        put(key, entry, generation);
+        putToDisk(key, entry, generation);
+        return entry.response(tip.height());
+    }
+
+    /**
+     * Create a cache entry for a result, if the result is immutable (or only has a {@code confirmations} field
+     * that can be recalculated).
+     *
+     * @param key cache key
+     * @param result result from upstream
+     * @return a cache entry or {@code null} if the result should not be cached
+     */
+    private Entry entryFor(Key key, JsonNode result) throws IOException {
+        if (result.isMissingNode() || result.isNull()) {
+            return null;
+        }
+        if (result.isObject() && key.method().equals("getrawtransaction") && !result.has("blockhash")) {
+            // Unconfirmed transaction
+            return null;
+        }
+        JsonNode confirmations = result.path("confirmations");
+        if (!confirmations.isNumber()) {
+            // Hex-encoded data or getblockstats: no chain-dependent fields
+            return Entry.of(mapper, result, NO_HEIGHT);
+        }
+        long height = tip.height();
+        if (height == NO_HEIGHT || confirmations.asLong() < config.getMinConfirmations()) {
+            return null;
+        }
+        long blockHeight = result.has("height") ? result.get("height").asLong() : height - confirmations.asLong() + 1;
+        return Entry.of(mapper, result, blockHeight);
+    }
+
+    private static ImmutableRpcDiskStore openDiskStore(ImmutableRpcCacheConfiguration config) {
+        if (!config.getEnabled() || config.getDiskDirectory() == null) {
+            return null;
+        }
+        try {
+            return new ImmutableRpcDiskStore(Path.of(config.getDiskDirectory()), config.getMaxDiskBytes(),
+                    config.getDiskSegmentBytes());
+        } catch (IOException e) {
+            log.error("Can't open disk tier {}, caching in memory only", config.getDiskDirectory(), e);
+            return null;
+        }
+    }
+
+    // Blocking, returns null on a miss
+    private Entry getFromDisk(Key key) {
+        ImmutableRpcDiskStore.Stored stored;
+        try {
+            stored = disk.get(key);
+        } catch (IOException e) {
+            log.warn("Can't read {} from disk tier", key, e);
+            return null;
+        }
+        if (stored == null) {
+            return null;
+        }
+        if (stored.blockHeight() == NO_HEIGHT) {
+            return new Entry(stored.value(), NO_HEIGHT);
+        }
+        try {
+            // Re-serialized without confirmations
+            return Entry.of(mapper, mapper.readTree(stored.value()), stored.blockHeight());
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Can't parse {} from disk tier", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write an entry to the disk tier in the background, so the response isn't delayed by I/O.
+     * The write is dropped if the entry was evicted (by a reorg) after it was fetched.
+     *
+     * @param generation the chain tip when the entry was fetched
+     */
+    private void putToDisk(Key key, Entry entry, ChainGeneration generation) {
+        if (disk == null) {
+            return;
+        }
+        var disposable = Completable.fromAction(() -> {
+                    synchronized (diskWrites) {
+                        if (isEvictedSince(generation, entry.blockHeight())) {
+                            log.debug("Not writing {}, evicted since it was fetched", key);
+                            return;
+                        }
+                        disk.put(key, entry.result(), entry.blockHeight());
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> {}, t -> log.warn("Can't write {} to disk tier", key, t));
+    }
+
+    private synchronized Entry get(Key key) {
+        Slot slot = cache.get(key);
+        if (slot == null) {
+            return null;
+        }
+        Entry entry = slot.entry().get();
+        if (entry == null) {
+            // Reclaimed by the garbage collector
+            cache.remove(key);
+            cachedBytes -= slot.weight();
+        }
+        return entry;
+    }
+
+    private synchronized void put(Key key, Entry entry, ChainGeneration generation) {
+        if (!isEvictedSince(generation, entry.blockHeight())) {
+            put(key, entry);
+        }
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.weight() > config.getMaxBytes()) {
+            return;
+        }
+        Slot previous = cache.put(key, new Slot(new SoftReference<>(entry), entry.weight(), entry.blockHeight()));
+        cachedBytes += entry.weight() - (previous != null ? previous.weight() : 0);
+        Iterator<Slot> eldest = cache.values().iterator();
+        while (cachedBytes > config.getMaxBytes() && eldest.hasNext()) {
+            cachedBytes -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Evict entries with chain-dependent fields above a height, in memory and on disk, and remember the eviction
+     * so entries fetched before it aren't cached after it.
+     *
+     * @param generation the tip that caused the eviction
+     * @param height the height above which to evict entries
+     */
+    private void evictAbove(ChainGeneration generation, long height) {
+        synchronized (diskWrites) {
+            synchronized (this) {
+                if (evictions.size() == maxEvictions) {
+                    evictions.removeFirst();
+                }
+                evictions.addLast(new Eviction(generation.epoch(), height));
+                evictAbove(height);
+            }
+            if (disk != null) {
+                try {
+                    disk.evictAbove(height);
+                } catch (IOException e) {
+                    log.error("Can't evict from disk tier", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param generation the chain tip when an entry was fetched
+     * @param blockHeight the entry's block height, or {@link #NO_HEIGHT}
+     * @return {@code true} if an eviction since {@code generation} covered {@code blockHeight} (or if it is too old
+     * to tell)
+     */
+    private synchronized boolean isEvictedSince(ChainGeneration generation, long blockHeight) {
+        if (blockHeight == NO_HEIGHT || evictions.isEmpty()) {
+            return false;
+        }
+        if (evictions.size() == maxEvictions && evictions.getFirst().epoch() > generation.epoch()) {
+            return true;
+        }
+        for (Eviction eviction : evictions) {
+            if (eviction.epoch() > generation.epoch() && blockHeight > eviction.height()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void evictAbove(long height) {
+        Iterator<Slot> slots = cache.values().iterator();
+        while (slots.hasNext()) {
+            Slot slot = slots.next();
+            if (slot.blockHeight() != NO_HEIGHT && slot.blockHeight() > height) {
+                cachedBytes -= slot.weight();
+                slots.remove();
+            }
+        }
+    }
+
+    /**
+     * Build a normalized key for a request, if the method and parameters identify immutable data.
+     *
+     * @param request A JSON-RPC request
+     * @return A key or empty if not cacheable
+     */
+    static Optional<Key> keyOf(JsonRpcRequest request) {
+        List<Object> params = request.getParams() != null ? request.getParams() : List.of();
+        if (params.isEmpty() || !(params.get(0) instanceof String hashString) || !hashPattern.matcher(hashString).matches()) {
+            return Optional.empty();
+        }
+        String hash = hashString.toLowerCase(Locale.ROOT);
+        String method = request.getMethod();
+        return switch (method) {
+            case "getblock" -> params.size() <= 2
+                    ? verbosity(param(params, 1), 1).map(v -> new Key(method, hash, v.toString()))
+                    : Optional.empty();
+            case "getblockheader" -> params.size() <= 2 && (param(params, 1) == null || param(params, 1) instanceof Boolean)
+                    ? Optional.of(new Key(method, hash, String.valueOf(param(params, 1) == null || (Boolean) param(params, 1))))
+                    : Optional.empty();
+            case "getblockstats" -> params.size() == 1
+                    ? Optional.of(new Key(method, hash, ""))
+                    : Optional.empty();
+            case "getrawtransaction" -> rawTransactionKey(hash, params);
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * @param key a cache key
+     * @return {@code true} if the result has no chain-dependent fields (hex-encoded data or block stats), so it
+     * never changes
+     */
+    static boolean isChainIndependent(Key key) {
+        return switch (key.method()) {
+            case "getblock" -> key.variant().equals("0");
+            case "getblockheader" -> key.variant().equals("false");
+            case "getblockstats" -> true;
+            case "getrawtransaction" -> key.variant().startsWith("0/");
+            default -> false;
+        };
+    }
+
+    /**
+     * Non-verbose {@code getrawtransaction} results don't indicate whether the transaction is confirmed,
+     * so they are only cacheable if a {@code blockhash} is specified.
+     */
+    private static Optional<Key> rawTransactionKey(String txid, List<Object> params) {
+        Object blockHash = param(params, 2);
+        if (params.size() > 3 || (blockHash != null && !(blockHash instanceof String s && hashPattern.matcher(s).matches()))) {
+            return Optional.empty();
+        }
+        String blockHashVariant = blockHash != null ? ((String) blockHash).toLowerCase(Locale.ROOT) : "";
+        return verbosity(param(params, 1), 0)
+                .filter(v -> v > 0 || blockHash != null)
+                .map(v -> new Key("getrawtransaction", txid, v + "/" + blockHashVariant));
+    }
+
+    private static Optional<Integer> verbosity(Object param, int defaultVerbosity) {
+        if (param == null) {
+            return Optional.of(defaultVerbosity);
+        } else if (param instanceof Boolean verbose) {
+            return Optional.of(verbose ? 1 : 0);
+        } else if (param instanceof Number num) {
+            return Optional.of(num.intValue());
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    private static Object param(List<Object> params, int index) {
+        return index < params.size() ? params.get(index) : null;
+    }
+
+    record Key(String method, String hash, String variant) {}
+
+    /**
+     * A cached result, serialized. Results with chain-dependent fields are stored without {@code confirmations},
+     * which is spliced in when the entry is served.
+     *
+     * @param result the serialized result, an object without {@code confirmations} if {@code blockHeight} is set
+     * @param blockHeight height of the result's block, or {@link ImmutableRpcCache#NO_HEIGHT} if it has no
+     *                    chain-dependent fields
+     */
+    record Entry(byte[] result, long blockHeight) {
+        private static final byte[] resultField = "{\"result\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] confirmationsField = "{\"confirmations\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] nullError = ",\"error\":null}".getBytes(StandardCharsets.US_ASCII);
+        // Approximate size of the entry's objects, key and slot
+        private static final int overhead = 256;
+
+        /**
+         * @param mapper mapper to serialize the result
+         * @param result a result
+         * @param blockHeight height of the result's block, or {@link ImmutableRpcCache#NO_HEIGHT}
+         * @return An entry for the result
+         * @throws IllegalArgumentException if {@code blockHeight} is set and the result isn't an object
+         */
+        static Entry of(ObjectMapper mapper, JsonNode result, long blockHeight) throws JsonProcessingException {
+            if (blockHeight == NO_HEIGHT) {
+                return new Entry(mapper.writeValueAsBytes(result), NO_HEIGHT);
+            }
+            if (!(result instanceof ObjectNode object)) {
+                throw new IllegalArgumentException("not an object");
+            }
+            // Shallow copy, only the top-level confirmations field is removed
+            ObjectNode withoutConfirmations = mapper.createObjectNode();
+            withoutConfirmations.setAll(object);
+            withoutConfirmations.remove("confirmations");
+            return new Entry(mapper.writeValueAsBytes(withoutConfirmations), blockHeight);
+        }
+
+        /**
+         * @return approximate memory used by the entry in bytes
+         */
+        long weight() {
+            return result.length + overhead;
+        }
+
+        /**
+         * @param tipHeight height of the current chain tip
+         * @return A response with the result, and {@code confirmations} calculated from (and tagged with) {@code tipHeight}
+         */
+        SerializedRpcResponse response(long tipHeight) {
+            if (blockHeight == NO_HEIGHT) {
+                return SerializedRpcResponse.of(concat(resultField, result, nullError), false);
+            }
+            // {"result":{"confirmations":<n>, followed by the stored object after its opening brace
+            byte[] confirmations = Long.toString(tipHeight - blockHeight + 1).getBytes(StandardCharsets.US_ASCII);
+            boolean empty = isEmptyObject(result);
+            byte[] response = new byte[resultField.length + confirmationsField.length + confirmations.length
+                    + (empty ? 0 : 1) + result.length - 1 + nullError.length];
+            int pos = copy(response, 0, resultField, 0);
+            pos = copy(response, pos, confirmationsField, 0);
+            pos = copy(response, pos, confirmations, 0);
+            if (!empty) {
+                response[pos++] = ',';
+            }
+            pos = copy(response, pos, result, 1);
+            copy(response, pos, nullError, 0);
+            return SerializedRpcResponse.of(response, false).withTipHeight(tipHeight);
+        }
+
+        private static boolean isEmptyObject(byte[] object) {
+            for (int i = 1; i < object.length; i++) {
+                if (!Character.isWhitespace(object[i])) {
+                    return object[i] == '}';
+                }
+            }
+            return false;
+        }
+
+        private static byte[] concat(byte[] a, byte[] b, byte[] c) {
+            byte[] bytes = new byte[a.length + b.length + c.length];
+            copy(bytes, copy(bytes, copy(bytes, 0, a, 0), b, 0), c, 0);
+            return bytes;
+        }
+
+        // Copy `source` from `offset` into `target` at `pos` and return the position after it
+        private static int copy(byte[] target, int pos, byte[] source, int offset) {
+            System.arraycopy(source, offset, target, pos, source.length - offset);
+            return pos + source.length - offset;
+        }
+    }
+
+    private record Slot(SoftReference<Entry> entry, long weight, long blockHeight) {}
+
+    /**
+     * @param epoch epoch of the tip that caused the eviction
+     * @param height entries with chain-dependent fields above this height were evicted
+     */
+    private record Eviction(long epoch, long height) {}
+}
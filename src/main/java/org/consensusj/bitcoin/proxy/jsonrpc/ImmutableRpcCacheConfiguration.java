@@ -0,0 +1,54 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Configuration for {@link ImmutableRpcCache}.
+ */
+@ConfigurationProperties("btcproxyd.rpcproxy.immutable-cache")
+public interface ImmutableRpcCacheConfiguration {
+    /**
+     * @return {@code true} if the cache is enabled
+     */
+    @Bindable(defaultValue = "true")
+    boolean getEnabled();
+
+    /**
+     * @return approximate upper bound on the size of cached responses, in bytes
+     */
+    @Bindable(defaultValue = "268435456")
+    long getMaxBytes();
+
+    /**
+     * @return minimum confirmations for a block (or transaction) before results that contain
+     * chain-dependent fields (e.g. {@code confirmations}, {@code nextblockhash}) are cached
+     */
+    @Bindable(defaultValue = "6")
+    int getMinConfirmations();
+
+    /**
+     * @return on a suspected reorg, how many blocks below the new tip to evict chain-dependent entries for
+     */
+    @Bindable(defaultValue = "100")
+    int getMaxReorgDepth();
+
+    /**
+     * @return directory for the disk tier (see {@link ImmutableRpcDiskStore}), {@code null} for memory only
+     */
+    @Nullable
+    String getDiskDirectory();
+
+    /**
+     * @return upper bound on the size of the disk tier, in bytes
+     */
+    @Bindable(defaultValue = "10737418240")
+    long getMaxDiskBytes();
+
+    /**
+     * @return size of each disk tier segment file, in bytes
+     */
+    @Bindable(defaultValue = "67108864")
+    long getDiskSegmentBytes();
+}
@@ -0,0 +1,354 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Second (disk) tier of {@link ImmutableRpcCache}: an append-only store of serialized results in fixed-size
+ * segment files, with an in-memory index from {@link ImmutableRpcCache.Key} to the record's location. Sealed
+ * segments are memory-mapped read-only, so reads are served from the page cache without a system call.
+ * <p>
+ * Each record is {@code int length, int crc32} followed by {@code byte type, short keyLength, key, long blockHeight,
+ * value}. A removal (after a reorg) is written as a tombstone record. The index is rebuilt on startup by scanning
+ * the segments oldest first; a torn record at the end of the last segment is truncated.
+ * <p>
+ * Space is reclaimed a whole segment at a time, oldest first, so a tombstone never outlives an older record it
+ * shadows: when over the disk budget the oldest segment is dropped along with its entries, and otherwise an oldest
+ * segment that is mostly dead is compacted by copying its live records to the active segment.
+ * <p>
+ * Thread-safe. Reads don't take a lock: the index is a concurrent map and records are never modified once written,
+ * so a read only races with the removal of its segment, in which case it misses. Writes (including compaction,
+ * which can take a while) are serialized by a lock on the store.
+ */
+final class ImmutableRpcDiskStore implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ImmutableRpcDiskStore.class);
+    private static final String suffix = ".seg";
+    private static final int headerBytes = 8;
+    private static final byte PUT = 0;
+    private static final byte TOMBSTONE = 1;
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final Map<ImmutableRpcCache.Key, Location> index = new ConcurrentHashMap<>();
+    // Oldest first, the last segment is the active (appended to) segment, guarded by `this`
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long totalBytes = 0;
+
+    /**
+     * A stored result
+     *
+     * @param value the serialized result
+     * @param blockHeight height of the block for results with chain-dependent fields, otherwise {@code -1}
+     */
+    record Stored(byte[] value, long blockHeight) {}
+
+    private record Location(Segment segment, long offset, int recordLength, int valueOffset, long blockHeight) {}
+
+    /**
+     * Open (or create) a store
+     *
+     * @param directory directory for the segment files
+     * @param maxBytes disk budget
+     * @param segmentBytes size at which a segment is sealed and a new one started
+     */
+    ImmutableRpcDiskStore(Path directory, long maxBytes, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.min(Math.max(segmentBytes, 1 << 20), 1 << 30);
+        this.maxBytes = Math.max(maxBytes, 2 * this.segmentBytes);
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            Segment segment = new Segment(segmentId(file), file);
+            segments.addLast(segment);
+            recover(segment, file == files.get(files.size() - 1));
+            totalBytes += segment.size;
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(new Segment(0, segmentPath(0)));
+        } else if (segments.getLast().size >= this.segmentBytes) {
+            seal();
+        }
+        // Sealed segments are read through their mappings
+        segments.forEach(s -> {
+            if (s != segments.getLast() && s.mapped == null) s.map();
+        });
+        log.info("Opened {} with {} entries in {} segments ({} bytes)", directory, index.size(), segments.size(), totalBytes);
+    }
+
+    /**
+     * @param key cache key
+     * @return the stored result or {@code null}
+     * @throws IOException if the record can't be read (e.g. its segment was removed concurrently)
+     */
+    Stored get(ImmutableRpcCache.Key key) throws IOException {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] value = new byte[location.recordLength() - location.valueOffset()];
+        location.segment().read(location.offset() + location.valueOffset(), value);
+        return new Stored(value, location.blockHeight());
+    }
+
+    /**
+     * Append a result
+     *
+     * @param key cache key
+     * @param value serialized result
+     * @param blockHeight height of the block for results with chain-dependent fields, otherwise {@code -1}
+     */
+    synchronized void put(ImmutableRpcCache.Key key, byte[] value, long blockHeight) throws IOException {
+        append(PUT, key, value, blockHeight);
+        reclaim();
+    }
+
+    /**
+     * Remove entries with chain-dependent fields above a height (after a possible reorg)
+     *
+     * @param height the height above which to remove entries
+     */
+    synchronized void evictAbove(long height) throws IOException {
+        List<ImmutableRpcCache.Key> evicted = index.entrySet().stream()
+                .filter(e -> e.getValue().blockHeight() != -1 && e.getValue().blockHeight() > height)
+                .map(Map.Entry::getKey)
+                .toList();
+        for (ImmutableRpcCache.Key key : evicted) {
+            append(TOMBSTONE, key, new byte[0], -1);
+        }
+        reclaim();
+    }
+
+    /**
+     * @return bytes used by the segment files
+     */
+    synchronized long size() {
+        return totalBytes;
+    }
+
+    /**
+     * @return number of stored results
+     */
+    int entries() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+    }
+
+    private void append(byte type, ImmutableRpcCache.Key key, byte[] value, long blockHeight) throws IOException {
+        byte[] keyBytes = (key.method() + " " + key.hash() + " " + key.variant()).getBytes(StandardCharsets.UTF_8);
+        int valueOffset = headerBytes + 1 + 2 + keyBytes.length + 8;
+        int recordLength = valueOffset + value.length;
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(recordLength - headerBytes)
+                .putInt(0)
+                .put(type)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .putLong(blockHeight)
+                .put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), headerBytes, recordLength - headerBytes);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        if (segments.getLast().size > 0 && segments.getLast().size + recordLength > segmentBytes) {
+            seal();
+        }
+        Segment active = segments.getLast();
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size += recordLength;
+        totalBytes += recordLength;
+        if (type == PUT) {
+            replace(key, new Location(active, offset, recordLength, valueOffset, blockHeight));
+        } else {
+            replace(key, null);
+        }
+    }
+
+    private void replace(ImmutableRpcCache.Key key, Location location) {
+        Location previous = location != null ? index.put(key, location) : index.remove(key);
+        if (previous != null) {
+            previous.segment().liveBytes -= previous.recordLength();
+        }
+        if (location != null) {
+            location.segment().liveBytes += location.recordLength();
+        }
+    }
+
+    private void seal() throws IOException {
+        Segment sealed = segments.getLast();
+        sealed.channel.force(false);
+        sealed.map();
+        Segment next = new Segment(sealed.id + 1, segmentPath(sealed.id + 1));
+        segments.addLast(next);
+    }
+
+    /**
+     * Drop the oldest segments while over the disk budget, then compact the oldest segment while it is mostly dead
+     */
+    private void reclaim() throws IOException {
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            Segment oldest = segments.removeFirst();
+            int evicted = removeEntriesIn(oldest);
+            delete(oldest);
+            log.info("Dropped segment {} ({} entries) to stay within {} bytes", oldest.path, evicted, maxBytes);
+        }
+        while (segments.size() > 2 && segments.getFirst().liveBytes < segments.getFirst().size / 2) {
+            Segment oldest = segments.removeFirst();
+            List<Map.Entry<ImmutableRpcCache.Key, Location>> live = index.entrySet().stream()
+                    .filter(e -> e.getValue().segment() == oldest)
+                    .toList();
+            for (Map.Entry<ImmutableRpcCache.Key, Location> entry : live) {
+                Location location = entry.getValue();
+                byte[] value = new byte[location.recordLength() - location.valueOffset()];
+                oldest.read(location.offset() + location.valueOffset(), value);
+                append(PUT, entry.getKey(), value, location.blockHeight());
+            }
+            delete(oldest);
+            log.info("Compacted segment {}, {} live entries moved", oldest.path, live.size());
+        }
+    }
+
+    private int removeEntriesIn(Segment segment) {
+        int removed = 0;
+        Iterator<Location> locations = index.values().iterator();
+        while (locations.hasNext()) {
+            if (locations.next().segment() == segment) {
+                locations.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segment.channel.close();
+        // The mapping is released when it is garbage collected
+        segment.mapped = null;
+        Files.deleteIfExists(segment.path);
+        totalBytes -= segment.size;
+    }
+
+    /**
+     * Rebuild the index from a segment
+     *
+     * @param segment segment to scan
+     * @param last {@code true} for the newest segment, which is truncated after its last complete record
+     */
+    private void recover(Segment segment, boolean last) throws IOException {
+        long fileSize = segment.channel.size();
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        long offset = 0;
+        while (offset + headerBytes <= fileSize) {
+            int length = buffer.getInt((int) offset);
+            int storedCrc = buffer.getInt((int) offset + 4);
+            if (length < 1 + 2 + 8 || offset + headerBytes + length > fileSize) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get((int) offset + headerBytes, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(body);
+            byte type = record.get();
+            byte[] keyBytes = new byte[record.getShort()];
+            record.get(keyBytes);
+            long blockHeight = record.getLong();
+            String[] parts = new String(keyBytes, StandardCharsets.UTF_8).split(" ", 3);
+            ImmutableRpcCache.Key key = new ImmutableRpcCache.Key(parts[0], parts[1], parts.length > 2 ? parts[2] : "");
+            int recordLength = headerBytes + length;
+            replace(key, type == PUT
+                    ? new Location(segment, offset, recordLength, headerBytes + record.position(), blockHeight)
+                    : null);
+            offset += recordLength;
+        }
+        if (offset < fileSize) {
+            log.warn("Segment {} has a damaged record at {}", segment.path, offset);
+            if (last) {
+                segment.channel.truncate(offset);
+            }
+        }
+        segment.size = offset;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%012d%s", id, suffix));
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        // Written under the store's lock, read without it
+        volatile MappedByteBuffer mapped;
+        long size = 0;
+        long liveBytes = 0;
+
+        Segment(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void map() {
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                // Fall back to reading through the channel
+                log.warn("Can't map segment {}", path, e);
+            }
+        }
+
+        void read(long position, byte[] destination) throws IOException {
+            MappedByteBuffer buffer = mapped;
+            if (buffer != null) {
+                // An absolute bulk get doesn't change the buffer's position, so concurrent reads are safe
+                buffer.get((int) position, destination);
+            } else {
+                ByteBuffer target = ByteBuffer.wrap(destination);
+                while (target.hasRemaining()) {
+                    if (channel.read(target, position + target.position()) < 0) {
+                        throw new IOException("Unexpected end of segment " + path);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.consensusj.bitcoin.proxy.jsonrpc;
 
 import io.micronaut.context.annotation.ConfigurationInject;
 import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.bind.annotation.Bindable;
 import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Network;
@@ -21,6 +22,10 @@ public class JsonRpcProxyConfiguration {
     private final String password;
     private final boolean useZmq;
     private final List<String> allowList;
+    private final List<String> warmup;
+    private final List<String> staleWhileRevalidate;
+    private final List<String> streamMethods;
+    private final int maxBatchSize;
 
     /**
      * Injectable constructor
@@ -30,6 +35,10 @@ public class JsonRpcProxyConfiguration {
      * @param username JSON-RPC username
      * @param password JSON-RPC password
      * @param allowList A list of allowed method names
+     * @param warmup A list of cached method names to prefetch on every new block
+     * @param staleWhileRevalidate A list of cached method names to serve from the previous block while refreshing
+     * @param streamMethods A list of method names whose (large) responses are streamed rather than cached or coalesced
+     * @param maxBatchSize Maximum number of requests in a batch, larger batches are rejected
      */
     @ConfigurationInject
     public JsonRpcProxyConfiguration(@Bindable(defaultValue = "org.bitcoin.production") String networkId,
@@ -37,7 +46,11 @@ public class JsonRpcProxyConfiguration {
                                      String username,
                                      String password,
                                      boolean useZmq,
-                                     List<String> allowList) {
+                                     List<String> allowList,
+                                     @Nullable List<String> warmup,
+                                     @Nullable List<String> staleWhileRevalidate,
+                                     @Nullable List<String> streamMethods,
+                                     @Bindable(defaultValue = "1000") int maxBatchSize) {
         network = BitcoinNetwork.fromIdString(networkId)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid Bitcoin network-id string: " + networkId));
         this.uri = uri;
@@ -45,6 +58,10 @@ public class JsonRpcProxyConfiguration {
         this.password = password;
         this.useZmq = useZmq;
         this.allowList = allowList;
+        this.warmup = warmup != null ? warmup : List.of();
+        this.staleWhileRevalidate = staleWhileRevalidate != null ? staleWhileRevalidate : List.of();
+        this.streamMethods = streamMethods != null ? streamMethods : List.of();
+        this.maxBatchSize = maxBatchSize;
     }
 
     public Network network() {
@@ -70,4 +87,20 @@ public class JsonRpcProxyConfiguration {
     public List<String> getAllowList() {
         return allowList;
     }
+
+    public List<String> getWarmup() {
+        return warmup;
+    }
+
+    public List<String> getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public List<String> getStreamMethods() {
+        return streamMethods;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
 }
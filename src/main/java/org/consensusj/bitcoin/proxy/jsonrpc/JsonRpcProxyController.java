@@ -1,18 +1,22 @@
 package org.consensusj.bitcoin.proxy.jsonrpc;
 
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Header;
 import io.micronaut.http.annotation.PathVariable;
 import io.micronaut.http.annotation.Post;
 import org.consensusj.jsonrpc.JsonRpcRequest;
-import org.consensusj.jsonrpc.JsonRpcResponse;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Locale;
+
 /**
  * Micronaut controller for proxying JSON-RPC requests to a remote JSON-RPC server.
  */
@@ -32,27 +36,74 @@ public class JsonRpcProxyController {
     /**
      * Proxy a JSON-RPC request by forwarding to the remote JSON-RPC server if the
      * {@code method} is permitted. Permitted means on the allowed list (if the allow list is present)
-     * and not on the deny list.
-     * NOTE: We deserialize the {@link JsonRpcRequest} but for performance reasons we do not deserialize
-     * the {@link JsonRpcResponse} objects and just treat them as type {@link String}.
+     * and not on the deny list. The body may also be a JSON-RPC 2.0 batch (an array of requests) in
+     * which case each element is checked and routed individually and an array of responses (in request
+     * order) is returned.
+     * NOTE: For performance reasons a forwarded request is only scanned for its {@code method} and {@code id}
+     * and is forwarded as the original bytes (only requests the proxy handles itself are deserialized into
+     * {@link JsonRpcRequest}s), responses from the remote server are not deserialized (except to reassemble
+     * batches) and uncached responses are streamed.
+     * <p>
+     * Cached responses may be from the previous block while a refresh is in progress. A client can send
+     * {@code Cache-Control: no-cache} to wait for a response for the current block.
      *
-     * @param request The incoming JSON-RPC request
+     * @param body The incoming JSON-RPC request (or batch of requests)
+     * @param cacheControl The {@code Cache-Control} request header, if any
      * @return A Publisher that will resolve to the response from the remote server.
      */
     @Post(consumes = MediaType.APPLICATION_JSON, produces = MediaType.APPLICATION_JSON)
-    public Publisher<HttpResponse<String>> rpcProxy(@Body JsonRpcRequest request) {
-        return jsonRpcProxyService.rpcProxy(request);
+    public Publisher<HttpResponse<?>> rpcProxy(@Body byte[] body, @Nullable @Header(HttpHeaders.CACHE_CONTROL) String cacheControl) {
+        return jsonRpcProxyService.rpcProxyJson(body, requiresFresh(cacheControl));
     }
 
+    /**
+     * Proxy a JSON-RPC request without parameters made with an HTTP GET. Responses have an {@code ETag} and
+     * {@code Cache-Control} directives (see {@link HttpCachePolicy}) and a request with a current
+     * {@code If-None-Match} is answered with {@code 304 Not Modified}, so HTTP caches can absorb repeated reads.
+     *
+     * @param method JSON-RPC method
+     * @param cacheControl The {@code Cache-Control} request header, if any
+     * @param ifNoneMatch The {@code If-None-Match} request header, if any
+     * @return A Publisher that will resolve to the response
+     */
     @Get(uri="/get/{method}", produces = MediaType.APPLICATION_JSON)
-    public Publisher<HttpResponse<String>> rpcGet(String method) {
-        return jsonRpcProxyService.rpcProxy(method);
+    public Publisher<HttpResponse<?>> rpcGet(String method,
+                                             @Nullable @Header(HttpHeaders.CACHE_CONTROL) String cacheControl,
+                                             @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        return jsonRpcProxyService.rpcGet(requiresFresh(cacheControl), ifNoneMatch, method);
     }
 
+    /**
+     * Proxy a JSON-RPC request made with an HTTP GET, with parameters as path segments.
+     * See {@link #rpcGet(String, String, String)}.
+     *
+     * @param method JSON-RPC method
+     * @param argString parameters separated by {@code /}
+     * @param cacheControl The {@code Cache-Control} request header, if any
+     * @param ifNoneMatch The {@code If-None-Match} request header, if any
+     * @return A Publisher that will resolve to the response
+     */
     @Get(uri="/get/{method}/{args:.*}", produces = MediaType.APPLICATION_JSON)
-    public Publisher<HttpResponse<String>> rpcGet(@PathVariable("method") String method, @PathVariable("args") String argString) {
+    public Publisher<HttpResponse<?>> rpcGet(@PathVariable("method") String method,
+                                                  @PathVariable("args") String argString,
+                                                  @Nullable @Header(HttpHeaders.CACHE_CONTROL) String cacheControl,
+                                                  @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         log.info("method: {}, args: {}", method, argString);
         String[] args = argString.split("/");
-        return jsonRpcProxyService.rpcProxy(method, args);
+        return jsonRpcProxyService.rpcGet(requiresFresh(cacheControl), ifNoneMatch, method, args);
+    }
+
+    // True if the client asked to bypass stale cached responses
+    static boolean requiresFresh(@Nullable String cacheControl) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim().toLowerCase(Locale.ROOT);
+            if (d.equals("no-cache") || d.equals("max-age=0")) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,97 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.EachProperty;
+import io.micronaut.context.annotation.Parameter;
+import io.micronaut.core.annotation.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Per-method policies that override the defaults in the {@link MethodRouter routing table}, e.g.:
+ * <pre>
+ * btcproxyd:
+ *   rpcproxy:
+ *     methods:
+ *       gettxoutsetinfo:
+ *         cost-class: expensive
+ *         timeout: 10m
+ *       getblockchaininfo:
+ *         cache-ttl: 30s
+ *         http-max-age: 10s
+ * </pre>
+ * Unset properties keep their defaults.
+ */
+@EachProperty("btcproxyd.rpcproxy.methods")
+public class MethodPolicyConfiguration {
+    private final String name;
+    private CostClass costClass;
+    private Boolean primaryOnly;
+    private Duration timeout;
+    private Duration cacheTtl;
+    private Duration httpMaxAge;
+
+    public MethodPolicyConfiguration(@Parameter String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return JSON-RPC method
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public CostClass getCostClass() {
+        return costClass;
+    }
+
+    public void setCostClass(@Nullable CostClass costClass) {
+        this.costClass = costClass;
+    }
+
+    @Nullable
+    public Boolean getPrimaryOnly() {
+        return primaryOnly;
+    }
+
+    public void setPrimaryOnly(@Nullable Boolean primaryOnly) {
+        this.primaryOnly = primaryOnly;
+    }
+
+    /**
+     * @return maximum time to wait for the upstream server (including time queued for admission)
+     */
+    @Nullable
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(@Nullable Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return maximum age of a cached response (only for methods cached by {@link CachedRpcService})
+     */
+    @Nullable
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(@Nullable Duration cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * @return {@code max-age} of GET responses, overriding the {@link HttpCachePolicy} default
+     */
+    @Nullable
+    public Duration getHttpMaxAge() {
+        return httpMaxAge;
+    }
+
+    public void setHttpMaxAge(@Nullable Duration httpMaxAge) {
+        this.httpMaxAge = httpMaxAge;
+    }
+}
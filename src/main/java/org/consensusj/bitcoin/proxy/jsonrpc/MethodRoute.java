@@ -0,0 +1,55 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.core.annotation.Nullable;
+
+import java.time.Duration;
+
+/**
+ * How requests for a JSON-RPC method are handled, and the policies that apply to them. Routes are
+ * looked up in a {@link MethodRouter}'s table once per request.
+ *
+ * @param handler what handles the request
+ * @param coalescable if {@code true} identical in-flight forwarded requests may share one upstream call
+ * @param costClass cost class for {@link AdmissionController admission control}
+ * @param primaryOnly if {@code true} the request always goes to the primary upstream server
+ * @param timeout maximum time to wait for the upstream server (including admission), {@code null} for no limit
+ * @param cacheTtl maximum age of a {@link CachedRpcService cached} response, {@code null} for no limit
+ * @param httpMaxAge {@code max-age} of GET responses (see {@link HttpCachePolicy}), {@code null} for the default
+ */
+public record MethodRoute(Handler handler,
+                          boolean coalescable,
+                          CostClass costClass,
+                          boolean primaryOnly,
+                          @Nullable Duration timeout,
+                          @Nullable Duration cacheTtl,
+                          @Nullable Duration httpMaxAge) {
+    /**
+     * The route of methods that are not permitted
+     */
+    public static final MethodRoute DENIED = new MethodRoute(Handler.DENIED, false, CostClass.NORMAL, false, null, null, null);
+
+    public enum Handler {
+        /** Not permitted, a {@code METHOD_NOT_FOUND} error is returned */
+        DENIED,
+        /** Implemented by the proxy, see {@link ExtraRpcRegistry} */
+        EXTRA,
+        /** Cached per block by {@link CachedRpcService} */
+        CACHED,
+        /**
+         * Cached by {@link ImmutableRpcCache} if the params identify immutable data (and the result isn't
+         * {@link RouteTable#isLargeResult large}), otherwise forwarded
+         */
+        IMMUTABLE,
+        /** Forwarded, and the response is always streamed (never coalesced) */
+        STREAM,
+        /** Forwarded (and coalesced if {@link #coalescable()}) */
+        FORWARD
+    }
+
+    /**
+     * @return {@code true} if the request must be deserialized to be handled
+     */
+    public boolean isHandledByProxy() {
+        return handler == Handler.EXTRA || handler == Handler.CACHED || handler == Handler.IMMUTABLE;
+    }
+}
@@ -0,0 +1,93 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.BeanContext;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.runtime.context.scope.refresh.RefreshEvent;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes JSON-RPC methods with a single lookup in an immutable {@link RouteTable}. The table is compiled at
+ * startup and recompiled (and swapped in atomically) when an extra method is registered or the configuration
+ * is refreshed, so requests in progress keep the routes they started with.
+ * <p>
+ * A refresh rebinds the allow list, {@code stream-methods} and the per-method policies
+ * ({@link MethodPolicyConfiguration}).
+ */
+@Singleton
+public class MethodRouter implements ApplicationEventListener<RefreshEvent> {
+    private static final Logger log = LoggerFactory.getLogger(MethodRouter.class);
+    private final BeanContext beanContext;
+    private final ExtraRpcRegistry extraRpcRegistry;
+    private final ImmutableRpcCacheConfiguration immutableCacheConfig;
+    // Guarded by `this`
+    private JsonRpcProxyConfiguration config;
+    private Map<String, MethodPolicyConfiguration> policies;
+    private volatile RouteTable table;
+
+    public MethodRouter(BeanContext beanContext,
+                        ExtraRpcRegistry extraRpcRegistry,
+                        JsonRpcProxyConfiguration config,
+                        ImmutableRpcCacheConfiguration immutableCacheConfig,
+                        Collection<MethodPolicyConfiguration> policies) {
+        this.beanContext = beanContext;
+        this.extraRpcRegistry = extraRpcRegistry;
+        this.immutableCacheConfig = immutableCacheConfig;
+        this.config = config;
+        this.policies = byMethod(policies);
+        extraRpcRegistry.addRegistrationListener(this::rebuild);
+        rebuild();
+    }
+
+    /**
+     * @param method JSON-RPC method
+     * @return the route for {@code method}
+     */
+    public MethodRoute route(String method) {
+        return table.route(method);
+    }
+
+    /**
+     * @param method JSON-RPC method of an upstream request (which may have been made by the proxy itself)
+     * @return the route for {@code method}, ignoring the allow and deny lists
+     */
+    public MethodRoute upstreamRoute(String method) {
+        return table.upstreamRoute(method);
+    }
+
+    /**
+     * Rebind the configuration and recompile the table
+     *
+     * @param event the refresh event
+     */
+    @Override
+    public void onApplicationEvent(RefreshEvent event) {
+        JsonRpcProxyConfiguration refreshed = beanContext.createBean(JsonRpcProxyConfiguration.class);
+        Collection<MethodPolicyConfiguration> refreshedPolicies = beanContext.getBeansOfType(MethodPolicyConfiguration.class);
+        synchronized (this) {
+            config = refreshed;
+            policies = byMethod(refreshedPolicies);
+        }
+        rebuild();
+    }
+
+    private synchronized void rebuild() {
+        table = RouteTable.build(config.getAllowList(),
+                extraRpcRegistry.methods(),
+                config.getStreamMethods(),
+                immutableCacheConfig.getEnabled(),
+                policies);
+        log.info("routing table compiled ({} methods)", table.size());
+    }
+
+    private static Map<String, MethodPolicyConfiguration> byMethod(Collection<MethodPolicyConfiguration> policies) {
+        return policies.stream()
+                .collect(Collectors.toUnmodifiableMap(MethodPolicyConfiguration::getName, Function.identity()));
+    }
+}
@@ -0,0 +1,29 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+
+/**
+ * Serves the meters of {@link ProxyMetrics} (and Micronaut's JVM and HTTP server meters) in the Prometheus
+ * text format for scraping.
+ */
+@Controller
+@Requires(beans = PrometheusMeterRegistry.class)
+public class MetricsController {
+    /**
+     * Content type of the Prometheus text exposition format
+     */
+    static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    private final PrometheusMeterRegistry registry;
+
+    MetricsController(PrometheusMeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Get(uri = "/metrics", produces = PROMETHEUS_TEXT)
+    public String metrics() {
+        return registry.scrape();
+    }
+}
@@ -0,0 +1,301 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Singleton;
+import org.bitcoinj.base.Sha256Hash;
+import org.consensusj.bitcoin.json.pojo.ChainTip;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters for the request path. Meters are registered once and then looked up without
+ * building tags, so recording doesn't allocate and can stay on in production.
+ * <ul>
+ *     <li>{@code btcproxy.requests} -- request latency (until the response headers) by {@code method} and {@code route}</li>
+ *     <li>{@code btcproxy.cache.requests} -- cache results by {@code cache} and {@code result}</li>
+ *     <li>{@code btcproxy.cache.refresh} -- time to fetch a cache entry by {@code cache}</li>
+ *     <li>{@code btcproxy.cache.warmup.remaining} -- entries left to load after startup by {@code cache}</li>
+ *     <li>{@code btcproxy.cache.disk.size} -- bytes used by a disk cache tier by {@code cache}</li>
+ *     <li>{@code btcproxy.admission.rejected} -- requests rejected by admission control, by {@code class}</li>
+ *     <li>{@code btcproxy.upstream.*} -- requests in flight, smoothed latency, height and errors by {@code backend}</li>
+ *     <li>{@code btcproxy.chaintip.*} -- time each consumer spends handling a new tip, and the age of the current tip</li>
+ *     <li>{@code btcproxy.push.*} -- WebSocket subscribers and messages dropped for slow subscribers, by {@code topic}</li>
+ * </ul>
+ * To bound the number of time series, requests for denied methods share the method tag {@code other}, as do
+ * methods seen after the first {@value #maxMethods}.
+ */
+@Singleton
+public class ProxyMetrics {
+    static final String OTHER = "other";
+    private static final int maxMethods = 256;
+    private final MeterRegistry registry;
+    // Request timers by method, each indexed by MethodRoute.Handler ordinal
+    private final ConcurrentHashMap<String, Timer[]> requestTimers = new ConcurrentHashMap<>();
+    private final Timer batchTimer;
+    private final ConcurrentHashMap<String, Timer> refreshTimers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> chainTipTimers = new ConcurrentHashMap<>();
+    // Indexed by CacheResult ordinal
+    private final Counter[] rpcCache;
+    private final Counter[] immutableCache;
+    private final Counter[] immutableDiskCache;
+    private final Counter[] coalescer;
+    private final Counter[] rejected;
+    // Updates may race, that only costs accuracy
+    private volatile Sha256Hash tipHash = null;
+    private volatile long lastTipNanos = 0;
+    private volatile long tipHeight = -1;
+
+    /**
+     * Result of a cache lookup
+     */
+    public enum CacheResult {
+        /** Served from the cache */
+        HIT,
+        /** Served from the cache, from a previous block while a refresh is in progress */
+        STALE,
+        /** Fetched from the upstream server */
+        MISS,
+        /** Joined an identical in-flight upstream request */
+        COALESCED
+    }
+
+    /**
+     * @param registry meter registry, if {@code null} (metrics disabled) meters are discarded
+     */
+    public ProxyMetrics(@Nullable MeterRegistry registry) {
+        this.registry = registry != null ? registry : new CompositeMeterRegistry();
+        batchTimer = requestTimer("batch", "batch");
+        rpcCache = cacheCounters("rpc", CacheResult.HIT, CacheResult.STALE, CacheResult.MISS);
+        immutableCache = cacheCounters("immutable", CacheResult.HIT, CacheResult.MISS);
+        immutableDiskCache = cacheCounters("immutable-disk", CacheResult.HIT, CacheResult.MISS);
+        coalescer = cacheCounters("coalescer", CacheResult.COALESCED, CacheResult.MISS);
+        rejected = new Counter[CostClass.values().length];
+        for (CostClass cls : CostClass.values()) {
+            rejected[cls.ordinal()] = Counter.builder("btcproxy.admission.rejected")
+                    .description("Requests rejected because the admission queue was full")
+                    .tag("class", lower(cls))
+                    .register(this.registry);
+        }
+        Gauge.builder("btcproxy.chaintip.height", this, m -> m.tipHeight)
+                .description("Height of the current chain tip")
+                .register(this.registry);
+        Gauge.builder("btcproxy.chaintip.age", this, ProxyMetrics::tipAgeSeconds)
+                .description("Time since the current chain tip was received")
+                .baseUnit("seconds")
+                .register(this.registry);
+    }
+
+    /**
+     * @param method JSON-RPC method
+     * @param route the route the request took
+     * @return the latency timer for the method and route
+     */
+    public Timer requestTimer(String method, MethodRoute.Handler route) {
+        String key = (route == MethodRoute.Handler.DENIED || method == null) ? OTHER : method;
+        Timer[] timers = requestTimers.get(key);
+        if (timers == null) {
+            if (requestTimers.size() >= maxMethods) {
+                key = OTHER;
+            }
+            timers = requestTimers.computeIfAbsent(key, k -> new Timer[MethodRoute.Handler.values().length]);
+        }
+        Timer timer = timers[route.ordinal()];
+        if (timer == null) {
+            // Racing registrations get the same Timer from the registry
+            timer = requestTimer(key, lower(route));
+            timers[route.ordinal()] = timer;
+        }
+        return timer;
+    }
+
+    /**
+     * @return the latency timer for batch requests
+     */
+    public Timer batchTimer() {
+        return batchTimer;
+    }
+
+    public void rpcCache(CacheResult result) {
+        rpcCache[result.ordinal()].increment();
+    }
+
+    public void immutableCache(CacheResult result) {
+        immutableCache[result.ordinal()].increment();
+    }
+
+    public void immutableDiskCache(CacheResult result) {
+        immutableDiskCache[result.ordinal()].increment();
+    }
+
+    public void coalescer(CacheResult result) {
+        coalescer[result.ordinal()].increment();
+    }
+
+    public void rejected(CostClass costClass) {
+        rejected[costClass.ordinal()].increment();
+    }
+
+    /**
+     * @param cache name of the cache (e.g. {@code rpc}, {@code richlist}, {@code properties})
+     * @return timer for fetching entries of the cache from upstream
+     */
+    public Timer refreshTimer(String cache) {
+        return refreshTimers.computeIfAbsent(cache, c -> Timer.builder("btcproxy.cache.refresh")
+                .description("Time to fetch a cache entry from the upstream server")
+                .tag("cache", c)
+                .register(registry));
+    }
+
+    /**
+     * Record that a consumer handled a new chain tip. The first consumer to see a new tip updates
+     * the tip gauges.
+     *
+     * @param consumer name of the consumer
+     * @param tip the new tip
+     * @param startNanos {@link System#nanoTime()} when the consumer received the tip
+     */
+    public void chainTipHandled(String consumer, ChainTip tip, long startNanos) {
+        long now = System.nanoTime();
+        if (!tip.getHash().equals(tipHash)) {
+            tipHash = tip.getHash();
+            tipHeight = tip.getHeight();
+            lastTipNanos = startNanos;
+        }
+        chainTipTimers.computeIfAbsent(consumer, c -> Timer.builder("btcproxy.chaintip.handler")
+                        .description("Time spent handling a new chain tip (delays later subscribers)")
+                        .tag("consumer", c)
+                        .register(registry))
+                .record(now - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Register a gauge of the entries a cache has left to load after startup
+     *
+     * @param cache name of the cache
+     * @param loader the loader
+     * @param remaining function giving the number of entries left
+     */
+    public <T> void warmupRemaining(String cache, T loader, ToDoubleFunction<T> remaining) {
+        Gauge.builder("btcproxy.cache.warmup.remaining", loader, remaining)
+                .description("Entries left to load after startup")
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    /**
+     * Register a gauge of the size of a disk cache tier
+     *
+     * @param cache name of the cache
+     * @param store the store
+     * @param size function returning its size in bytes
+     */
+    public <T> void diskCacheSize(String cache, T store, ToDoubleFunction<T> size) {
+        Gauge.builder("btcproxy.cache.disk.size", store, size)
+                .description("Bytes used by a disk cache tier")
+                .baseUnit("bytes")
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    /**
+     * Register a gauge of the subscribers to a push topic
+     *
+     * @param topic name of the topic
+     * @param subscribers the topic's subscribers
+     * @param count function giving the number of subscribers
+     */
+    public <T> void pushSubscribers(String topic, T subscribers, ToDoubleFunction<T> count) {
+        Gauge.builder("btcproxy.push.subscribers", subscribers, count)
+                .description("WebSocket subscribers")
+                .tag("topic", topic)
+                .register(registry);
+    }
+
+    /**
+     * @param topic name of the topic
+     * @param reason {@code conflated} (a queued message was dropped) or {@code disconnected} (the subscriber was)
+     * @return counter of messages dropped for slow subscribers
+     */
+    public Counter pushDropped(String topic, String reason) {
+        return Counter.builder("btcproxy.push.dropped")
+                .description("Messages dropped for WebSocket subscribers that didn't keep up")
+                .tag("topic", topic)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Register gauges and counters for an upstream server
+     *
+     * @param backend upstream server
+     * @return counters for transport and HTTP errors
+     */
+    UpstreamErrors upstream(UpstreamBackend backend) {
+        Gauge.builder("btcproxy.upstream.in.flight", backend, UpstreamBackend::inFlight)
+                .description("Requests in flight to the upstream server")
+                .tag("backend", backend.name())
+                .register(registry);
+        Gauge.builder("btcproxy.upstream.latency", backend, b -> b.latencyMicros() / 1_000_000)
+                .description("Smoothed latency of the upstream server")
+                .baseUnit("seconds")
+                .tag("backend", backend.name())
+                .register(registry);
+        Gauge.builder("btcproxy.upstream.height", backend, UpstreamBackend::height)
+                .description("Block height of the upstream server (pooled servers only)")
+                .tag("backend", backend.name())
+                .register(registry);
+        return new UpstreamErrors(upstreamErrors(backend, "transport"), upstreamErrors(backend, "http"));
+    }
+
+    /**
+     * @param transport failed to reach the server
+     * @param http the server returned an error status
+     */
+    record UpstreamErrors(Counter transport, Counter http) {}
+
+    private Counter upstreamErrors(UpstreamBackend backend, String type) {
+        return Counter.builder("btcproxy.upstream.errors")
+                .description("Failed upstream requests")
+                .tag("backend", backend.name())
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private Timer requestTimer(String method, String route) {
+        return Timer.builder("btcproxy.requests")
+                .description("JSON-RPC request latency")
+                .tag("method", method)
+                .tag("route", route)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter[] cacheCounters(String cache, CacheResult... results) {
+        Counter[] counters = new Counter[CacheResult.values().length];
+        for (CacheResult result : results) {
+            counters[result.ordinal()] = Counter.builder("btcproxy.cache.requests")
+                    .description("Cache lookups")
+                    .tag("cache", cache)
+                    .tag("result", lower(result))
+                    .register(registry);
+        }
+        return counters;
+    }
+
+    private double tipAgeSeconds() {
+        long last = lastTipNanos;
+        return last == 0 ? Double.NaN : (System.nanoTime() - last) / 1e9;
+    }
+
+    private static String lower(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
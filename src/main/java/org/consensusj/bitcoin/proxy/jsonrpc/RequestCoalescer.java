@@ -0,0 +1,120 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.rxjava3.core.Single;
+import jakarta.inject.Singleton;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Coalesces ("single-flight") identical in-flight passthrough requests. Concurrent requests with the same
+ * method, params and JSON-RPC version (which determines the format of the response) share one upstream call and the (serialized) response is fanned out to each caller with
+ * its own {@code id} spliced in. Once the upstream call completes, the next identical request makes a new
+ * call, so this is not a cache.
+ * <p>
+ * Only methods known to be read-only are coalesced, anything else (e.g. {@code getnewaddress}, {@code send},
+ * an unknown or newly added method) makes its own upstream call.
+ */
+@Singleton
+public class RequestCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+    // Read-only methods that are answered from node-local state are coalesced but not spread over the pool
+    static final Set<String> readOnlyMethods = Stream.concat(UpstreamPool.replicatedMethods.stream(),
+                    Stream.of("getnetworkinfo", "getconnectioncount", "getnettotals", "getmemoryinfo", "getrpcinfo",
+                            "uptime", "help"))
+            .collect(Collectors.toUnmodifiableSet());
+    private final ConcurrentHashMap<Key, Single<SerializedRpcResponse>> inFlight = new ConcurrentHashMap<>();
+    private final UpstreamRpcClient upstream;
+    private final ObjectMapper mapper;
+    private final ProxyMetrics metrics;
+
+    public RequestCoalescer(UpstreamRpcClient upstreamRpcClient, ObjectMapper jsonMapper, ProxyMetrics metrics) {
+        upstream = upstreamRpcClient;
+        mapper = jsonMapper;
+        this.metrics = metrics;
+    }
+
+    public boolean isCoalescable(JsonRpcRequest request) {
+        return isCoalescable(request.getMethod());
+    }
+
+    public boolean isCoalescable(String method) {
+        return readOnlyMethods.contains(method);
+    }
+
+    /**
+     * Forward a request upstream, or join an identical request that is already in flight.
+     *
+     * @param request a request for which {@link #isCoalescable(JsonRpcRequest)} is {@code true}
+     * @return A response that can be completed with the caller's {@code id}
+     */
+    public Single<SerializedRpcResponse> call(JsonRpcRequest request) {
+        Key key;
+        try {
+            // Forwarded as a 1.0 request
+            key = new Key(request.getMethod(), mapper.writeValueAsString(request.getParams() != null ? request.getParams() : List.of()), false);
+        } catch (JsonProcessingException e) {
+            return Single.error(e);
+        }
+        return join(key, k -> {
+            log.debug("Forwarding {}", k.method());
+            // Only this Single's upstream call can remove the entry, so an unconditional remove is safe
+            return upstream.call(request.getMethod(), request.getParams())
+                    .doFinally(() -> inFlight.remove(k))
+                    .cache();
+        });
+    }
+
+    /**
+     * Forward a scanned request (as its original bytes) upstream, or join an identical request that is already
+     * in flight. Requests are identical if their {@code params} are textually identical and they are answered in the
+     * same JSON-RPC version.
+     *
+     * @param request a request with an {@code id} for which {@link #isCoalescable(String)} is {@code true}
+     * @return A response that can be completed with the caller's {@code id}
+     */
+    public Single<SerializedRpcResponse> call(ScannedRequest request) {
+        return join(new Key(request.method(), request.params(), request.isVersion2()), k -> {
+            log.debug("Forwarding {}", k.method());
+            return upstream.retrieveResponse(request)
+                    // Upstream echoes the id of the request that was forwarded
+                    .map(r -> SerializedRpcResponse.fromUpstream(mapper, r.body(), mapper.writeValueAsBytes(request.id()))
+                            .withStatus(r.status()))
+                    .doFinally(() -> inFlight.remove(k))
+                    .cache();
+        });
+    }
+
+    private Single<SerializedRpcResponse> join(Key key, Function<Key, Single<SerializedRpcResponse>> call) {
+        Single<SerializedRpcResponse> joined = inFlight.get(key);
+        if (joined != null) {
+            metrics.coalescer(ProxyMetrics.CacheResult.COALESCED);
+            return joined;
+        }
+        metrics.coalescer(ProxyMetrics.CacheResult.MISS);
+        return inFlight.computeIfAbsent(key, call);
+    }
+
+    /**
+     * @return The number of distinct requests currently in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @param method JSON-RPC method
+     * @param params canonical (serialized) params
+     * @param version2 {@code true} if the response is in the JSON-RPC 2.0 format
+     */
+    private record Key(String method, String params, boolean version2) {}
+}
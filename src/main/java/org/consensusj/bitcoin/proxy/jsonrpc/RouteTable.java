@@ -0,0 +1,171 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map of JSON-RPC method to {@link MethodRoute}, compiled from the configuration and the
+ * registered extra methods. The handler of a method is decided in the same order requests used to be
+ * checked in: denied, extra, cached, streamed, immutable-cached, forwarded.
+ */
+final class RouteTable {
+    // TODO: Create default denyList that includes all "dangerous" operations, this is currently a partial list
+    static final List<String> denyList = List.of("stop", "logging", "backupwallet", "encryptwallet", "getwalletinfo", "dumpwallet", "rescanblockchain");
+    // Methods for which isLargeResult depends on the params
+    static final Set<String> largeResultMethods = Set.of("getblock", "getrawmempool", "getmempoolancestors", "getmempooldescendants");
+    // Route of upstream requests without a method (not expected from clients)
+    private static final MethodRoute unknownMethod = new MethodRoute(MethodRoute.Handler.FORWARD, false, CostClass.NORMAL, false, null, null, null);
+    // Route of client requests for a method without a default or configured route (when there is no allow list)
+    private static final MethodRoute unlistedMethod = new MethodRoute(MethodRoute.Handler.FORWARD, false, CostClass.NORMAL, true, null, null, null);
+    private final Map<String, MethodRoute> routes;
+    // Inputs for the routes of methods that are not in the table
+    private final boolean hasAllowList;
+    private final Set<String> streamMethods;
+    private final boolean immutableCacheEnabled;
+    private final Map<String, MethodPolicyConfiguration> policies;
+
+    private RouteTable(Map<String, MethodRoute> routes, boolean hasAllowList, Set<String> streamMethods,
+                       boolean immutableCacheEnabled, Map<String, MethodPolicyConfiguration> policies) {
+        this.routes = routes;
+        this.hasAllowList = hasAllowList;
+        this.streamMethods = streamMethods;
+        this.immutableCacheEnabled = immutableCacheEnabled;
+        this.policies = policies;
+    }
+
+    /**
+     * @param allowList allowed methods, or {@code null} to allow every method that isn't denied
+     * @param extraMethods methods implemented by the proxy
+     * @param streamMethods methods whose responses are always streamed
+     * @param immutableCacheEnabled {@code true} if {@link ImmutableRpcCache} is enabled
+     * @param policies per-method policy overrides, by method
+     * @return a routing table
+     */
+    static RouteTable build(List<String> allowList,
+                            Collection<String> extraMethods,
+                            List<String> streamMethods,
+                            boolean immutableCacheEnabled,
+                            Map<String, MethodPolicyConfiguration> policies) {
+        Set<String> streamed = Set.copyOf(streamMethods);
+        Map<String, MethodPolicyConfiguration> policyMap = Map.copyOf(policies);
+        Set<String> extra = Set.copyOf(extraMethods);
+        Set<String> known = new HashSet<>();
+        if (allowList != null) {
+            known.addAll(allowList);
+        } else {
+            // Every method whose route differs from the unlisted route, so route() never has to build one
+            known.addAll(denyList);
+            known.addAll(extra);
+            known.addAll(CachedRpcService.cachedMethods);
+            known.addAll(streamed);
+            known.addAll(ImmutableRpcCache.cacheableMethods);
+            known.addAll(RequestCoalescer.readOnlyMethods);
+            known.addAll(CostClass.cheapMethods);
+            known.addAll(CostClass.expensiveMethods);
+            known.addAll(policyMap.keySet());
+        }
+        Map<String, MethodRoute> routes = new HashMap<>();
+        for (String method : known) {
+            routes.put(method, routeOf(method, true, extra, streamed, immutableCacheEnabled, policyMap));
+        }
+        return new RouteTable(Map.copyOf(routes), allowList != null, streamed, immutableCacheEnabled, policyMap);
+    }
+
+    /**
+     * @param method JSON-RPC method (of a client request)
+     * @return the route for {@code method}
+     */
+    MethodRoute route(String method) {
+        if (method == null) {
+            return MethodRoute.DENIED;
+        }
+        MethodRoute route = routes.get(method);
+        if (route != null) {
+            return route;
+        } else if (hasAllowList) {
+            return MethodRoute.DENIED;
+        } else {
+            return unlistedMethod;
+        }
+    }
+
+    /**
+     * The route for an upstream request, which may have been made by the proxy itself (so
+     * the allow and deny lists don't apply.)
+     *
+     * @param method JSON-RPC method (or {@code null} if unknown)
+     * @return the route for {@code method}
+     */
+    MethodRoute upstreamRoute(String method) {
+        if (method == null) {
+            return unknownMethod;
+        }
+        MethodRoute route = routes.get(method);
+        return (route != null && route != MethodRoute.DENIED)
+                ? route
+                : routeOf(method, false, Set.of(), streamMethods, immutableCacheEnabled, policies);
+    }
+
+    /**
+     * Requests whose results are large because of their params rather than their method, and are streamed
+     * (never cached or coalesced) regardless of the method's route: {@code getblock} with verbosity 2 or 3
+     * (every transaction decoded), and verbose mempool listings.
+     *
+     * @param method JSON-RPC method
+     * @param params JSON-RPC params (or {@code null})
+     * @return {@code true} if the result should be streamed
+     */
+    static boolean isLargeResult(String method, List<Object> params) {
+        if (method == null || params == null || !largeResultMethods.contains(method)) {
+            return false;
+        }
+        return switch (method) {
+            case "getblock" -> params.size() > 1 && params.get(1) instanceof Number verbosity && verbosity.intValue() >= 2;
+            case "getrawmempool" -> !params.isEmpty() && Boolean.TRUE.equals(params.get(0));
+            case "getmempoolancestors", "getmempooldescendants" -> params.size() > 1 && Boolean.TRUE.equals(params.get(1));
+            default -> false;
+        };
+    }
+
+    /**
+     * @return the number of methods in the table
+     */
+    int size() {
+        return routes.size();
+    }
+
+    private static MethodRoute routeOf(String method,
+                                       boolean checkDenied,
+                                       Set<String> extraMethods,
+                                       Set<String> streamMethods,
+                                       boolean immutableCacheEnabled,
+                                       Map<String, MethodPolicyConfiguration> policies) {
+        if (checkDenied && denyList.contains(method)) {
+            return MethodRoute.DENIED;
+        }
+        MethodRoute.Handler handler;
+        if (extraMethods.contains(method)) {
+            handler = MethodRoute.Handler.EXTRA;
+        } else if (CachedRpcService.cachedMethods.contains(method)) {
+            handler = MethodRoute.Handler.CACHED;
+        } else if (streamMethods.contains(method)) {
+            handler = MethodRoute.Handler.STREAM;
+        } else if (immutableCacheEnabled && ImmutableRpcCache.cacheableMethods.contains(method)) {
+            handler = MethodRoute.Handler.IMMUTABLE;
+        } else {
+            handler = MethodRoute.Handler.FORWARD;
+        }
+        MethodPolicyConfiguration policy = policies.get(method);
+        return new MethodRoute(handler,
+                RequestCoalescer.readOnlyMethods.contains(method),
+                policy != null && policy.getCostClass() != null ? policy.getCostClass() : CostClass.of(method),
+                policy != null && policy.getPrimaryOnly() != null ? policy.getPrimaryOnly() : UpstreamPool.isPrimaryOnly(method),
+                policy != null ? policy.getTimeout() : null,
+                policy != null ? policy.getCacheTtl() : null,
+                policy != null ? policy.getHttpMaxAge() : null);
+    }
+}
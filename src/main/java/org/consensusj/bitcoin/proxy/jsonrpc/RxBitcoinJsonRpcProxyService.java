@@ -1,13 +1,20 @@
 package org.consensusj.bitcoin.proxy.jsonrpc;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.micronaut.http.HttpRequest;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpResponse;
-import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
 import org.consensusj.jsonrpc.JsonRpcError;
+import org.consensusj.jsonrpc.JsonRpcErrorException;
 import org.consensusj.jsonrpc.JsonRpcRequest;
 import org.consensusj.jsonrpc.JsonRpcResponse;
 import org.reactivestreams.Publisher;
@@ -15,112 +22,413 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Singleton;
-import java.net.URI;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of {@link RxJsonRpcProxyService} for Bitcoin.
- * Uses RxJava 3 internally.
+ * Uses RxJava 3 internally. Each request is dispatched on its {@link MethodRoute}, found with a single
+ * lookup in the {@link MethodRouter}'s table. Request latency is recorded by method and route in {@link ProxyMetrics}.
  */
 @Singleton
 public class RxBitcoinJsonRpcProxyService implements RxJsonRpcProxyService {
     private static final Logger log = LoggerFactory.getLogger(RxBitcoinJsonRpcProxyService.class);
-    // TODO: Create default allowList that includes all "safe" operations
-    private final Optional<List<String>> optionalAllowList;
-    // TODO: Create default denyList that includes all "dangerous" operations, this is currently a partial list
-    private final List<String> denyList = List.of("stop", "logging", "backupwallet", "encryptwallet", "getwalletinfo", "dumpwallet", "rescanblockchain");
-    private final Optional<List<String>> optionalDenyList = Optional.of(denyList);
+    /**
+     * Response header with the height of the block a cached response was fetched for
+     */
+    public static final String BLOCK_HEIGHT_HEADER = "X-Block-Height";
     private final ObjectMapper mapper;
     private final JsonRpcError notFoundError = JsonRpcError.of(JsonRpcError.Error.METHOD_NOT_FOUND);
+    private final JsonRpcError parseError = JsonRpcError.of(JsonRpcError.Error.PARSE_ERROR);
+    private final JsonRpcError invalidRequestError = JsonRpcError.of(JsonRpcError.Error.INVALID_REQUEST);
+    private final JsonRpcError internalError = JsonRpcError.of(JsonRpcError.Error.INTERNAL_ERROR);
 
-    private final HttpClient client;
+    private final UpstreamRpcClient upstream;
+    private final MethodRouter router;
     private final ExtraRpcRegistry extraRpcRegistry;
     private final CachedRpcService cachedRpcService;
-    private final URI remoteRpcUri;
-    private final String remoteRpcUser;
-    private final String remoteRpcPass;
+    private final ImmutableRpcCache immutableRpcCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ProxyMetrics metrics;
+    private final HttpCachePolicy httpCachePolicy;
+    private final int maxBatchSize;
 
-    public RxBitcoinJsonRpcProxyService(HttpClient httpClient,
+    public RxBitcoinJsonRpcProxyService(UpstreamRpcClient upstreamRpcClient,
+                                        MethodRouter methodRouter,
                                         ExtraRpcRegistry extraRpcRegistry,
                                         CachedRpcService cachedRpcService,
-                                        ObjectMapper jsonMapper,
-                                        JsonRpcProxyConfiguration config) {
-        client = httpClient;
+                                        ImmutableRpcCache immutableRpcCache,
+                                        RequestCoalescer requestCoalescer,
+                                        ProxyMetrics proxyMetrics,
+                                        HttpCachePolicy httpCachePolicy,
+                                        JsonRpcProxyConfiguration config,
+                                        ObjectMapper jsonMapper) {
+        upstream = upstreamRpcClient;
+        router = methodRouter;
         this.extraRpcRegistry = extraRpcRegistry;
         this.cachedRpcService = cachedRpcService;
+        this.immutableRpcCache = immutableRpcCache;
+        this.requestCoalescer = requestCoalescer;
+        metrics = proxyMetrics;
+        this.httpCachePolicy = httpCachePolicy;
+        maxBatchSize = config.getMaxBatchSize();
         mapper = jsonMapper;
-        remoteRpcUri = config.getUri();
-        remoteRpcUser = config.getUsername();
-        remoteRpcPass = config.getPassword();
-        optionalAllowList = Optional.of(config.getAllowList());
-        log.info("remoteRpcUri: {}", remoteRpcUri);
     }
 
 
+    /**
+     * Proxy a request body as either a single request or a batch. A single request is first scanned
+     * for its {@code method} and {@code id} only, and unless the method is handled by the proxy itself
+     * (extra, cached or immutable-cached methods) or the size of its result depends on its params (see
+     * {@link RouteTable#isLargeResult}) it is forwarded as the original bytes without being deserialized.
+     *
+     * @param body A serialized JSON-RPC request or batch of requests
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @return  A "promise" for the appropriate HttpResponse (JSON already serialized)
+     */
+    @Override
+    public Publisher<HttpResponse<?>> rpcProxyJson(byte[] body, boolean fresh) {
+        if (startsWith(body, (byte) '{')) {
+            Optional<ScannedRequest> scanned = ScannedRequest.scan(mapper.getFactory(), body);
+            if (scanned.isPresent()) {
+                return rpcProxyScanned(scanned.get(), fresh);
+            }
+        }
+        // Batches, and malformed requests (which are fully parsed to report the appropriate error). Duplicate keys
+        // are rejected, as for scanned requests, because the upstream server may not resolve them the same way.
+        JsonNode tree;
+        try (JsonParser parser = mapper.getFactory().createParser(body).enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION)) {
+            tree = mapper.readTree(parser);
+        } catch (IOException e) {
+            log.error("parse error: {}", e.getMessage());
+            return Flowable.just(makeErrorResponse(null, parseError));
+        }
+        if (tree != null && tree.isArray()) {
+            return rpcProxyBatch(tree, fresh);
+        }
+        return toRequest(tree)
+                .map(request -> rpcProxy(request, fresh))
+                .orElseGet(() -> Flowable.just(makeErrorResponse(idOf(tree), invalidRequestError)));
+    }
+
+    private Publisher<HttpResponse<?>> rpcProxyScanned(ScannedRequest request, boolean fresh) {
+        MethodRoute route = router.route(request.method());
+        return timed(metrics.requestTimer(request.method(), route.handler()), rpcProxyScanned(request, route, fresh));
+    }
+
+    private Publisher<HttpResponse<?>> rpcProxyScanned(ScannedRequest request, MethodRoute route, boolean fresh) {
+        String method = request.method();
+        if (route.handler() == MethodRoute.Handler.DENIED) {
+            log.error("method denied: {}", method);
+            return Flowable.just(makeErrorResponse(request.id(), notFoundError));
+        }
+        if (route.isHandledByProxy() || RouteTable.largeResultMethods.contains(method)) {
+            JsonRpcRequest parsed;
+            try {
+                parsed = mapper.readValue(request.body(), JsonRpcRequest.class);
+            } catch (IOException e) {
+                return Flowable.just(makeErrorResponse(request.id(), invalidRequestError));
+            }
+            return orBusy(parsed.getId(), route(parsed, route, fresh));
+        }
+        log.info("Request {}", method);
+        if (request.hasId() && route.coalescable() && route.handler() != MethodRoute.Handler.STREAM) {
+            return orBusy(request.id(), renderSerialized(request.id(), requestCoalescer.call(request)));
+        } else {
+            return orBusy(request.id(), upstream.exchange(request));
+        }
+    }
+
+    /**
+     * Proxy a JSON-RPC 2.0 batch. Each element is checked and routed exactly as {@link #rpcProxy(JsonRpcRequest)}
+     * would route a single request, except that all passthrough elements are forwarded to the remote
+     * server as a single upstream batch. Responses are returned in request order, in the JSON-RPC version of
+     * their request. JSON-RPC 2.0 notifications (requests without an {@code id}) are executed but get no
+     * response, and a batch of only notifications gets an empty (204) response. Batches larger than
+     * {@link JsonRpcProxyConfiguration#getMaxBatchSize()} are rejected.
+     *
+     * @param batch A (non-deserialized) JSON array of requests
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @return  A "promise" for the HttpResponse containing the serialized array of responses
+     */
+    private Publisher<HttpResponse<?>> rpcProxyBatch(JsonNode batch, boolean fresh) {
+        if (batch.isEmpty()) {
+            return Flowable.just(makeErrorResponse(null, invalidRequestError));
+        }
+        if (batch.size() > maxBatchSize) {
+            log.warn("Rejecting batch of {}, the maximum is {}", batch.size(), maxBatchSize);
+            return Flowable.just(makeErrorResponse(null, invalidRequestError));
+        }
+        List<JsonRpcRequest> passthrough = new ArrayList<>();
+        List<Boolean> passthroughVersion2 = new ArrayList<>();
+        // Subscribed to by every passthrough element, but the upstream call is made (at most) once
+        Single<Map<Integer, ObjectNode>> upstreamResponses = Single.defer(() -> forwardBatch(passthrough, passthroughVersion2)).cache();
+        List<Single<byte[]>> responses = new ArrayList<>(batch.size());
+        boolean[] notifications = new boolean[batch.size()];
+        for (JsonNode element : batch) {
+            Object id = idOf(element);
+            boolean version2 = isVersion2(element);
+            Optional<JsonRpcRequest> optRequest = toRequest(element);
+            if (optRequest.isEmpty()) {
+                responses.add(inVersion(version2, serialize(errorBody(id, invalidRequestError))));
+                continue;
+            }
+            notifications[responses.size()] = version2 && !element.has("id");
+            JsonRpcRequest request = optRequest.get();
+            MethodRoute.Handler handler = router.route(request.getMethod()).handler();
+            Single<byte[]> response;
+            if (handler == MethodRoute.Handler.DENIED) {
+                log.error("method denied: {}", request.getMethod());
+                response = serialize(errorBody(id, notFoundError));
+            } else if (handler == MethodRoute.Handler.EXTRA) {
+                response = extraRpcRegistry.invoke(request)
+                        .map(r -> serializeResult(request, r))
+                        .onErrorResumeNext(t -> serialize(errorBody(id, toJsonRpcError(t))));
+            } else if (handler == MethodRoute.Handler.CACHED) {
+                response = callCached(request, fresh)
+                        .map(r -> r.response().withId(request.getId()))
+                        .onErrorResumeNext(t -> serialize(errorBody(id, toJsonRpcError(t))));
+            } else if (handler == MethodRoute.Handler.IMMUTABLE && immutableRpcCache.isCacheable(request)
+                    && !RouteTable.isLargeResult(request.getMethod(), request.getParams())) {
+                response = immutableRpcCache.call(request)
+                        .map(r -> r.withId(request.getId()))
+                        .onErrorResumeNext(t -> serialize(errorBody(id, toJsonRpcError(t))));
+            } else {
+                int index = passthrough.size();
+                passthrough.add(request);
+                passthroughVersion2.add(version2);
+                response = upstreamResponses
+                        .map(upstreamById -> upstreamById.containsKey(index)
+                                ? mapper.writeValueAsBytes(upstreamById.get(index).putPOJO("id", id))
+                                : mapper.writeValueAsBytes(errorBody(id, internalError)))
+                        .onErrorResumeNext(t -> serialize(errorBody(id, toJsonRpcError(t))));
+            }
+            responses.add(inVersion(version2, response));
+        }
+        log.info("Batch of {}, {} forwarded", responses.size(), passthrough.size());
+        return timed(metrics.batchTimer(), Flowable.fromSingle(Single.zip(responses, elements -> joinArray(elements, notifications))
+                .map(bytes -> bytes.length > 0 ? HttpResponse.ok().body(bytes) : HttpResponse.noContent())));
+    }
+
+    private static boolean isVersion2(JsonNode element) {
+        return element != null && "2.0".equals(element.path("jsonrpc").asText(null));
+    }
+
+    // Responses built by the proxy (and 1.0 responses) are converted for JSON-RPC 2.0 requests
+    private Single<byte[]> inVersion(boolean version2, Single<byte[]> response) {
+        return version2 ? response.map(this::toVersion2) : response;
+    }
+
+    /**
+     * Convert a response to the JSON-RPC 2.0 format of Bitcoin Core: a {@code jsonrpc} member, and either a
+     * {@code result} or an {@code error} member.
+     *
+     * @param response a serialized 1.0 (or 2.0) response
+     * @return the serialized 2.0 response
+     */
+    private byte[] toVersion2(byte[] response) throws IOException {
+        JsonNode v1 = mapper.readTree(response);
+        ObjectNode v2 = mapper.createObjectNode();
+        v2.put("jsonrpc", "2.0");
+        if (v1.hasNonNull("error")) {
+            v2.set("error", v1.get("error"));
+        } else {
+            v2.set("result", v1.has("result") ? v1.get("result") : NullNode.getInstance());
+        }
+        v2.set("id", v1.has("id") ? v1.get("id") : NullNode.getInstance());
+        return mapper.writeValueAsBytes(v2);
+    }
+
+    /**
+     * Forward the passthrough elements of a batch as a single upstream batch. Upstream request ids are
+     * replaced with each element's index in {@code requests} so responses can be matched regardless of
+     * the (possibly duplicate or missing) ids supplied by the client. Each element keeps its JSON-RPC version,
+     * so its response is in the caller's format.
+     *
+     * @param requests passthrough requests
+     * @param version2 for each request, {@code true} if it is a JSON-RPC 2.0 request
+     * @return A map of index to upstream response object
+     */
+    private Single<Map<Integer, ObjectNode>> forwardBatch(List<JsonRpcRequest> requests, List<Boolean> version2) {
+        List<Map<String, Object>> upstreamBatch = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            JsonRpcRequest request = requests.get(i);
+            Map<String, Object> upstreamRequest = new LinkedHashMap<>();
+            upstreamRequest.put("jsonrpc", version2.get(i) ? "2.0" : "1.0");
+            upstreamRequest.put("id", i);
+            upstreamRequest.put("method", request.getMethod());
+            if (request.getParams() != null) {
+                upstreamRequest.put("params", request.getParams());
+            }
+            upstreamBatch.add(upstreamRequest);
+        }
+        return upstream.retrieve(upstreamBatch)
+                .map(this::indexBatchResponse)
+                .doOnError(t -> log.error("Upstream batch failed", t));
+    }
+
+    private Map<Integer, ObjectNode> indexBatchResponse(byte[] body) throws IOException {
+        Map<Integer, ObjectNode> indexed = new HashMap<>();
+        for (JsonNode response : mapper.readTree(body)) {
+            if (response instanceof ObjectNode object && object.path("id").canConvertToInt()) {
+                indexed.put(object.get("id").asInt(), object);
+            }
+        }
+        return indexed;
+    }
+
     /**
      * Check permissions and if approved forward an RPC request to the remote server
-     * returning the serialized response or an error response if not approved.
+     * returning the serialized response or an error response if not approved. If the
+     * upstream servers are too busy to accept the request an error response is returned
+     * with HTTP status 503.
      *
      * @param request A deserialized JSON-RPC request
-     * @return  A "promise" for the appropriate HttpResponse (JSON already serialized in a string)
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @return  A "promise" for the appropriate HttpResponse (JSON already serialized)
      */
     @Override
-    public Publisher<HttpResponse<String>> rpcProxy(JsonRpcRequest request) {
-        if (methodPermitted(request)) {
-            log.trace("method permitted: {}", request.getMethod());
-            if (extraRpcRegistry.isExtraRpcMethod(request.getMethod())) {
-                return renderResult(request, extraRpcRegistry.invoke(request));
-            } else if (isCached(request)) {
-                return renderResponse(callCached(request));
-            } else {
-                // Make a remote call and return unprocessed result
-                log.info("Request {}", request.getMethod());
-                return client.exchange( HttpRequest.POST(remoteRpcUri, request).basicAuth(remoteRpcUser, remoteRpcPass), String.class);
+    public Publisher<HttpResponse<?>> rpcProxy(JsonRpcRequest request, boolean fresh) {
+        MethodRoute route = router.route(request.getMethod());
+        return timed(metrics.requestTimer(request.getMethod(), route.handler()),
+                orBusy(request.getId(), route(request, route, fresh)));
+    }
+
+    // Record the time until the response (headers) is ready
+    private static Flowable<HttpResponse<?>> timed(Timer timer, Publisher<HttpResponse<?>> response) {
+        long start = System.nanoTime();
+        return Flowable.fromPublisher(response)
+                .doFinally(() -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    // Replace an AdmissionRejectedException with an error response
+    private Flowable<HttpResponse<?>> orBusy(Object id, Publisher<? extends HttpResponse<?>> response) {
+        return Flowable.<HttpResponse<?>>fromPublisher(response)
+                .onErrorResumeNext(t -> (t instanceof AdmissionRejectedException e)
+                        ? Flowable.just(makeBusyResponse(id, e))
+                        : Flowable.error(t));
+    }
+
+    private Publisher<HttpResponse<?>> route(JsonRpcRequest request, MethodRoute route, boolean fresh) {
+        return switch (route.handler()) {
+            case DENIED -> {
+                log.error("method denied: {}", request.getMethod());
+                yield Flowable.just(makeErrorResponse(request));
             }
+            case EXTRA -> renderResult(request, extraRpcRegistry.invoke(request));
+            case CACHED -> renderCached(request, callCached(request, fresh));
+            case IMMUTABLE -> immutableRpcCache.isCacheable(request) && !RouteTable.isLargeResult(request.getMethod(), request.getParams())
+                    ? renderSerialized(request.getId(), immutableRpcCache.call(request))
+                    : forward(request, route);
+            case STREAM, FORWARD -> forward(request, route);
+        };
+    }
+
+    private Publisher<HttpResponse<?>> forward(JsonRpcRequest request, MethodRoute route) {
+        log.info("Request {}", request.getMethod());
+        if (route.coalescable() && route.handler() != MethodRoute.Handler.STREAM
+                && !RouteTable.isLargeResult(request.getMethod(), request.getParams())) {
+            // Make a remote call (or join an identical in-flight call)
+            return renderSerialized(request.getId(), requestCoalescer.call(request));
         } else {
-            log.error("method denied: {}", request.getMethod());
-            return Flowable.just(makeErrorResponse(request));
+            // Make a remote call and stream the unprocessed result
+            return Flowable.<HttpResponse<?>>fromPublisher(upstream.exchange(request));
         }
     }
 
-    private Publisher<HttpResponse<String>> renderResult(JsonRpcRequest request, Single<?> result) {
-        return renderResponse(result.map(r -> responseFromResult(request, r)));
+    private Publisher<HttpResponse<?>> renderResult(JsonRpcRequest request, Single<?> result) {
+        return Flowable.fromSingle(result
+                .map(r -> serializeResult(request, r))
+                .map(bytes -> HttpResponse.ok().body(bytes)));
+    }
+
+    // Extra methods may return a response that is already serialized
+    private byte[] serializeResult(JsonRpcRequest request, Object result) throws IOException {
+        return result instanceof SerializedRpcResponse serialized
+                ? serialized.withId(request.getId())
+                : mapper.writeValueAsBytes(responseFromResult(request, result));
     }
 
-    private Publisher<HttpResponse<String>> renderResponse(Single<JsonRpcResponse<?>> response) {
+    // Passthrough responses keep the upstream HTTP status
+    private Publisher<HttpResponse<?>> renderSerialized(Object id, Single<SerializedRpcResponse> response) {
         return Flowable.fromSingle(response
-                .map(mapper::writeValueAsString)
-                .map(string -> HttpResponse.ok().body(string)));
+                .map(r -> {
+                    MutableHttpResponse<byte[]> httpResponse = HttpResponse.ok().status(r.status()).body(r.withId(id));
+                    // Responses with confirmations are tagged with the height they were calculated at
+                    return r.tipHeight() != null ? httpResponse.header(BLOCK_HEIGHT_HEADER, r.tipHeight().toString()) : httpResponse;
+                }));
+    }
+
+    // Cached responses are tagged with the height of the block they were fetched for
+    private Publisher<HttpResponse<?>> renderCached(JsonRpcRequest request, Single<CachedRpcService.CachedResponse> response) {
+        return Flowable.fromSingle(response
+                .map(r -> {
+                    MutableHttpResponse<byte[]> httpResponse = HttpResponse.ok().body(r.response().withId(request.getId()));
+                    return r.height() != null ? httpResponse.header(BLOCK_HEIGHT_HEADER, r.height()) : httpResponse;
+                }));
     }
 
     @Override
-    public Publisher<HttpResponse<String>> rpcProxy(String method) {
-        JsonRpcRequest request = new JsonRpcRequest(method);
-        // TODO: Filter methods and only allow read-only methods here. (or will read-only be the same as "allowed"?)
-        return rpcProxy(request);
+    public Publisher<HttpResponse<?>> rpcProxy(boolean fresh, String method, String... args) {
+        return rpcProxy(toRequest(method, args), fresh);
     }
 
     @Override
-    public Publisher<HttpResponse<String>> rpcProxy(String method, String... args) {
-        List<Object> convertedArgs = convertParameters(method, List.of(args));
-        JsonRpcRequest request = new JsonRpcRequest(method, convertedArgs);
-        return rpcProxy(request);
+    public Publisher<HttpResponse<?>> rpcGet(boolean fresh, @Nullable String ifNoneMatch, String method, String... args) {
+        JsonRpcRequest request = toRequest(method, args);
+        return httpCachePolicy.conditional(request, router.route(method), ifNoneMatch, () -> rpcProxy(request, fresh));
     }
 
-    private boolean isCached(JsonRpcRequest request) {
-        return cachedRpcService.isCached(request);
+    private JsonRpcRequest toRequest(String method, String... args) {
+        // TODO: Filter methods and only allow read-only methods here. (or will read-only be the same as "allowed"?)
+        return args.length == 0
+                ? new JsonRpcRequest(method)
+                : new JsonRpcRequest(method, convertParameters(method, List.of(args)));
     }
 
-    private Single<JsonRpcResponse<?>> callCached(JsonRpcRequest request) {
-        return cachedRpcService.callCached(request);
+    private Single<CachedRpcService.CachedResponse> callCached(JsonRpcRequest request, boolean fresh) {
+        return cachedRpcService.callCached(request, fresh);
     }
 
     private static <RSLT> JsonRpcResponse<RSLT> responseFromResult(JsonRpcRequest request, RSLT result) {
         return new JsonRpcResponse<>(request, result);
     }
 
+    private Optional<JsonRpcRequest> toRequest(JsonNode node) {
+        if (node == null || !node.isObject() || !node.path("method").isTextual()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(mapper.treeToValue(node, JsonRpcRequest.class));
+        } catch (JsonProcessingException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Object idOf(JsonNode node) {
+        return (node != null && node.isObject()) ? node.get("id") : null;
+    }
+
+    private static JsonRpcError toJsonRpcError(Throwable t) {
+        if (t instanceof JsonRpcErrorException e) {
+            return e.getError();
+        } else if (t instanceof AdmissionRejectedException e) {
+            return busyError(e);
+        } else {
+            return JsonRpcError.of(JsonRpcError.Error.INTERNAL_ERROR);
+        }
+    }
+
+    private static JsonRpcError busyError(AdmissionRejectedException e) {
+        return new JsonRpcError(AdmissionRejectedException.JSON_RPC_CODE, e.getMessage(), null);
+    }
+
     /**
      * Check that the JSON-RPC method is permitted. This means it is on the allow list (if an
      * allow list is present) and not on the deny list.
@@ -129,15 +437,11 @@ public class RxBitcoinJsonRpcProxyService implements RxJsonRpcProxyService {
      * @return true if permitted, false if denied
      */
     protected boolean methodPermitted(JsonRpcRequest request) {
-        return methodAllowed(request.getMethod()) && methodNotDenied(request.getMethod());
-    }
-
-    private boolean methodAllowed(String method) {
-        return optionalAllowList.map(l -> l.contains(method)).orElse(true);
+        return methodPermitted(request.getMethod());
     }
 
-    private boolean methodNotDenied(String method) {
-        return optionalDenyList.map(l -> !l.contains(method)).orElse(true);
+    protected boolean methodPermitted(String method) {
+        return router.route(method).handler() != MethodRoute.Handler.DENIED;
     }
 
     /**
@@ -191,15 +495,90 @@ public class RxBitcoinJsonRpcProxyService implements RxJsonRpcProxyService {
     }
 
 
-    private HttpResponse<String> makeErrorResponse(JsonRpcRequest request) {
+    private HttpResponse<byte[]> makeErrorResponse(JsonRpcRequest request) {
         JsonRpcResponse<Void> jsonResponse = new JsonRpcResponse<>(request, notFoundError);
-        String body;
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(jsonResponse);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        return HttpResponse.ok().body(body);
+    }
+
+    private HttpResponse<byte[]> makeErrorResponse(Object id, JsonRpcError error) {
+        byte[] body;
         try {
-            body = mapper.writeValueAsString(jsonResponse);
+            body = mapper.writeValueAsBytes(errorBody(id, error));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
         return HttpResponse.ok().body(body);
     }
 
+    private HttpResponse<byte[]> makeBusyResponse(Object id, AdmissionRejectedException e) {
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(errorBody(id, busyError(e)));
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException(ex);
+        }
+        return HttpResponse.status(HttpStatus.SERVICE_UNAVAILABLE).body(body);
+    }
+
+    private static boolean startsWith(byte[] body, byte b) {
+        for (byte c : body) {
+            if (!Character.isWhitespace(c)) {
+                return c == b;
+            }
+        }
+        return false;
+    }
+
+    private Single<byte[]> serialize(Object response) {
+        return Single.fromCallable(() -> mapper.writeValueAsBytes(response));
+    }
+
+    // Join serialized batch elements, except those that are omitted, into a JSON array (or nothing if all are)
+    private static byte[] joinArray(Object[] elements, boolean[] omitted) {
+        int count = 0;
+        int length = 1;     // brackets and commas
+        for (int i = 0; i < elements.length; i++) {
+            if (!omitted[i]) {
+                count++;
+                length += ((byte[]) elements[i]).length + 1;
+            }
+        }
+        if (count == 0) {
+            return new byte[0];
+        }
+        byte[] array = new byte[length];
+        int pos = 0;
+        array[pos++] = '[';
+        for (int i = 0; i < elements.length; i++) {
+            if (omitted[i]) {
+                continue;
+            }
+            byte[] element = (byte[]) elements[i];
+            if (pos > 1) {
+                array[pos++] = ',';
+            }
+            System.arraycopy(element, 0, array, pos, element.length);
+            pos += element.length;
+        }
+        array[pos] = ']';
+        return array;
+    }
+
+    /**
+     * Build an error response for cases where there is no (valid) {@link JsonRpcRequest} to
+     * construct a {@link JsonRpcResponse} from.
+     */
+    private static Map<String, Object> errorBody(Object id, JsonRpcError error) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("result", null);
+        response.put("error", error);
+        response.put("id", id);
+        return response;
+    }
 }
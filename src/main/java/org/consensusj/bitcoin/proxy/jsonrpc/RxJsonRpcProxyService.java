@@ -1,23 +1,69 @@
 package org.consensusj.bitcoin.proxy.jsonrpc;
 
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpResponse;
 import org.consensusj.jsonrpc.JsonRpcRequest;
 import org.reactivestreams.Publisher;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Interface for proxying JSON-RPC requests using Reactive Streams {@link Publisher}
  * and Micronaut {link @HttpResponse} types.
  */
 public interface RxJsonRpcProxyService {
+    /**
+     * Proxy a serialized JSON-RPC request body, which may be a single request object or
+     * a JSON-RPC 2.0 batch array of request objects.
+     *
+     * @param body An undeserialized request body
+     * @return A promise of a serialized response (a JSON array if the request was a batch)
+     */
+    default Publisher<HttpResponse<?>> rpcProxyJson(String body) {
+        return rpcProxyJson(body.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * @param body An undeserialized (UTF-8) request body
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @return A promise of a serialized response (a JSON array if the request was a batch)
+     */
+    Publisher<HttpResponse<?>> rpcProxyJson(byte[] body, boolean fresh);
+
     /**
      *
      * @param request A deserialized (for filtering) request
      * @return A promise of a serialized response
      */
-    Publisher<HttpResponse<String>> rpcProxy(JsonRpcRequest request);
+    default Publisher<HttpResponse<?>> rpcProxy(JsonRpcRequest request) {
+        return rpcProxy(request, false);
+    }
 
+    /**
+     * @param request A deserialized (for filtering) request
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @return A promise of a serialized response
+     */
+    Publisher<HttpResponse<?>> rpcProxy(JsonRpcRequest request, boolean fresh);
+
+    default Publisher<HttpResponse<?>> rpcProxy(String method) {
+        return rpcProxy(false, method);
+    }
 
-    Publisher<HttpResponse<String>> rpcProxy(String method);
+    default Publisher<HttpResponse<?>> rpcProxy(String method, String... args) {
+        return rpcProxy(false, method, args);
+    }
 
-    Publisher<HttpResponse<String>> rpcProxy(String method, String... args);
+    Publisher<HttpResponse<?>> rpcProxy(boolean fresh, String method, String... args);
+
+    /**
+     * Proxy a request made with an HTTP GET, adding HTTP validators and caching directives to the response
+     *
+     * @param fresh if {@code true}, don't serve cached responses from a previous block
+     * @param ifNoneMatch the {@code If-None-Match} request header, if any
+     * @param method JSON-RPC method
+     * @param args parameters (as strings)
+     * @return A promise of a serialized response, or of a {@code 304 Not Modified} response
+     */
+    Publisher<HttpResponse<?>> rpcGet(boolean fresh, @Nullable String ifNoneMatch, String method, String... args);
 }
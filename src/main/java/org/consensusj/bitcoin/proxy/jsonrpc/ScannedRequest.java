@@ -0,0 +1,96 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * A JSON-RPC request that has been scanned for its {@code method}, {@code id} and {@code jsonrpc} version, but not
+ * deserialized.
+ * Scanning uses the Jackson streaming parser and skips over the values of other fields (e.g. {@code params})
+ * without building objects, so a request that is forwarded upstream can be sent as the original bytes.
+ * <p>
+ * Objects with duplicate keys are not scanned: the upstream server may resolve them differently (Bitcoin Core
+ * keeps the first {@code method}, a last-wins scan would check the permissions of a different method.)
+ *
+ * @param body the original request body
+ * @param method JSON-RPC method
+ * @param id the {@code id} ({@code String}, {@code Number} or {@code null})
+ * @param hasId {@code false} if there is no {@code id} field (a JSON-RPC 2.0 notification)
+ * @param params the {@code params} as they appear in the body, {@code "[]"} if absent
+ * @param jsonrpc the {@code jsonrpc} version, {@code null} if absent
+ */
+record ScannedRequest(byte[] body, String method, Object id, boolean hasId, String params, String jsonrpc) {
+
+    /**
+     * @return {@code true} if this is a JSON-RPC 2.0 request, which Bitcoin Core (28 and later) answers in the
+     * 2.0 format, otherwise it is answered in the 1.0 format
+     */
+    boolean isVersion2() {
+        return "2.0".equals(jsonrpc);
+    }
+
+    /**
+     * @param factory factory for the streaming parser
+     * @param body a request body
+     * @return A scanned request, or empty if the body isn't a single, well-formed request object with a
+     * string {@code method}, a scalar {@code id}, a string {@code jsonrpc} (if any) and no duplicate keys (in which case it should be fully parsed to
+     * report errors)
+     */
+    static Optional<ScannedRequest> scan(JsonFactory factory, byte[] body) {
+        try (JsonParser parser = factory.createParser(body).enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            String method = null;
+            Object id = null;
+            boolean hasId = false;
+            String params = "[]";
+            String jsonrpc = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "method" -> {
+                        if (value != JsonToken.VALUE_STRING) return Optional.empty();
+                        method = parser.getText();
+                    }
+                    case "id" -> {
+                        hasId = true;
+                        switch (value) {
+                            case VALUE_STRING -> id = parser.getText();
+                            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> id = parser.getNumberValue();
+                            case VALUE_NULL -> id = null;
+                            default -> {
+                                return Optional.empty();
+                            }
+                        }
+                    }
+                    case "params" -> {
+                        if (value != JsonToken.START_ARRAY && value != JsonToken.START_OBJECT) return Optional.empty();
+                        int start = (int) parser.currentTokenLocation().getByteOffset();
+                        parser.skipChildren();
+                        int end = (int) parser.currentLocation().getByteOffset();
+                        params = new String(body, start, end - start, StandardCharsets.UTF_8);
+                    }
+                    case "jsonrpc" -> {
+                        if (value != JsonToken.VALUE_STRING) return Optional.empty();
+                        jsonrpc = parser.getText();
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT || method == null || parser.nextToken() != null) {
+                return Optional.empty();
+            }
+            return Optional.of(new ScannedRequest(body, method, id, hasId, params, jsonrpc));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micronaut.core.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A JSON-RPC response that has been serialized once, minus its {@code id}. A complete response
+ * for a particular request is built by splicing in the caller's {@code id}, so serving a cached
+ * response requires no Jackson work and only a single allocation (the response body) in the
+ * common case of a {@code String} or numeric id.
+ */
+public final class SerializedRpcResponse {
+    private static final byte[] nullBytes = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] idField = "\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] nullError = "\"error\":null".getBytes(StandardCharsets.US_ASCII);
+    // How Bitcoin Core starts the responses whose error status can't be told from their end
+    private static final byte[] v1Error = "{\"result\":null,\"error\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] v2Result = "{\"jsonrpc\":\"2.0\",\"result\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] v2Error = "{\"jsonrpc\":\"2.0\",\"error\":".getBytes(StandardCharsets.US_ASCII);
+    // The response object up to and including `"id":`
+    private final byte[] prefix;
+    private final boolean error;
+    // HTTP status to send the response with
+    private final int status;
+    // Height of the chain tip the response's chain-dependent fields were calculated at, if any
+    private final @Nullable Long tipHeight;
+
+    private SerializedRpcResponse(byte[] prefix, boolean error) {
+        this(prefix, error, 200, null);
+    }
+
+    private SerializedRpcResponse(byte[] prefix, boolean error, int status, @Nullable Long tipHeight) {
+        this.prefix = prefix;
+        this.error = error;
+        this.status = status;
+        this.tipHeight = tipHeight;
+    }
+
+    /**
+     * @param responseWithoutId A serialized JSON-RPC response object with no {@code id} field
+     * @param error {@code true} if this is an error response
+     * @return A response that can be completed with {@link #withId(Object)}
+     */
+    public static SerializedRpcResponse of(byte[] responseWithoutId, boolean error) {
+        int close = lastIndexOf(responseWithoutId, (byte) '}');
+        int open = indexOf(responseWithoutId, (byte) '{');
+        if (open < 0 || close < open) {
+            throw new IllegalArgumentException("not a JSON object");
+        }
+        boolean empty = isBlank(responseWithoutId, open + 1, close);
+        int separatorLength = empty ? 0 : 1;
+        byte[] prefix = new byte[close + separatorLength + idField.length];
+        System.arraycopy(responseWithoutId, 0, prefix, 0, close);
+        if (!empty) {
+            prefix[close] = ',';
+        }
+        System.arraycopy(idField, 0, prefix, close + separatorLength, idField.length);
+        return new SerializedRpcResponse(prefix, error);
+    }
+
+    /**
+     * Create from a response body received from upstream. Bitcoin Core serializes the {@code id} last, so
+     * when the body ends with the expected {@code id} (and has the member order of a Bitcoin Core 1.0 or 2.0
+     * response, which tells whether it is an error) the body is used without parsing, otherwise it is
+     * re-serialized without its {@code id}. A response is an error if it has a non-null {@code error} member
+     * (a 2.0 success response has no {@code error} member at all).
+     *
+     * @param mapper mapper for the fallback case
+     * @param body response body from upstream
+     * @param sentId the (string) {@code id} that was sent upstream
+     * @return A response that can be completed with {@link #withId(Object)}
+     * @throws IOException if the body can't be parsed
+     */
+    public static SerializedRpcResponse fromUpstream(ObjectMapper mapper, byte[] body, String sentId) throws IOException {
+        return fromUpstream(mapper, body, ("\"" + sentId + "\"").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create from a response body received from upstream.
+     *
+     * @param mapper mapper for the fallback case
+     * @param body response body from upstream
+     * @param sentIdJson the {@code id} that was sent upstream, serialized
+     * @return A response that can be completed with {@link #withId(Object)}
+     * @throws IOException if the body can't be parsed
+     */
+    public static SerializedRpcResponse fromUpstream(ObjectMapper mapper, byte[] body, byte[] sentIdJson) throws IOException {
+        byte[] idSuffix = new byte[idField.length + sentIdJson.length + 2];
+        idSuffix[0] = ',';
+        System.arraycopy(idField, 0, idSuffix, 1, idField.length);
+        System.arraycopy(sentIdJson, 0, idSuffix, 1 + idField.length, sentIdJson.length);
+        idSuffix[idSuffix.length - 1] = '}';
+        int end = body.length;
+        while (end > 0 && Character.isWhitespace(body[end - 1])) {
+            end--;
+        }
+        int idStart = end - idSuffix.length;
+        if (regionMatches(body, idStart, idSuffix)) {
+            Boolean error = errorOf(body, idStart);
+            if (error != null) {
+                // Keep everything up to and including `,"id":`
+                byte[] prefix = Arrays.copyOf(body, idStart + 1 + idField.length);
+                return new SerializedRpcResponse(prefix, error);
+            }
+        }
+        ObjectNode response = (ObjectNode) mapper.readTree(body);
+        response.remove("id");
+        return of(mapper.writeValueAsBytes(response), response.hasNonNull("error"));
+    }
+
+    /**
+     * @param body a response body
+     * @param idStart offset of the {@code ,"id":} member that ends it
+     * @return whether the response is an error, or {@code null} if it doesn't have the member order of a Bitcoin
+     * Core response
+     */
+    private static Boolean errorOf(byte[] body, int idStart) {
+        if (regionMatches(body, idStart - nullError.length, nullError)) {
+            // 1.0 success: {"result":...,"error":null,"id":...}
+            return false;
+        }
+        int start = 0;
+        while (start < idStart && Character.isWhitespace(body[start])) {
+            start++;
+        }
+        if (regionMatches(body, start, v2Result)) {
+            return false;
+        } else if (regionMatches(body, start, v1Error) || regionMatches(body, start, v2Error)) {
+            return true;
+        }
+        return null;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * @return HTTP status to send the response with, {@code 200} unless set by {@link #withStatus(int)}
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * @param status HTTP status of the upstream response, so a passthrough response keeps it (Bitcoin Core
+     *               answers JSON-RPC 1.0 errors with 500, or 404 for an unknown method)
+     * @return this response with the HTTP status
+     */
+    public SerializedRpcResponse withStatus(int status) {
+        return status == this.status ? this : new SerializedRpcResponse(prefix, error, status, tipHeight);
+    }
+
+    /**
+     * @return height of the chain tip the response's chain-dependent fields (e.g. {@code confirmations}) were
+     * calculated at, or {@code null} if it has none or they are from upstream
+     */
+    public @Nullable Long tipHeight() {
+        return tipHeight;
+    }
+
+    /**
+     * @param tipHeight height of the chain tip the response's chain-dependent fields were calculated at
+     * @return this response with the height
+     */
+    public SerializedRpcResponse withTipHeight(long tipHeight) {
+        return new SerializedRpcResponse(prefix, error, status, tipHeight);
+    }
+
+    /**
+     * @return approximate size of the response in bytes
+     */
+    public int length() {
+        return prefix.length + 1;
+    }
+
+    /**
+     * Complete the response for a request.
+     *
+     * @param id The {@code id} of the request (typically a {@code String} or {@code Number}), may be {@code null}
+     * @return A complete, serialized JSON-RPC response
+     */
+    public byte[] withId(Object id) {
+        if (id == null) {
+            return complete(nullBytes);
+        } else if (id instanceof String string && isPlainAscii(string)) {
+            byte[] response = new byte[prefix.length + string.length() + 3];
+            int pos = copyPrefix(response);
+            response[pos++] = '"';
+            for (int i = 0; i < string.length(); i++) {
+                response[pos++] = (byte) string.charAt(i);
+            }
+            response[pos++] = '"';
+            response[pos] = '}';
+            return response;
+        } else if (id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte) {
+            long value = ((Number) id).longValue();
+            byte[] response = new byte[prefix.length + decimalLength(value) + 1];
+            int pos = writeDecimal(response, copyPrefix(response), value);
+            response[pos] = '}';
+            return response;
+        } else if (id instanceof JsonNode node) {
+            return complete(node.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (id instanceof Number number) {
+            return complete(number.toString().getBytes(StandardCharsets.US_ASCII));
+        } else {
+            return complete(quote(id.toString()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] complete(byte[] idBytes) {
+        byte[] response = new byte[prefix.length + idBytes.length + 1];
+        int pos = copyPrefix(response);
+        System.arraycopy(idBytes, 0, response, pos, idBytes.length);
+        response[response.length - 1] = '}';
+        return response;
+    }
+
+    private int copyPrefix(byte[] response) {
+        System.arraycopy(prefix, 0, response, 0, prefix.length);
+        return prefix.length;
+    }
+
+    // True if the string can be written as a JSON string without escaping or UTF-8 encoding
+    private static boolean isPlainAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String quote(String string) {
+        StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static int decimalLength(long value) {
+        if (value == Long.MIN_VALUE) {
+            return 20;
+        }
+        int length = value < 0 ? 2 : 1;
+        for (long v = Math.abs(value); v >= 10; v /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeDecimal(byte[] buffer, int pos, long value) {
+        if (value == Long.MIN_VALUE) {
+            byte[] min = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(min, 0, buffer, pos, min.length);
+            return pos + min.length;
+        }
+        int length = decimalLength(value);
+        int end = pos + length;
+        long v = Math.abs(value);
+        for (int i = end - 1; i >= pos; i--) {
+            buffer[i] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        if (value < 0) {
+            buffer[pos] = '-';
+        }
+        return end;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int offset, byte[] expected) {
+        if (offset < 0 || offset + expected.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte b) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(bytes[i])) return false;
+        }
+        return true;
+    }
+}
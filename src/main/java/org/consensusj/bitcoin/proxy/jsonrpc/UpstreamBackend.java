@@ -0,0 +1,101 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An upstream server and the statistics used to route requests to it: smoothed latency,
+ * requests in flight, best block height and health.
+ */
+final class UpstreamBackend {
+    // Weight of the newest sample in the smoothed latency
+    private static final double latencyAlpha = 0.2;
+    private final String name;
+    private final URI uri;
+    private final String username;
+    private final String password;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Updates may race, that only costs accuracy
+    private volatile double latencyMicros = 0;
+    private volatile long height = -1;
+    private volatile long unhealthyUntil = Long.MIN_VALUE;
+
+    UpstreamBackend(String name, URI uri, String username, String password) {
+        this.name = name;
+        this.uri = uri;
+        this.username = username;
+        this.password = password;
+    }
+
+    String name() {
+        return name;
+    }
+
+    URI uri() {
+        return uri;
+    }
+
+    String username() {
+        return username;
+    }
+
+    String password() {
+        return password;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    double latencyMicros() {
+        return latencyMicros;
+    }
+
+    long height() {
+        return height;
+    }
+
+    /**
+     * @return start time, to be passed to {@link #recordLatency(long)}
+     */
+    long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void end() {
+        inFlight.decrementAndGet();
+    }
+
+    void recordLatency(long startNanos) {
+        double sample = (System.nanoTime() - startNanos) / 1000.0;
+        double previous = latencyMicros;
+        latencyMicros = previous == 0 ? sample : previous + latencyAlpha * (sample - previous);
+    }
+
+    void recordHeight(long height) {
+        this.height = height;
+        unhealthyUntil = Long.MIN_VALUE;
+    }
+
+    void markFailed(long cooldownNanos) {
+        unhealthyUntil = System.nanoTime() + cooldownNanos;
+    }
+
+    boolean isHealthy(long nowNanos) {
+        long until = unhealthyUntil;
+        return until == Long.MIN_VALUE || nowNanos - until >= 0;
+    }
+
+    /**
+     * @return expected wait for a new request, lower is better
+     */
+    double score() {
+        return Math.max(latencyMicros, 1.0) * (inFlight.get() + 1);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + uri + ")";
+    }
+}
@@ -0,0 +1,61 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.EachProperty;
+import io.micronaut.context.annotation.Parameter;
+import io.micronaut.core.annotation.Nullable;
+
+import java.net.URI;
+
+/**
+ * Configuration for an additional (read-only) upstream server. The server configured by
+ * {@link JsonRpcProxyConfiguration} is the primary and additional servers are configured by name, e.g.:
+ * <pre>
+ * btcproxyd:
+ *   rpcproxy:
+ *     backends:
+ *       node2:
+ *         uri: http://node2:8332
+ * </pre>
+ * If {@code username} and {@code password} are not set, the primary's credentials are used.
+ */
+@EachProperty("btcproxyd.rpcproxy.backends")
+public class UpstreamBackendConfiguration {
+    private final String name;
+    private URI uri;
+    private String username;
+    private String password;
+
+    public UpstreamBackendConfiguration(@Parameter String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    @Nullable
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(@Nullable String username) {
+        this.username = username;
+    }
+
+    @Nullable
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(@Nullable String password) {
+        this.password = password;
+    }
+}
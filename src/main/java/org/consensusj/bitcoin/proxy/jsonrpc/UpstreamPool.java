@@ -0,0 +1,107 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chooses the upstream server for a request. Only read-only methods that depend on replicated (chain) state
+ * are spread over the pool, every other method (wallet, writes, node-local state, unknown methods) always goes
+ * to the primary. Replicated methods go to the healthy backend, that is no more than
+ * {@code maxHeightLag} blocks behind the best known height, with the lowest expected wait (smoothed
+ * latency times requests in flight). If no backend qualifies the primary is used.
+ */
+final class UpstreamPool {
+    // TODO: Make configurable
+    static final Set<String> replicatedMethods = Set.of(
+            // Blockchain and mempool
+            "getbestblockhash", "getblock", "getblockchaininfo", "getblockcount", "getblockfilter", "getblockhash",
+            "getblockheader", "getblockstats", "getchaintips", "getchaintxstats", "getdeploymentinfo", "getdifficulty",
+            "getmempoolancestors", "getmempooldescendants", "getmempoolentry", "getmempoolinfo", "getrawmempool",
+            "gettxout", "gettxoutproof", "gettxoutsetinfo", "gettxspendingprevout", "verifytxoutproof",
+            "getrawtransaction", "getindexinfo", "getmininginfo", "getnetworkhashps", "estimatesmartfee",
+            // Stateless utilities
+            "decoderawtransaction", "decodescript", "decodepsbt", "analyzepsbt", "testmempoolaccept",
+            "validateaddress", "getdescriptorinfo", "deriveaddresses",
+            // Omni Layer
+            "omni_getinfo", "omni_getbalance", "omni_getallbalancesforid", "omni_getallbalancesforaddress",
+            "omni_gettransaction", "omni_listblocktransactions", "omni_listblockstransactions",
+            "omni_listpendingtransactions", "omni_listproperties", "omni_getproperty", "omni_getactivecrowdsales",
+            "omni_getcrowdsale", "omni_getgrants", "omni_getsto", "omni_gettrade", "omni_getorderbook",
+            "omni_gettradehistoryforpair", "omni_gettradehistoryforaddress", "omni_getactivedexsells",
+            "omni_getactivations", "omni_getpayload", "omni_getseedblocks", "omni_getcurrentconsensushash",
+            "omni_getbalanceshash", "omni_getnonfungibletokens", "omni_getnonfungibletokenranges",
+            "omni_getnonfungibletokendata", "omni_decodetransaction");
+    private final UpstreamBackend primary;
+    private final List<UpstreamBackend> backends;
+    private final int maxHeightLag;
+    private volatile long tipHeight = -1;
+
+    /**
+     * @param primary the primary server
+     * @param backends all servers, including the primary
+     * @param maxHeightLag how many blocks a backend may lag and still receive reads
+     */
+    UpstreamPool(UpstreamBackend primary, List<UpstreamBackend> backends, int maxHeightLag) {
+        this.primary = primary;
+        this.backends = List.copyOf(backends);
+        this.maxHeightLag = maxHeightLag;
+    }
+
+    UpstreamBackend primary() {
+        return primary;
+    }
+
+    List<UpstreamBackend> backends() {
+        return backends;
+    }
+
+    boolean isPooled() {
+        return backends.size() > 1;
+    }
+
+    /**
+     * @param height height of the latest ChainTip
+     */
+    void observeTip(long height) {
+        tipHeight = height;
+    }
+
+    static boolean isPrimaryOnly(String method) {
+        return method == null || !replicatedMethods.contains(method);
+    }
+
+    /**
+     * @param method JSON-RPC method (for a batch, a primary-only method in the batch if there is one)
+     * @return the backend to send the request to
+     */
+    UpstreamBackend select(String method) {
+        return select(isPrimaryOnly(method));
+    }
+
+    /**
+     * @param primaryOnly {@code true} if the request must go to the primary
+     * @return the backend to send the request to
+     */
+    UpstreamBackend select(boolean primaryOnly) {
+        if (!isPooled() || primaryOnly) {
+            return primary;
+        }
+        long now = System.nanoTime();
+        long bestHeight = tipHeight;
+        for (UpstreamBackend backend : backends) {
+            bestHeight = Math.max(bestHeight, backend.height());
+        }
+        UpstreamBackend selected = null;
+        double selectedScore = Double.MAX_VALUE;
+        for (UpstreamBackend backend : backends) {
+            if (backend.isHealthy(now) && backend.height() >= bestHeight - maxHeightLag) {
+                double score = backend.score();
+                if (score < selectedScore) {
+                    selected = backend;
+                    selectedScore = score;
+                }
+            }
+        }
+        return selected != null ? selected : primary;
+    }
+}
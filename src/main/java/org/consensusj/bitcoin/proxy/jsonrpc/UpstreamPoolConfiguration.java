@@ -0,0 +1,31 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * Configuration for routing requests across the primary and any additional
+ * {@link UpstreamBackendConfiguration backends}.
+ */
+@ConfigurationProperties("btcproxyd.rpcproxy.pool")
+public interface UpstreamPoolConfiguration {
+    /**
+     * @return how many blocks a backend may lag the best known height and still be sent read requests
+     */
+    @Bindable(defaultValue = "0")
+    int getMaxHeightLag();
+
+    /**
+     * @return how often the block height (and health) of each backend is checked
+     */
+    @Bindable(defaultValue = "2s")
+    Duration getHealthCheckInterval();
+
+    /**
+     * @return how long a backend is skipped after a connection failure
+     */
+    @Bindable(defaultValue = "10s")
+    Duration getFailureCooldown();
+}
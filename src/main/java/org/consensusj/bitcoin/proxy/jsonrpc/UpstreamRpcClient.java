@@ -0,0 +1,318 @@
+package org.consensusj.bitcoin.proxy.jsonrpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.type.Argument;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.ProxyHttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.consensusj.bitcoin.rx.ChainTipPublisher;
+import org.consensusj.jsonrpc.JsonRpcRequest;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP transport to the remote (upstream) JSON-RPC servers. Request bodies are serialized
+ * by Micronaut, response bodies are returned unprocessed. {@link #exchange(Object)} streams the
+ * response body, so it is never held in memory in its entirety.
+ * <p>
+ * Requests go to the primary server ({@link JsonRpcProxyConfiguration#getUri()}) unless additional
+ * {@link UpstreamBackendConfiguration backends} are configured, in which case read-only requests are
+ * spread across all servers by {@link UpstreamPool}. A read that fails to reach a non-primary backend is
+ * retried once on the primary.
+ * <p>
+ * Requests made through the public methods are subject to {@link AdmissionController admission control} and
+ * the {@link MethodRoute#timeout() timeout} of their method.
+ */
+@Singleton
+public class UpstreamRpcClient {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamRpcClient.class);
+    /**
+     * The {@code id} used for requests made by {@link #call(String, List)}
+     */
+    static final String UPSTREAM_ID = "btcproxy";
+    private static final Argument<byte[]> bytesArgument = Argument.of(byte[].class);
+    private final HttpClient client;
+    private final ProxyHttpClient proxyClient;
+    private final ObjectMapper mapper;
+    private final UpstreamPool pool;
+    private final AdmissionController admissionController;
+    private final MethodRouter router;
+    private final ProxyMetrics metrics;
+    // Written only by the constructor
+    private final Map<UpstreamBackend, ProxyMetrics.UpstreamErrors> errorCounters = new IdentityHashMap<>();
+    private final ChainTipPublisher chainTipPublisher;
+    private final UpstreamPoolConfiguration poolConfig;
+    private final long failureCooldownNanos;
+    private final CompositeDisposable healthChecks = new CompositeDisposable();
+
+    public UpstreamRpcClient(HttpClient httpClient,
+                             ProxyHttpClient proxyHttpClient,
+                             ObjectMapper jsonMapper,
+                             JsonRpcProxyConfiguration config,
+                             List<UpstreamBackendConfiguration> backendConfigs,
+                             UpstreamPoolConfiguration poolConfig,
+                             AdmissionController admissionController,
+                             MethodRouter router,
+                             ProxyMetrics metrics,
+                             ChainTipPublisher chainTipPublisher) {
+        client = httpClient;
+        proxyClient = proxyHttpClient;
+        this.admissionController = admissionController;
+        this.router = router;
+        this.metrics = metrics;
+        mapper = jsonMapper;
+        this.poolConfig = poolConfig;
+        this.chainTipPublisher = chainTipPublisher;
+        failureCooldownNanos = poolConfig.getFailureCooldown().toNanos();
+        UpstreamBackend primary = new UpstreamBackend("primary", config.getUri(), config.getUsername(), config.getPassword());
+        List<UpstreamBackend> backends = new ArrayList<>();
+        backends.add(primary);
+        for (UpstreamBackendConfiguration backend : backendConfigs) {
+            backends.add(new UpstreamBackend(backend.getName(),
+                    backend.getUri(),
+                    backend.getUsername() != null ? backend.getUsername() : config.getUsername(),
+                    backend.getPassword() != null ? backend.getPassword() : config.getPassword()));
+        }
+        pool = new UpstreamPool(primary, backends, poolConfig.getMaxHeightLag());
+        for (UpstreamBackend backend : backends) {
+            errorCounters.put(backend, metrics.upstream(backend));
+        }
+        log.info("remoteRpcUri: {}", primary.uri());
+        if (pool.isPooled()) {
+            log.info("read backends: {}", pool.backends());
+        }
+    }
+
+    /**
+     * If there are multiple backends, check their heights on every new block and periodically
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (pool.isPooled() && healthChecks.size() == 0) {
+            healthChecks.add(Flowable.fromPublisher(chainTipPublisher)
+                    .subscribe(tip -> {
+                        pool.observeTip(tip.getHeight());
+                        checkHeights();
+                    }, t -> log.error("ChainTip error", t)));
+            long interval = poolConfig.getHealthCheckInterval().toMillis();
+            healthChecks.add(Flowable.interval(interval, interval, TimeUnit.MILLISECONDS)
+                    .subscribe(i -> checkHeights(), t -> log.error("Health check error", t)));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        healthChecks.clear();
+    }
+
+    /**
+     * Forward a request and return the remote server's HTTP response (including error responses) with a
+     * streaming body. The Netty buffers of the body are relayed to the client as they arrive, so memory use
+     * doesn't depend on the size of the response. Upstream statistics and admission only cover the time until
+     * the response headers arrive (Bitcoin Core builds the complete response before it starts sending.)
+     *
+     * @param body request body (a request object, a {@link ScannedRequest} or a batch)
+     * @return A publisher of the remote server's HttpResponse
+     */
+    public Publisher<MutableHttpResponse<?>> exchange(Object body) {
+        MethodRoute route = routeOf(body);
+        Flowable<MutableHttpResponse<?>> response = admissionController.admit(route.costClass(), Flowable.defer(() -> {
+            UpstreamBackend backend = pool.select(route.primaryOnly());
+            return exchange(backend, body)
+                    .onErrorResumeNext(t -> isRetryable(t, backend)
+                            ? exchange(pool.primary(), body)
+                            : Flowable.error(t));
+        })).doOnError(this::onAdmissionError);
+        Duration timeout = route.timeout();
+        return timeout != null ? response.timeout(timeout.toNanos(), TimeUnit.NANOSECONDS) : response;
+    }
+
+    /**
+     * Forward a request and return the response body. Bitcoin Core returns JSON-RPC errors with
+     * non-2xx HTTP status codes, so those bodies are returned (rather than signalled as errors) as well.
+     *
+     * @param body request body (a request object, a {@link ScannedRequest} or a batch)
+     * @return A Single of the response body
+     */
+    public Single<byte[]> retrieve(Object body) {
+        return send(body, false).map(UpstreamResponse::body);
+    }
+
+    /**
+     * Forward a request and return the response body with its HTTP status, which passthrough responses keep
+     * (Bitcoin Core answers JSON-RPC 1.0 errors with 500, or 404 for an unknown method.)
+     *
+     * @param body request body (a request object, a {@link ScannedRequest} or a batch)
+     * @return A Single of the response
+     */
+    public Single<UpstreamResponse> retrieveResponse(Object body) {
+        return send(body, false);
+    }
+
+    /**
+     * Forward a request to the primary server and return the response body, for requests about the chain
+     * tips it publishes (which a lagging read backend may not have yet.)
+     *
+     * @param body request body (a request object, a {@link ScannedRequest} or a batch)
+     * @return A Single of the response body
+     */
+    public Single<byte[]> retrieveFromPrimary(Object body) {
+        return send(body, true).map(UpstreamResponse::body);
+    }
+
+    private Single<UpstreamResponse> send(Object body, boolean primaryOnly) {
+        MethodRoute route = routeOf(body);
+        Single<UpstreamResponse> response = admissionController.admit(route.costClass(), Single.defer(() -> {
+            UpstreamBackend backend = pool.select(primaryOnly || route.primaryOnly());
+            return send(backend, body)
+                    .onErrorResumeNext(t -> isRetryable(t, backend)
+                            ? send(pool.primary(), body)
+                            : Single.error(t));
+        })).doOnError(this::onAdmissionError);
+        Duration timeout = route.timeout();
+        return timeout != null ? response.timeout(timeout.toNanos(), TimeUnit.NANOSECONDS) : response;
+    }
+
+    /**
+     * Call a method on the remote server and return the response, serialized minus its {@code id}.
+     *
+     * @param method JSON-RPC method
+     * @param params JSON-RPC params (may be {@code null})
+     * @return A response that can be completed with the caller's {@code id}
+     */
+    public Single<SerializedRpcResponse> call(String method, List<Object> params) {
+        return send(request(method, params), false)
+                .map(r -> SerializedRpcResponse.fromUpstream(mapper, r.body(), UPSTREAM_ID).withStatus(r.status()));
+    }
+
+    private Flowable<MutableHttpResponse<?>> exchange(UpstreamBackend backend, Object body) {
+        return Flowable.defer(() -> {
+            long start = backend.begin();
+            return Flowable.fromPublisher(proxyClient.proxy(post(backend, body)))
+                    .doOnNext(r -> backend.recordLatency(start))
+                    .doOnError(t -> onError(backend, t))
+                    .doFinally(backend::end);
+        });
+    }
+
+    private Single<UpstreamResponse> send(UpstreamBackend backend, Object body) {
+        return Single.defer(() -> {
+            long start = backend.begin();
+            return Single.fromPublisher(client.exchange(post(backend, body), bytesArgument, bytesArgument))
+                    .map(r -> new UpstreamResponse(r.code(), r.getBody().orElse(new byte[0])))
+                    .onErrorResumeNext(t -> (t instanceof HttpClientResponseException e && e.getResponse().getBody(byte[].class).isPresent())
+                            ? Single.just(new UpstreamResponse(e.code(), e.getResponse().getBody(byte[].class).get()))
+                            : Single.error(t))
+                    .doOnSuccess(r -> backend.recordLatency(start))
+                    .doOnError(t -> onError(backend, t))
+                    .doFinally(backend::end);
+        });
+    }
+
+    private void checkHeights() {
+        for (UpstreamBackend backend : pool.backends()) {
+            send(backend, request("getblockcount", List.of()))
+                    .map(r -> mapper.readTree(r.body()).path("result"))
+                    .subscribe(result -> {
+                        if (result.canConvertToLong()) {
+                            backend.recordHeight(result.asLong());
+                        }
+                    }, t -> log.warn("Health check of {} failed: {}", backend, t.toString()));
+        }
+    }
+
+    // An HTTP error response means the server is up, anything else (e.g. connection refused) marks it unhealthy
+    private void onError(UpstreamBackend backend, Throwable t) {
+        ProxyMetrics.UpstreamErrors errors = errorCounters.get(backend);
+        if (t instanceof HttpClientResponseException) {
+            errors.http().increment();
+        } else {
+            errors.transport().increment();
+            log.warn("{} failed: {}", backend, t.toString());
+            backend.markFailed(failureCooldownNanos);
+        }
+    }
+
+    private void onAdmissionError(Throwable t) {
+        if (t instanceof AdmissionRejectedException e) {
+            metrics.rejected(e.getCostClass());
+        }
+    }
+
+    private boolean isRetryable(Throwable t, UpstreamBackend backend) {
+        return !(t instanceof HttpClientResponseException) && backend != pool.primary();
+    }
+
+    /**
+     * @return the route of {@code body}. For a batch, the highest cost class of its elements and
+     * primary-only if any element is (timeouts don't apply to batches.)
+     */
+    private MethodRoute routeOf(Object body) {
+        if (body instanceof List<?> batch) {
+            CostClass max = CostClass.CHEAP;
+            boolean primaryOnly = false;
+            for (Object element : batch) {
+                MethodRoute route = routeOf(element);
+                max = route.costClass().compareTo(max) > 0 ? route.costClass() : max;
+                primaryOnly |= route.primaryOnly();
+            }
+            return new MethodRoute(MethodRoute.Handler.FORWARD, false, max, primaryOnly, null, null, null);
+        }
+        return router.upstreamRoute(methodOf(body));
+    }
+
+    private static String methodOf(Object body) {
+        if (body instanceof JsonRpcRequest request) {
+            return request.getMethod();
+        } else if (body instanceof ScannedRequest request) {
+            return request.method();
+        } else if (body instanceof Map<?, ?> map && map.get("method") instanceof String method) {
+            return method;
+        }
+        return null;
+    }
+
+    private static Map<String, Object> request(String method, List<Object> params) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("jsonrpc", "1.0");
+        request.put("id", UPSTREAM_ID);
+        request.put("method", method);
+        request.put("params", params != null ? params : List.of());
+        return request;
+    }
+
+    private static MutableHttpRequest<Object> post(UpstreamBackend backend, Object body) {
+        // A scanned request is forwarded as its original bytes
+        Object payload = (body instanceof ScannedRequest request) ? request.body() : body;
+        return HttpRequest.POST(backend.uri(), payload)
+                .contentType(MediaType.APPLICATION_JSON_TYPE)
+                .basicAuth(backend.username(), backend.password());
+    }
+
+    /**
+     * A response from an upstream server
+     *
+     * @param status HTTP status code
+     * @param body response body
+     */
+    public record UpstreamResponse(int status, byte[] body) {}
+}
@@ -0,0 +1,66 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.consensusj.bitcoin.json.pojo.ChainTip;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
+import org.consensusj.bitcoin.rx.ChainTipPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fans out new chain tips to WebSocket clients, so they don't have to poll {@code getbestblockhash}. There is a single
+ * subscription to the {@link ChainTipPublisher} (which uses ZeroMQ notifications when {@code use-zmq} is set) and each
+ * tip is serialized once for all clients.
+ */
+@Singleton
+@Requires(property = "btcproxyd.push.enabled", notEquals = "false")
+public class ChainTipGateway {
+    private static final Logger log = LoggerFactory.getLogger(ChainTipGateway.class);
+    private final ChainTipPublisher chainTipPublisher;
+    private final ObjectMapper mapper;
+    private final ProxyMetrics metrics;
+    private final PushTopic topic;
+    private Disposable chainTipSubscription;
+
+    public ChainTipGateway(ChainTipPublisher chainTipPublisher, ObjectMapper jsonMapper, ProxyMetrics metrics,
+                           PushConfiguration config) {
+        this.chainTipPublisher = chainTipPublisher;
+        this.mapper = jsonMapper;
+        this.metrics = metrics;
+        topic = new PushTopic("chaintips", config, metrics);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (chainTipSubscription == null) {
+            chainTipSubscription = Flowable.fromPublisher(chainTipPublisher)
+                    .distinctUntilChanged(ChainTip::getHash)
+                    .subscribe(this::onNewBlock, t -> log.error("chain tip subscription failed", t));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (chainTipSubscription != null) {
+            chainTipSubscription.dispose();
+            chainTipSubscription = null;
+        }
+    }
+
+    public PushTopic topic() {
+        return topic;
+    }
+
+    private void onNewBlock(ChainTip tip) throws JsonProcessingException {
+        long start = System.nanoTime();
+        topic.publish(mapper.writeValueAsString(tip));
+        metrics.chainTipHandled("push", tip, start);
+    }
+}
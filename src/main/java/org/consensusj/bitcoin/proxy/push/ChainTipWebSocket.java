@@ -0,0 +1,39 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.OnClose;
+import io.micronaut.websocket.annotation.OnMessage;
+import io.micronaut.websocket.annotation.OnOpen;
+import io.micronaut.websocket.annotation.ServerWebSocket;
+
+/**
+ * WebSocket endpoint that sends the current chain tip on connect and each new tip after that, as JSON
+ * (e.g. {@code {"height":800000,"hash":"...","branchlen":0,"status":"active"}}). Messages from the client are ignored.
+ */
+@ServerWebSocket("/ws/chaintips")
+@Requires(beans = ChainTipGateway.class)
+public class ChainTipWebSocket {
+    private final PushTopic topic;
+
+    public ChainTipWebSocket(ChainTipGateway gateway) {
+        topic = gateway.topic();
+    }
+
+    @OnOpen
+    public void onOpen(WebSocketSession session) {
+        if (!topic.subscribe(session.getId(), new WebSocketSessionSink(session))) {
+            session.close(CloseReason.TRY_AGAIN_LATER);
+        }
+    }
+
+    @OnMessage
+    public void onMessage(String message, WebSocketSession session) {
+    }
+
+    @OnClose
+    public void onClose(WebSocketSession session) {
+        topic.unsubscribe(session.getId());
+    }
+}
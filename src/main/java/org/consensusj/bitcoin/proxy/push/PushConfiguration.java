@@ -0,0 +1,45 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Configuration for WebSocket push of chain events to clients.
+ */
+@ConfigurationProperties("btcproxyd.push")
+public interface PushConfiguration {
+    /**
+     * @return {@code true} if the WebSocket endpoints are enabled
+     */
+    @Bindable(defaultValue = "true")
+    boolean getEnabled();
+
+    /**
+     * @return messages queued for a subscriber (in addition to the one being sent) before it is disconnected, with
+     * the {@link OverflowPolicy#DISCONNECT} policy
+     */
+    @Bindable(defaultValue = "16")
+    int getBufferSize();
+
+    /**
+     * @return maximum subscribers per topic, further connections are closed with "try again later"
+     */
+    @Bindable(defaultValue = "10000")
+    int getMaxSubscribers();
+
+    /**
+     * @return what to do with a subscriber that doesn't keep up
+     */
+    @Bindable(defaultValue = "CONFLATE")
+    OverflowPolicy getOverflow();
+
+    /**
+     * What to do with a subscriber that doesn't keep up
+     */
+    enum OverflowPolicy {
+        /** Queue only the latest message (fine when each message supersedes the previous one, as chain tips do) */
+        CONFLATE,
+        /** Close the subscriber's connection when its buffer is full */
+        DISCONNECT
+    }
+}
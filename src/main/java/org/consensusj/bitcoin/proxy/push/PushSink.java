@@ -0,0 +1,23 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The connection to one subscriber of a {@link PushTopic} (e.g. a WebSocket session)
+ */
+public interface PushSink {
+    /**
+     * Send a message. {@link PushTopic} doesn't send another message to the sink until the returned stage completes.
+     *
+     * @param message a JSON message
+     * @return completes when the message has been written, exceptionally if the connection has failed
+     */
+    CompletionStage<?> send(String message);
+
+    /**
+     * Close the connection because the subscriber isn't keeping up
+     *
+     * @param reason reason to give the client
+     */
+    void close(String reason);
+}
@@ -0,0 +1,159 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import io.micrometer.core.instrument.Counter;
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multicasts messages from one source to many subscribers. Publishing never blocks on a subscriber: each
+ * subscriber has at most one send in flight, and a subscriber that is behind is either conflated (only the latest
+ * message is queued, replacing any older one) or has a bounded buffer and is disconnected when it is full, so a slow
+ * client can't stall the others. A new subscriber is sent the latest message first.
+ */
+public final class PushTopic {
+    private static final Logger log = LoggerFactory.getLogger(PushTopic.class);
+    private final String name;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final PushConfiguration.OverflowPolicy overflow;
+    private final ConcurrentHashMap<Object, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Counter conflated;
+    private final Counter disconnected;
+    // Guarded by this
+    private String latest = null;
+
+    /**
+     * @param name topic name, used in logs and metrics
+     * @param config buffer size, subscriber limit and overflow policy
+     * @param metrics metrics
+     */
+    public PushTopic(String name, PushConfiguration config, ProxyMetrics metrics) {
+        this.name = name;
+        this.bufferSize = Math.max(config.getBufferSize(), 1);
+        this.maxSubscribers = config.getMaxSubscribers();
+        this.overflow = config.getOverflow();
+        metrics.pushSubscribers(name, subscribers, ConcurrentHashMap::size);
+        conflated = metrics.pushDropped(name, "conflated");
+        disconnected = metrics.pushDropped(name, "disconnected");
+    }
+
+    /**
+     * @param key identifies the subscriber (e.g. a session id) for {@link #unsubscribe(Object)}
+     * @param sink connection to the subscriber
+     * @return {@code false} if the topic already has the maximum number of subscribers
+     */
+    public synchronized boolean subscribe(Object key, PushSink sink) {
+        if (subscribers.size() >= maxSubscribers) {
+            log.warn("{}: rejecting subscriber, limit of {} reached", name, maxSubscribers);
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(key, sink);
+        subscribers.put(key, subscriber);
+        if (latest != null) {
+            subscriber.offer(latest);
+        }
+        return true;
+    }
+
+    public void unsubscribe(Object key) {
+        subscribers.remove(key);
+    }
+
+    /**
+     * @param message JSON message for all subscribers
+     */
+    public void publish(String message) {
+        List<Subscriber> targets;
+        synchronized (this) {
+            latest = message;
+            targets = List.copyOf(subscribers.values());
+        }
+        // Sent outside the lock, so subscribe() and other publishers don't wait on the subscribers
+        targets.forEach(s -> s.offer(message));
+    }
+
+    /**
+     * Forget the latest message, e.g. when the source is disconnected, so new subscribers aren't sent a stale one
+     */
+    public synchronized void clearLatest() {
+        latest = null;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private final class Subscriber {
+        private final Object key;
+        private final PushSink sink;
+        // All guarded by this
+        private final ArrayDeque<String> queue = new ArrayDeque<>();
+        private boolean sending = false;
+        private boolean closed = false;
+
+        Subscriber(Object key, PushSink sink) {
+            this.key = key;
+            this.sink = sink;
+        }
+
+        void offer(String message) {
+            boolean disconnect = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (!sending) {
+                    sending = true;
+                } else if (overflow == PushConfiguration.OverflowPolicy.CONFLATE) {
+                    // The message supersedes any queued one
+                    if (queue.pollFirst() != null) {
+                        conflated.increment();
+                    }
+                    queue.addLast(message);
+                    return;
+                } else if (queue.size() < bufferSize) {
+                    queue.addLast(message);
+                    return;
+                } else {
+                    closed = true;
+                    disconnect = true;
+                }
+            }
+            if (disconnect) {
+                log.info("{}: disconnecting slow subscriber {}", name, key);
+                disconnected.increment();
+                subscribers.remove(key, this);
+                sink.close("Slow consumer");
+            } else {
+                send(message);
+            }
+        }
+
+        private void send(String message) {
+            sink.send(message).whenComplete((r, t) -> {
+                if (t != null) {
+                    log.debug("{}: send to {} failed", name, key, t);
+                    synchronized (this) {
+                        closed = true;
+                    }
+                    subscribers.remove(key, this);
+                    return;
+                }
+                String next;
+                synchronized (this) {
+                    next = queue.pollFirst();
+                    if (next == null) {
+                        sending = false;
+                        return;
+                    }
+                }
+                send(next);
+            });
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.consensusj.bitcoin.proxy.push;
+
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link PushSink} for a WebSocket session
+ *
+ * @param session a WebSocket session
+ */
+public record WebSocketSessionSink(WebSocketSession session) implements PushSink {
+    @Override
+    public CompletionStage<?> send(String message) {
+        return session.sendAsync(message);
+    }
+
+    @Override
+    public void close(String reason) {
+        session.close(new CloseReason(CloseReason.POLICY_VIOLATION.getCode(), reason));
+    }
+}
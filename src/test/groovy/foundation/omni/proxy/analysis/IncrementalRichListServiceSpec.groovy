@@ -0,0 +1,194 @@
+package foundation.omni.proxy.analysis
+
+import foundation.omni.CurrencyID
+import io.reactivex.rxjava3.core.Single
+import org.bitcoinj.base.BitcoinNetwork
+import org.bitcoinj.base.LegacyAddress
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics
+import spock.lang.Specification
+
+/**
+ * Tests for {@link IncrementalRichListService} against a {@link StubOmniClient}
+ */
+class IncrementalRichListServiceSpec extends Specification {
+    static final CurrencyID id = CurrencyID.of(31)
+    static final String a = address(1), b = address(2), c = address(3), d = address(4), e = address(5)
+    AddressIndex index = new AddressIndex(BitcoinNetwork.TESTNET)
+    StubOmniClient client = new StubOmniClient(100)
+    // Balances on the node, the total tokens are their sum unless set
+    Map<String, BigDecimal> node = [(a): 10.0, (b): 5.0]
+    BigDecimal totalTokens = null
+    IncrementalRichListService service = new IncrementalRichListService(client,
+            { Single.error(new IllegalStateException("not tracked")) } as RichListSnapshotSource,
+            index, [id], 3, new ProxyMetrics(null))
+
+    void setup() {
+        client.methods.omni_getallbalancesforid = { property ->
+            node.collect { address, balance -> [address: address, balance: balance.toPlainString(), reserved: "0"] }
+        }
+        client.methods.omni_getbalance = { address, property ->
+            [balance: (node[address] ?: 0.0).toPlainString(), reserved: "0"]
+        }
+        client.methods.omni_getproperty = { property ->
+            [divisible: true, totaltokens: (totalTokens ?: node.values().sum()).toPlainString()]
+        }
+    }
+
+    void "a block only re-reads the balances of the addresses its transactions touch"() {
+        given:
+        service.snapshot(id).blockingGet()
+
+        when:
+        send(a, c, 2.0)
+        client.addBlock([[valid: true, type_int: 0, sendingaddress: a, referenceaddress: c, propertyid: 31]])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        snapshot.blockHeight() == 101
+        snapshot.blockHash() == Sha256Hash.wrap(client.hashes[101])
+        fullFetches() == 1
+        client.calls.count { it == "omni_getbalance" } == 2
+    }
+
+    void "invalid transactions are skipped"() {
+        given:
+        service.snapshot(id).blockingGet()
+
+        when:
+        client.addBlock([[valid: false, type_int: 3, sendingaddress: a, propertyid: 31]])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        fullFetches() == 1
+        !client.calls.contains("omni_getbalance")
+    }
+
+    void "a reorg re-reads the addresses touched by the disconnected blocks"() {
+        given:
+        service.snapshot(id).blockingGet()
+        send(a, c, 2.0)
+        client.addBlock([[valid: true, type_int: 0, sendingaddress: a, referenceaddress: c, propertyid: 31]])
+        service.snapshot(id).blockingGet()
+
+        when: "the send is reorganized out and replaced by another"
+        send(c, a, 2.0)
+        send(b, d, 1.0)
+        client.reorg(100, [[[valid: true, type_int: 0, sendingaddress: b, referenceaddress: d, propertyid: 31]], []])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        !snapshot.page(0, 10).entries()*.address*.toString().contains(c)
+        snapshot.blockHeight() == 102
+        fullFetches() == 1
+    }
+
+    void "a reorg deeper than the journal fetches all holders"() {
+        given:
+        service.snapshot(id).blockingGet()
+        4.times { client.addBlock() }
+        service.snapshot(id).blockingGet()
+
+        when:
+        send(a, e, 1.0)
+        client.reorg(100, [[], [], [], [], []])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        snapshot.blockHeight() == 105
+        fullFetches() == 2
+    }
+
+    void "transactions that can change uninvolved balances fetch all holders"() {
+        given:
+        service.snapshot(id).blockingGet()
+
+        when: "the node's balances change beyond the transaction's addresses"
+        send(a, d, 1.0)
+        send(a, e, 1.0)
+        client.addBlock([tx])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        fullFetches() == 2
+
+        where:
+        tx << [
+                [valid: true, type_int: 3, sendingaddress: a, propertyid: 31],                  // Send-to-owners
+                [valid: true, type_int: 25, sendingaddress: a, propertyidforsale: 31, propertyiddesired: 1],
+                [valid: true, type_int: 65534, sendingaddress: a]                               // Unknown, no property
+        ]
+    }
+
+    void "holdings that don't add up to the total tokens are fetched in full"() {
+        given:
+        service.snapshot(id).blockingGet()
+
+        when: "an address the block's transactions don't touch changes"
+        node[e] = 1.0
+        send(a, c, 2.0)
+        client.addBlock([[valid: true, type_int: 0, sendingaddress: a, referenceaddress: c, propertyid: 31]])
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        snapshot.page(0, 10).holders() == 4
+        fullFetches() == 2
+    }
+
+    void "a failure partway through an update fetches all holders on the next update"() {
+        given:
+        service.snapshot(id).blockingGet()
+        Closure getBalance = client.methods.omni_getbalance
+        client.methods.omni_getbalance = { address, property ->
+            if (address == c) {
+                throw new IOException("connection reset")
+            }
+            getBalance(address, property)
+        }
+
+        when:
+        send(a, c, 2.0)
+        client.addBlock([[valid: true, type_int: 0, sendingaddress: a, referenceaddress: c, propertyid: 31]])
+        service.snapshot(id).blockingGet()
+
+        then: "blockingGet wraps the checked exception"
+        RuntimeException failure = thrown()
+        failure.cause instanceof IOException
+
+        when:
+        client.methods.omni_getbalance = getBalance
+        var snapshot = service.snapshot(id).blockingGet()
+
+        then:
+        matchesNode(snapshot)
+        snapshot.blockHeight() == 101
+        fullFetches() == 2
+    }
+
+    private void send(String from, String to, BigDecimal amount) {
+        node[from] = (node[from] ?: 0.0) - amount
+        node[to] = (node[to] ?: 0.0) + amount
+        node.removeAll { it.value.signum() == 0 }
+    }
+
+    private boolean matchesNode(RichListSnapshot snapshot) {
+        var expected = RichListSnapshot.of(id, true, snapshot.blockHeight(), snapshot.blockHash(), index, node)
+        return snapshot.size() == node.size() && snapshot.sameTop(expected, node.size())
+    }
+
+    private int fullFetches() {
+        return client.calls.count { it == "omni_getallbalancesforid" }
+    }
+
+    private static String address(int n) {
+        byte[] hash = new byte[20]
+        Arrays.fill(hash, (byte) n)
+        return LegacyAddress.fromPubKeyHash(BitcoinNetwork.TESTNET, hash).toString()
+    }
+}
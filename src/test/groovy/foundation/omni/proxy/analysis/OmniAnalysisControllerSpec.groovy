@@ -0,0 +1,27 @@
+package foundation.omni.proxy.analysis
+
+import spock.lang.Specification
+
+/**
+ * Tests for {@link OmniAnalysisController}
+ */
+class OmniAnalysisControllerSpec extends Specification {
+    void "gzip is used only if Accept-Encoding accepts it with a non-zero quality"() {
+        expect:
+        OmniAnalysisController.acceptsGzip(acceptEncoding) == gzip
+
+        where:
+        acceptEncoding              || gzip
+        null                        || false
+        'gzip'                      || true
+        'deflate, gzip;q=0.8'       || true
+        'GZIP; Q=1'                 || true
+        'gzip;q=0'                  || false
+        'gzip;q=0.000'              || false
+        'br, *;q=0.1'               || true
+        'gzip;q=0, *'               || false
+        '*;q=0'                     || false
+        'deflate, br'               || false
+        'identity'                  || false
+    }
+}
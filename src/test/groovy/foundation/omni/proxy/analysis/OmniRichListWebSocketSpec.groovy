@@ -0,0 +1,108 @@
+package foundation.omni.proxy.analysis
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import foundation.omni.CurrencyID
+import io.micronaut.websocket.CloseReason
+import io.micronaut.websocket.WebSocketSession
+import io.reactivex.rxjava3.processors.PublishProcessor
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics
+import org.consensusj.bitcoin.proxy.push.PushConfiguration
+import org.reactivestreams.Publisher
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Tests for {@link OmniRichListWebSocket} with stub sessions
+ */
+class OmniRichListWebSocketSpec extends Specification {
+    PublishProcessor<String> updates = PublishProcessor.create()
+    List<CurrencyID> subscribed = []
+    CachedRichListService richListService = new CachedRichListService(null, null, [CurrencyID.of(31)], new ProxyMetrics(null)) {
+        @Override
+        Publisher richListUpdates(CurrencyID id, int i) {
+            subscribed << id
+            return updates
+        }
+    }
+    PushConfiguration config = [getEnabled: { true }, getBufferSize: { 16 }, getMaxSubscribers: { 10 },
+                                getOverflow: { PushConfiguration.OverflowPolicy.CONFLATE }] as PushConfiguration
+    OmniRichListWebSocket endpoint = new OmniRichListWebSocket(richListService, new ObjectMapper(), new ProxyMetrics(null), config)
+
+    void "untracked and invalid currencies are refused"() {
+        given:
+        var session = new StubSession("a")
+
+        when:
+        endpoint.onOpen(currencyId, session.session)
+        endpoint.onClose(currencyId, session.session)
+
+        then:
+        session.closeReason.code == CloseReason.POLICY_VIOLATION.code
+        subscribed.isEmpty()
+
+        where:
+        currencyId << ["1", "abc", "-1", "99999999999"]
+    }
+
+    void "clients of a currency share one subscription to the updates"() {
+        given:
+        var a = new StubSession("a")
+        var b = new StubSession("b")
+
+        when:
+        endpoint.onOpen("31", a.session)
+        endpoint.onOpen("31", b.session)
+        updates.onNext("list")
+
+        then:
+        subscribed == [CurrencyID.of(31)]
+        a.sent == ['"list"']
+        b.sent == ['"list"']
+        a.closeReason == null
+    }
+
+    void "the subscription is disposed when the last client leaves"() {
+        given:
+        var a = new StubSession("a")
+        var b = new StubSession("b")
+        endpoint.onOpen("31", a.session)
+        endpoint.onOpen("31", b.session)
+        updates.onNext("old")
+
+        when:
+        endpoint.onClose("31", a.session)
+
+        then:
+        updates.hasSubscribers()
+
+        when:
+        endpoint.onClose("31", b.session)
+
+        then:
+        !updates.hasSubscribers()
+
+        when: "a new client resubscribes and isn't sent the stale list"
+        var c = new StubSession("c")
+        endpoint.onOpen("31", c.session)
+
+        then:
+        updates.hasSubscribers()
+        subscribed.size() == 2
+        c.sent.isEmpty()
+    }
+
+    static class StubSession {
+        final List<String> sent = []
+        CloseReason closeReason = null
+        final WebSocketSession session
+
+        StubSession(String id) {
+            session = [
+                    getId    : { id },
+                    sendAsync: { message -> sent << message; CompletableFuture.completedFuture(message) },
+                    close    : { CloseReason reason -> closeReason = reason }
+            ] as WebSocketSession
+        }
+    }
+}
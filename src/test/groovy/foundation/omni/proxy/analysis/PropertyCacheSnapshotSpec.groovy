@@ -0,0 +1,109 @@
+package foundation.omni.proxy.analysis
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import foundation.omni.CurrencyID
+import foundation.omni.json.conversion.OmniServerModule
+import foundation.omni.json.pojo.OmniPropertyInfo
+import foundation.omni.json.pojo.SmartPropertyListInfo
+import org.bitcoinj.base.BitcoinNetwork
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.bitcoin.json.conversion.RpcServerModule
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Tests for {@link PropertyCacheSnapshot} and loading the properties changed since a snapshot
+ */
+class PropertyCacheSnapshotSpec extends Specification {
+    static final Sha256Hash hash = Sha256Hash.wrap("00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054")
+    ObjectMapper mapper = new ObjectMapper().registerModule(new RpcServerModule()).registerModule(new OmniServerModule())
+
+    @TempDir
+    Path dir
+
+    void "a snapshot is read back as written"() {
+        given:
+        Path file = dir.resolve("properties.snapshot")
+        var properties = [property(3), property(31), property(2147483651L)]
+
+        when:
+        PropertyCacheSnapshot.write(file, mapper, 800_000, hash, properties)
+        var contents = PropertyCacheSnapshot.read(file, mapper)
+
+        then:
+        contents.height() == 800_000
+        contents.hash() == hash
+        contents.properties()*.propertyid == properties*.propertyid
+        contents.properties()*.name == properties*.name
+        !Files.exists(dir.resolve("properties.snapshot.tmp"))
+    }
+
+    void "a truncated snapshot is rejected"() {
+        given:
+        Path file = dir.resolve("properties.snapshot")
+        PropertyCacheSnapshot.write(file, mapper, 800_000, hash, [property(3), property(31)])
+        byte[] bytes = Files.readAllBytes(file)
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10))
+
+        when:
+        PropertyCacheSnapshot.read(file, mapper)
+
+        then:
+        IOException e = thrown()
+        e.message.startsWith("Truncated")
+    }
+
+    void "a file that isn't a snapshot is rejected"() {
+        given:
+        Path file = dir.resolve("properties.snapshot")
+        Files.write(file, ByteBuffer.allocate(64).putInt(0x12345678).putInt(1).array())
+
+        when:
+        PropertyCacheSnapshot.read(file, mapper)
+
+        then:
+        IOException e = thrown()
+        e.message.startsWith("Not a property cache snapshot")
+    }
+
+    void "only properties changed by the blocks since a snapshot are reloaded"() {
+        given:
+        var client = new StubOmniClient(10)
+        var contents = new PropertyCacheSnapshot.Contents(10, Sha256Hash.wrap(client.hashes[10]), (1..20).collect { property(it) })
+        client.addBlock([[valid: true, type_int: 55, propertyid: 5]])
+        client.addBlock([[valid: true, type_int: 0, propertyid: 6], [valid: true, type_int: 70, propertyid: 7]])
+
+        expect:
+        OmniPropertyListService.changedSince(client, contents) == [CurrencyID.of(5), CurrencyID.of(7)] as Set
+    }
+
+    void "every property is reloaded if the snapshot's block is not in the best chain"() {
+        given:
+        var client = new StubOmniClient(10)
+        var contents = new PropertyCacheSnapshot.Contents(10, Sha256Hash.wrap(client.hashes[10]), (1..20).collect { property(it) })
+        client.reorg(9, [[], [[valid: true, type_int: 55, propertyid: 5]]])
+
+        expect:
+        OmniPropertyListService.changedSince(client, contents) == (1..20).collect { CurrencyID.of(it) } as Set
+    }
+
+    void "every property is reloaded if scanning the blocks would cost more"() {
+        given:
+        var client = new StubOmniClient(10)
+        var contents = new PropertyCacheSnapshot.Contents(10, Sha256Hash.wrap(client.hashes[10]), (1..3).collect { property(it) })
+        5.times { client.addBlock() }
+
+        expect:
+        OmniPropertyListService.changedSince(client, contents) == (1..3).collect { CurrencyID.of(it) } as Set
+        !client.calls.contains("omni_listblocktransactions")
+    }
+
+    static OmniPropertyInfo property(long id) {
+        return new OmniPropertyInfo(BitcoinNetwork.REGTEST,
+                new SmartPropertyListInfo(CurrencyID.of(id), "Property " + id, "", "", "", "", true))
+    }
+}
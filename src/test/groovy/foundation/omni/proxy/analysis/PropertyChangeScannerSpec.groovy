@@ -0,0 +1,117 @@
+package foundation.omni.proxy.analysis
+
+import foundation.omni.CurrencyID
+import spock.lang.Specification
+
+/**
+ * Tests for {@link PropertyChangeScanner} against a {@link StubOmniClient}
+ */
+class PropertyChangeScannerSpec extends Specification {
+    StubOmniClient client = new StubOmniClient(100)
+    PropertyChangeScanner scanner = new PropertyChangeScanner(client, 3)
+
+    void "transactions that change a property report it"() {
+        given:
+        scanner.update()
+
+        when:
+        client.addBlock([tx])
+
+        then:
+        scanner.update() == Optional.of([CurrencyID.of(7)] as Set)
+
+        where:
+        tx << PropertyChangeScanner.propertyTxTypes.collect { [valid: true, type_int: it, propertyid: 7] }
+    }
+
+    void "a crowdsale purchase reports the crowdsale's property"() {
+        given:
+        scanner.update()
+
+        when:
+        client.addBlock([[valid: true, type_int: 0, propertyid: 1, purchasedpropertyid: 7]])
+
+        then:
+        scanner.update() == Optional.of([CurrencyID.of(7)] as Set)
+    }
+
+    void "sends and invalid transactions don't report properties"() {
+        given:
+        scanner.update()
+
+        when:
+        client.addBlock([[valid: true, type_int: 0, propertyid: 7],
+                         [valid: false, type_int: 55, propertyid: 8],
+                         [valid: true, type_int: 3, propertyid: 9]])
+
+        then:
+        scanner.update() == Optional.of([] as Set)
+    }
+
+    void "the first call and a gap longer than the journal are unknown changes"() {
+        expect:
+        scanner.update().isEmpty()
+
+        when:
+        4.times { client.addBlock([[valid: true, type_int: 55, propertyid: 7]]) }
+
+        then:
+        scanner.update().isEmpty()
+        !client.calls.contains("omni_listblocktransactions")
+
+        when:
+        client.addBlock([[valid: true, type_int: 56, propertyid: 8]])
+
+        then:
+        scanner.update() == Optional.of([CurrencyID.of(8)] as Set)
+    }
+
+    void "a reorg reports the properties of the disconnected and the new blocks"() {
+        given:
+        scanner.update()
+        client.addBlock([[valid: true, type_int: 55, propertyid: 7]])
+        client.addBlock([[valid: true, type_int: 70, propertyid: 8]])
+        scanner.update()
+
+        when:
+        client.reorg(101, [[[valid: true, type_int: 56, propertyid: 9]], []])
+
+        then:
+        scanner.update() == Optional.of([CurrencyID.of(8), CurrencyID.of(9)] as Set)
+    }
+
+    void "a failure partway through a reorg is an unknown change on the next call"() {
+        given:
+        scanner.update()
+        client.addBlock([[valid: true, type_int: 55, propertyid: 7]])
+        client.addBlock([[valid: true, type_int: 70, propertyid: 8]])
+        scanner.update()
+        client.methods.omni_gettransaction = { txid -> throw new IOException("connection reset") }
+
+        when:
+        client.reorg(101, [[[valid: true, type_int: 56, propertyid: 9]], []])
+        scanner.update()
+
+        then:
+        thrown(IOException)
+
+        when:
+        client.methods.remove("omni_gettransaction")
+
+        then:
+        scanner.update().isEmpty()
+    }
+
+    void "a reorg deeper than the journal is an unknown change"() {
+        given:
+        scanner.update()
+        3.times { client.addBlock() }
+        scanner.update()
+
+        when:
+        client.reorg(100, [[], [], [], []])
+
+        then:
+        scanner.update().isEmpty()
+    }
+}
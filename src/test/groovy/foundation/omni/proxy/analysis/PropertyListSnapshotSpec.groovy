@@ -0,0 +1,75 @@
+package foundation.omni.proxy.analysis
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import foundation.omni.CurrencyID
+import foundation.omni.json.conversion.OmniServerModule
+import foundation.omni.json.pojo.OmniPropertyInfo
+import foundation.omni.json.pojo.SmartPropertyListInfo
+import org.bitcoinj.base.BitcoinNetwork
+import org.consensusj.bitcoin.json.conversion.RpcServerModule
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.zip.GZIPInputStream
+
+import static foundation.omni.proxy.analysis.PropertyCacheSnapshotSpec.property
+
+/**
+ * Tests for {@link PropertyListSnapshot}
+ */
+class PropertyListSnapshotSpec extends Specification {
+    ObjectMapper mapper = new ObjectMapper().registerModule(new RpcServerModule()).registerModule(new OmniServerModule())
+
+    void "properties are sorted by ID"() {
+        when:
+        var snapshot = PropertyListSnapshot.of(mapper, 1, [property(31), property(2147483651L), property(3)].stream(), null)
+
+        then:
+        mapper.readTree(snapshot.json())*.get("propertyid")*.asLong() == [3, 31, 2147483651L]
+    }
+
+    void "the ETag only changes when the content does"() {
+        given:
+        var first = PropertyListSnapshot.of(mapper, 1, [property(3), property(31)].stream(), null)
+
+        when: "the same properties in another order"
+        var same = PropertyListSnapshot.of(mapper, 2, [property(31), property(3)].stream(), first)
+
+        then: "the previous serialization is reused"
+        same.modCount() == 2
+        same.etag() == first.etag()
+        same.json().is(first.json())
+        same.gzipped().is(first.gzipped())
+
+        when:
+        var changed = PropertyListSnapshot.of(mapper, 3, [property(3), renamed(31)].stream(), same)
+
+        then:
+        changed.etag() != first.etag()
+        changed.etag() ==~ /"[0-9a-f]{32}"/
+    }
+
+    void "the gzipped list decompresses to the JSON array"() {
+        when:
+        var snapshot = PropertyListSnapshot.of(mapper, 1, (1..50).collect { property(it) }.stream(), null)
+
+        then:
+        new GZIPInputStream(new ByteArrayInputStream(snapshot.gzipped())).readAllBytes() == snapshot.json()
+        snapshot.gzipped().length < snapshot.json().length
+    }
+
+    void "the RPC response has the list as its result"() {
+        when:
+        var snapshot = PropertyListSnapshot.of(mapper, 1, [property(3)].stream(), null)
+        String json = new String(snapshot.json(), StandardCharsets.UTF_8)
+
+        then:
+        !snapshot.rpcResponse().isError()
+        new String(snapshot.rpcResponse().withId("a"), StandardCharsets.UTF_8) == '{"result":' + json + ',"error":null,"id":"a"}'
+    }
+
+    static OmniPropertyInfo renamed(long id) {
+        return new OmniPropertyInfo(BitcoinNetwork.REGTEST,
+                new SmartPropertyListInfo(CurrencyID.of(id), "Renamed " + id, "", "", "", "", true))
+    }
+}
@@ -0,0 +1,123 @@
+package foundation.omni.proxy.analysis
+
+import foundation.omni.CurrencyID
+import foundation.omni.json.pojo.OmniPropertyInfo
+import foundation.omni.json.pojo.SmartPropertyListInfo
+import io.reactivex.rxjava3.core.Maybe
+import org.bitcoinj.base.BitcoinNetwork
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for {@link PropertyWarmup} concurrency control, with a fake fetch function. The fetched properties are
+ * placeholders themselves, so every wave has the same properties to load.
+ */
+class PropertyWarmupSpec extends Specification {
+    OmniPropertyListCache cache = new OmniPropertyListCache(BitcoinNetwork.REGTEST)
+    List<CurrencyID> fetched = new CopyOnWriteArrayList<>()
+
+    void "concurrency grows while requests succeed"() {
+        given:
+        placeholders(3..200)
+        var warmup = warmup { id -> loaded(id) }
+
+        when:
+        3.times { warmup.loadWave().blockingGet() }
+
+        then:
+        warmup.progress().concurrency() > 4
+        warmup.progress().loaded() > 0
+    }
+
+    void "errors halve the concurrency and pause between waves"() {
+        given:
+        placeholders(3..200)
+        var warmup = warmup { id -> Maybe.error(new IOException("Work queue depth exceeded")) }
+
+        when:
+        long firstDelay = warmup.loadWave().blockingGet()
+
+        then:
+        warmup.progress().concurrency() == 2
+        firstDelay == 250
+
+        when:
+        long secondDelay = warmup.loadWave().blockingGet()
+
+        then:
+        warmup.progress().concurrency() == 1
+        secondDelay == 500
+    }
+
+    void "empty results don't reduce the concurrency"() {
+        given:
+        placeholders(3..200)
+        var warmup = warmup { id -> Maybe.empty() }
+
+        when:
+        long delay = warmup.loadWave().blockingGet()
+
+        then:
+        warmup.progress().concurrency() == 4
+        delay == 0
+    }
+
+    void "properties that failed go to the end of the next wave"() {
+        given:
+        placeholders(3..10)
+        var warmup = warmup { id -> id == CurrencyID.of(3) ? Maybe.empty() : loaded(id) }
+
+        when:
+        warmup.loadWave().blockingGet()
+        fetched.clear()
+        warmup.loadWave().blockingGet()
+
+        then:
+        fetched.last() == CurrencyID.of(3)
+    }
+
+    void "a property that keeps failing is given up on until it is refreshed"() {
+        given:
+        placeholders(3..10)
+        var warmup = warmup { id -> id == CurrencyID.of(5) ? Maybe.empty() : loaded(id) }
+
+        when:
+        6.times { warmup.loadWave().blockingGet() }
+
+        then:
+        fetched.count { it == CurrencyID.of(5) } == 5
+        warmup.progress().failed() == 1
+        warmup.progress().placeholders() == 7
+
+        when:
+        warmup.refresh([CurrencyID.of(5)])
+        warmup.loadWave().blockingGet()
+
+        then:
+        fetched.count { it == CurrencyID.of(5) } == 6
+        warmup.progress().failed() == 0
+    }
+
+    private PropertyWarmup warmup(Closure<Maybe<OmniPropertyInfo>> fetch) {
+        return new PropertyWarmup(cache, { CurrencyID id ->
+            fetched << id
+            return fetch(id)
+        })
+    }
+
+    private void placeholders(IntRange ids) {
+        ids.each { cache.cachePutIfNew(new SmartPropertyListInfo(CurrencyID.of(it), "Property " + it, "", "", "", "", true)) }
+    }
+
+    // A fetch with a steady latency
+    static Maybe<OmniPropertyInfo> loaded(CurrencyID id) {
+        return Maybe.just(property(id)).delay(5, TimeUnit.MILLISECONDS)
+    }
+
+    static OmniPropertyInfo property(CurrencyID id) {
+        return new OmniPropertyInfo(BitcoinNetwork.REGTEST,
+                new SmartPropertyListInfo(id, "Property " + id.getValue(), "", "", "", "", true))
+    }
+}
@@ -0,0 +1,65 @@
+package foundation.omni.proxy.analysis
+
+import foundation.omni.CurrencyID
+import org.bitcoinj.base.BitcoinNetwork
+import org.bitcoinj.base.Sha256Hash
+import spock.lang.Specification
+
+/**
+ * Tests for {@link RichListSnapshot}
+ */
+class RichListSnapshotSpec extends Specification {
+    static final String largest = "mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn"
+    AddressIndex index = new AddressIndex(BitcoinNetwork.TESTNET)
+
+    void "holders are sorted largest first and zero balances are skipped"() {
+        when:
+        var snapshot = snapshot([(largest): 5.0, b: 1.5, c: 0.0, d: 2.25])
+
+        then:
+        snapshot.size() == 3
+        snapshot.page(1, 10).holders() == 3
+        snapshot.page(1, 10).offset() == 1
+        snapshot.page(1, 10).entries().size() == 2
+        snapshot.page(0, 1).entries()[0].address.toString() == largest
+    }
+
+    void "pages beyond the holders are empty"() {
+        when:
+        var page = snapshot([(largest): 5.0]).page(offset, limit)
+
+        then:
+        page.entries().isEmpty()
+        page.offset() == expectedOffset
+
+        where:
+        offset | limit || expectedOffset
+        1      | 10    || 1
+        7      | 10    || 1
+        0      | 0     || 0
+    }
+
+    void "addresses are indexed once across snapshots"() {
+        when:
+        snapshot([(largest): 5.0, b: 1.0])
+        snapshot([(largest): 4.0, c: 1.0])
+
+        then:
+        index.size() == 3
+    }
+
+    void "top lists are compared by holders and amounts"() {
+        given:
+        var a = snapshot([(largest): 5.0, b: 2.0, c: 1.0])
+
+        expect:
+        a.sameTop(snapshot([(largest): 5.0, b: 2.0, c: 1.0]), 2)
+        !a.sameTop(snapshot([(largest): 5.0, b: 2.0, c: 0.5]), 2)    // other balance changed
+        !a.sameTop(snapshot([(largest): 5.0, c: 2.0, b: 1.0]), 2)
+        !a.sameTop(snapshot([(largest): 5.0, b: 2.5, c: 1.0]), 2)
+    }
+
+    private RichListSnapshot snapshot(Map<String, BigDecimal> balances) {
+        return RichListSnapshot.of(CurrencyID.of(3), true, 100, Sha256Hash.ZERO_HASH, index, balances)
+    }
+}
@@ -0,0 +1,79 @@
+package foundation.omni.proxy.analysis
+
+import foundation.omni.rpc.OmniClient
+import org.bitcoinj.base.BitcoinNetwork
+import org.bitcoinj.base.Sha256Hash
+
+/**
+ * An {@link OmniClient} that answers {@code send} from an in-memory chain of blocks with Omni transactions,
+ * for testing the services that follow the chain without a node
+ */
+class StubOmniClient extends OmniClient {
+    // Block hashes by height, starting with the genesis block
+    final List<String> hashes = []
+    // Omni transactions (omni_gettransaction results) by height
+    final Map<Integer, List<Map>> blocks = [:]
+    // Handlers of methods, called with the params (these replace the built-in handling of a method)
+    final Map<String, Closure> methods = [:]
+    // Methods that have been called, in order
+    final List<String> calls = []
+    private int nextHash = 0
+
+    StubOmniClient(int height = 0) {
+        super(BitcoinNetwork.REGTEST, URI.create("http://localhost:18443"), "user", "pass", false, false)
+        (0..height).each { addBlock() }
+    }
+
+    /**
+     * @param transactions Omni transactions in the block, a {@code txid} is added if missing
+     * @return the new block's height
+     */
+    int addBlock(List<Map> transactions = []) {
+        hashes << Sha256Hash.of(("block " + nextHash++).bytes).toString()
+        int height = hashes.size() - 1
+        blocks[height] = transactions.collect { it.txid ? it : it + [txid: Sha256Hash.of("$height ${it}".bytes).toString()] }
+        return height
+    }
+
+    /**
+     * Replace the blocks above a height with new blocks (that have different hashes)
+     *
+     * @param height the fork point, which stays in the chain
+     * @param blockTransactions Omni transactions of each new block
+     */
+    void reorg(int height, List<List<Map>> blockTransactions) {
+        while (hashes.size() - 1 > height) {
+            blocks.remove(hashes.size() - 1)
+            hashes.remove(hashes.size() - 1)
+        }
+        blockTransactions.each { addBlock(it) }
+    }
+
+    int getTip() {
+        return hashes.size() - 1
+    }
+
+    @Override
+    <R> R send(String method, Class<R> resultType, Object... params) throws IOException {
+        calls << method
+        if (methods.containsKey(method)) {
+            return (R) methods[method].call(*params)
+        }
+        switch (method) {
+            case "getblockcount":
+                return (R) Integer.valueOf(tip)
+            case "getblockhash":
+                int height = params[0] as int
+                if (height > tip) {
+                    throw new IOException("Block height out of range: $height")
+                }
+                return (R) hashes[height]
+            case "omni_listblocktransactions":
+                return (R) blocks[params[0] as int]*.txid
+            case "omni_gettransaction":
+                return (R) blocks.values().flatten().find { it.txid == params[0] }
+            default:
+                throw new IOException("Unexpected call: $method")
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.subjects.SingleSubject
+import spock.lang.Specification
+
+import static org.consensusj.bitcoin.proxy.jsonrpc.CostClass.CHEAP
+import static org.consensusj.bitcoin.proxy.jsonrpc.CostClass.EXPENSIVE
+import static org.consensusj.bitcoin.proxy.jsonrpc.CostClass.NORMAL
+
+/**
+ * Tests for {@link AdmissionController}
+ */
+class AdmissionControllerSpec extends Specification {
+    // 2 overall, 2 cheap, 2 normal, 1 expensive; queues of 2, 2, 1
+    AdmissionController controller = new AdmissionController(true, 2, [2, 2, 1] as int[], [2, 2, 1] as int[])
+
+    void "requests within the limits start immediately"() {
+        when:
+        var result = controller.admit(CHEAP, Single.just("ok")).blockingGet()
+
+        then:
+        result == "ok"
+        controller.running(CHEAP) == 0
+    }
+
+    void "a class limit queues requests of that class only"() {
+        given:
+        var expensive = SingleSubject.<String>create()
+        controller.admit(EXPENSIVE, expensive).test()
+
+        when:
+        var queued = controller.admit(EXPENSIVE, Single.just("second")).test()
+        var cheap = controller.admit(CHEAP, Single.just("cheap")).test()
+
+        then:
+        queued.assertNotComplete()
+        controller.queued(EXPENSIVE) == 1
+        cheap.assertValue("cheap")
+
+        when:
+        expensive.onSuccess("first")
+
+        then:
+        queued.assertValue("second")
+        controller.running(EXPENSIVE) == 0
+    }
+
+    void "a full queue rejects immediately"() {
+        given:
+        controller.admit(EXPENSIVE, SingleSubject.<String>create()).test()
+        controller.admit(EXPENSIVE, SingleSubject.<String>create()).test()
+
+        when:
+        var rejected = controller.admit(EXPENSIVE, Single.just("nope")).test()
+
+        then:
+        rejected.assertError(AdmissionRejectedException)
+        controller.queued(EXPENSIVE) == 1
+    }
+
+    void "freed capacity goes to cheap requests first"() {
+        given:
+        var first = SingleSubject.<String>create()
+        controller.admit(NORMAL, first).test()
+        controller.admit(NORMAL, SingleSubject.<String>create()).test()
+        var normal = controller.admit(NORMAL, Single.just("normal")).test()
+        var cheap = controller.admit(CHEAP, Single.just("cheap")).test()
+
+        when:
+        first.onSuccess("done")
+
+        then:
+        cheap.assertValue("cheap")
+        normal.assertValue("normal")
+    }
+
+    void "a cancelled request leaves the queue"() {
+        given:
+        controller.admit(EXPENSIVE, SingleSubject.<String>create()).test()
+        var queued = controller.admit(EXPENSIVE, Single.just("queued")).test()
+
+        when:
+        queued.dispose()
+
+        then:
+        controller.queued(EXPENSIVE) == 0
+    }
+
+    void "a disabled controller admits everything"() {
+        given:
+        var disabled = new AdmissionController(false, 0, [0, 0, 0] as int[], [0, 0, 0] as int[])
+
+        expect:
+        disabled.admit(EXPENSIVE, Single.just("ok")).blockingGet() == "ok"
+    }
+}
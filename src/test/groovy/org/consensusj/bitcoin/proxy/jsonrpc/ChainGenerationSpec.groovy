@@ -0,0 +1,52 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.bitcoin.json.pojo.ChainTip
+import spock.lang.Specification
+
+/**
+ * Tests for {@link ChainGeneration}
+ */
+class ChainGenerationSpec extends Specification {
+    static final Sha256Hash hashA = Sha256Hash.of("a".bytes)
+    static final Sha256Hash hashB = Sha256Hash.of("b".bytes)
+
+    void "a new best block starts a new generation"() {
+        when:
+        var first = ChainGeneration.INITIAL.next(tip(100, hashA))
+        var second = first.next(tip(101, hashB))
+
+        then:
+        first.epoch() == 1
+        first.height() == 100
+        second.epoch() == 2
+        second.height() == 101
+        second.isNewerThan(first)
+        !first.isNewerThan(second)
+    }
+
+    void "a repeated tip keeps the generation"() {
+        given:
+        var first = ChainGeneration.INITIAL.next(tip(100, hashA))
+
+        expect:
+        first.next(tip(100, hashA)).is(first)
+    }
+
+    void "a reorg to a lower height is still newer"() {
+        given:
+        var first = ChainGeneration.INITIAL.next(tip(101, hashA))
+
+        when:
+        var reorg = first.next(tip(100, hashB))
+
+        then:
+        reorg.height() == 100
+        reorg.isNewerThan(first)
+        reorg != first
+    }
+
+    static ChainTip tip(int height, Sha256Hash hash) {
+        return new ChainTip(height, hash, 0, "active")
+    }
+}
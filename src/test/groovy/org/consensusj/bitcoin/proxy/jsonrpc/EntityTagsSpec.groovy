@@ -0,0 +1,23 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import spock.lang.Specification
+
+/**
+ * Tests for {@link EntityTags}
+ */
+class EntityTagsSpec extends Specification {
+    void "If-None-Match is compared weakly with the current tag"() {
+        expect:
+        EntityTags.matches(ifNoneMatch, '"abc"') == matches
+
+        where:
+        ifNoneMatch         || matches
+        null                || false
+        '"abc"'             || true
+        'W/"abc"'           || true
+        '"xyz", "abc"'      || true
+        '*'                 || true
+        '"xyz"'             || false
+        'abc'               || false
+    }
+}
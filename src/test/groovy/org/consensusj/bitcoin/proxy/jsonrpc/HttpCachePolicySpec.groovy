@@ -0,0 +1,60 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.consensusj.jsonrpc.JsonRpcRequest
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+import static org.consensusj.bitcoin.proxy.jsonrpc.HttpCachePolicy.Freshness.IMMUTABLE
+import static org.consensusj.bitcoin.proxy.jsonrpc.HttpCachePolicy.Freshness.TIP
+import static org.consensusj.bitcoin.proxy.jsonrpc.HttpCachePolicy.Freshness.VOLATILE
+
+/**
+ * Tests for {@link HttpCachePolicy}
+ */
+class HttpCachePolicySpec extends Specification {
+    static final String hash = "00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054"
+
+    void "requests are classified by how their results change"() {
+        given:
+        var route = new MethodRoute(handler, true, CostClass.NORMAL, false, null, null, null)
+        var key = ImmutableRpcCache.keyOf(new JsonRpcRequest(method, params))
+
+        expect:
+        HttpCachePolicy.freshnessOf(route, key) == freshness
+
+        where:
+        handler                         | method            | params        || freshness
+        MethodRoute.Handler.IMMUTABLE   | "getblock"        | [hash, 0]     || IMMUTABLE
+        MethodRoute.Handler.IMMUTABLE   | "getblock"        | [hash, 2]     || TIP
+        MethodRoute.Handler.CACHED      | "getblockcount"   | []            || TIP
+        MethodRoute.Handler.FORWARD     | "getmempoolinfo"  | []            || VOLATILE
+        MethodRoute.Handler.EXTRA       | "btcproxy.help"   | []            || VOLATILE
+    }
+
+    void "immutable tags depend only on the normalized request"() {
+        expect:
+        HttpCachePolicy.keyTag(ImmutableRpcCache.keyOf(new JsonRpcRequest("getblock", [hash, 0])).get()) ==
+                HttpCachePolicy.keyTag(ImmutableRpcCache.keyOf(new JsonRpcRequest("getblock", [hash.toUpperCase(), false])).get())
+        HttpCachePolicy.keyTag(ImmutableRpcCache.keyOf(new JsonRpcRequest("getblock", [hash, 0])).get()) !=
+                HttpCachePolicy.keyTag(ImmutableRpcCache.keyOf(new JsonRpcRequest("getblockstats", [hash])).get())
+    }
+
+    void "error responses are detected"() {
+        given:
+        var config = [getEnabled: { true }] as HttpCacheConfiguration
+        var policy = new HttpCachePolicy(config, null, new ObjectMapper())
+
+        expect:
+        policy.isErrorResponse(body.getBytes(StandardCharsets.UTF_8)) == error
+
+        where:
+        body                                                            || error
+        '{"result":"00ff","error":null,"id":"1"}'                       || false
+        '{"result":{"tx":[{"error":1}]},"error":null,"id":1}'           || false
+        '{"result":null,"error":{"code":-5,"message":"x"},"id":1}'      || true
+        '{"result":"00ff","id":1}'                                      || false
+        'garbage'                                                       || true
+    }
+}
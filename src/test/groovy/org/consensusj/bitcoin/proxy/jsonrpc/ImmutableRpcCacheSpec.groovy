@@ -0,0 +1,107 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.jsonrpc.JsonRpcRequest
+import spock.lang.Specification
+
+/**
+ * Tests for {@link ImmutableRpcCache} key normalization, entries and reorg detection
+ */
+class ImmutableRpcCacheSpec extends Specification {
+    static final String hash = "00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054"
+
+    void "cacheable requests map to normalized keys"() {
+        when:
+        var key = ImmutableRpcCache.keyOf(new JsonRpcRequest(method, params))
+
+        then:
+        key.isPresent()
+        key.get().method() == method
+        key.get().hash() == hash
+        key.get().variant() == variant
+
+        where:
+        method              | params                        || variant
+        "getblock"          | [hash]                        || "1"
+        "getblock"          | [hash.toUpperCase(), 2]       || "2"
+        "getblock"          | [hash, false]                 || "0"
+        "getblockheader"    | [hash]                        || "true"
+        "getblockheader"    | [hash, false]                 || "false"
+        "getblockstats"     | [hash]                        || ""
+        "getrawtransaction" | [hash, true]                  || "1/"
+        "getrawtransaction" | [hash, 0, hash]               || "0/" + hash
+    }
+
+    void "non-cacheable requests have no key"() {
+        expect:
+        ImmutableRpcCache.keyOf(new JsonRpcRequest(method, params)).isEmpty()
+
+        where:
+        method              | params
+        "getblock"          | [100]
+        "getblock"          | ["notahash"]
+        "getblock"          | [hash, 1, "extra"]
+        "getblockstats"     | [hash, ["txs"]]
+        "getblockstats"     | [100]
+        "getrawtransaction" | [hash]
+        "getrawtransaction" | [hash, false]
+        "getblockcount"     | []
+    }
+
+    void "results without chain-dependent fields are chain independent"() {
+        expect:
+        ImmutableRpcCache.isChainIndependent(ImmutableRpcCache.keyOf(new JsonRpcRequest(method, params)).get()) == independent
+
+        where:
+        method              | params                || independent
+        "getblock"          | [hash, 0]             || true
+        "getblock"          | [hash]                || false
+        "getblockheader"    | [hash, false]         || true
+        "getblockheader"    | [hash]                || false
+        "getblockstats"     | [hash]                || true
+        "getrawtransaction" | [hash, 0, hash]       || true
+        "getrawtransaction" | [hash, 1]             || false
+    }
+
+    void "entries are served with confirmations from the current tip"() {
+        given:
+        var mapper = new ObjectMapper()
+        var entry = ImmutableRpcCache.Entry.of(mapper, mapper.readTree(result), height)
+
+        expect:
+        new String(entry.response(110).withId(1), "UTF-8") == response
+        entry.response(110).tipHeight() == tipHeight
+
+        where:
+        result                                        | height || response                                                                      | tipHeight
+        '"0100"'                                      | -1     || '{"result":"0100","error":null,"id":1}'                                         | null
+        '{"txs":2}'                                   | -1     || '{"result":{"txs":2},"error":null,"id":1}'                                      | null
+        '{"hash":"00","confirmations":7,"height":100}' | 100    || '{"result":{"confirmations":11,"hash":"00","height":100},"error":null,"id":1}'  | 110
+        '{"confirmations":7}'                         | 105    || '{"result":{"confirmations":6},"error":null,"id":1}'                           | 110
+    }
+
+    void "entries are weighed by their serialized size"() {
+        given:
+        var mapper = new ObjectMapper()
+        var small = ImmutableRpcCache.Entry.of(mapper, mapper.readTree('{"tx":[]}'), 100)
+        var large = ImmutableRpcCache.Entry.of(mapper, mapper.readTree('{"tx":["' + "0" * 10000 + '"]}'), 100)
+
+        expect:
+        large.weight() - small.weight() == 10002
+    }
+
+    void "a tip extends the previous tip if it is the parent of its block"() {
+        given:
+        var parent = new ChainGeneration(1, 100, Sha256Hash.wrap(hash))
+
+        expect:
+        ImmutableRpcCache.isChildOf(parentHash, parent) == child
+
+        where:
+        parentHash  || child
+        hash        || true
+        "0" * 64    || false
+        ""          || false
+    }
+}
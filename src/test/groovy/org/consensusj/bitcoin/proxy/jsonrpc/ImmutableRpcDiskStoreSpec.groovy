@@ -0,0 +1,141 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Tests for {@link ImmutableRpcDiskStore}
+ */
+class ImmutableRpcDiskStoreSpec extends Specification {
+    static final int MB = 1 << 20
+    static final String hash = "00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054"
+
+    @TempDir
+    Path dir
+
+    void "stored results are read back, also after reopening"() {
+        given:
+        var key = new ImmutableRpcCache.Key("getblock", hash, "1")
+        var store = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+
+        when:
+        store.put(key, bytes('{"height":100}'), 100)
+        var stored = store.get(key)
+
+        then:
+        text(stored.value()) == '{"height":100}'
+        stored.blockHeight() == 100
+        store.get(new ImmutableRpcCache.Key("getblock", hash, "2")) == null
+
+        when:
+        store.close()
+        var reopened = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+
+        then:
+        text(reopened.get(key).value()) == '{"height":100}'
+        reopened.entries() == 1
+
+        cleanup:
+        reopened?.close()
+    }
+
+    void "evicted entries stay evicted after reopening"() {
+        given:
+        var store = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+        var old = new ImmutableRpcCache.Key("getblockheader", hash, "true")
+        var recent = new ImmutableRpcCache.Key("getblock", hash, "1")
+        var raw = new ImmutableRpcCache.Key("getblock", hash, "0")
+        store.put(old, bytes("{}"), 100)
+        store.put(recent, bytes("{}"), 200)
+        store.put(raw, bytes('"00"'), -1)
+
+        when:
+        store.evictAbove(150)
+        store.close()
+        var reopened = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+
+        then:
+        reopened.get(old) != null
+        reopened.get(recent) == null
+        reopened.get(raw) != null
+
+        cleanup:
+        reopened?.close()
+    }
+
+    void "a torn record at the end is truncated"() {
+        given:
+        var key = new ImmutableRpcCache.Key("getblockstats", hash, "")
+        var store = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+        store.put(key, bytes('{"txs":1}'), -1)
+        store.close()
+        Path segment = Files.list(dir).findFirst().get()
+        Files.write(segment, [0, 0, 1, 0, 42] as byte[], StandardOpenOption.APPEND)
+
+        when:
+        var reopened = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+
+        then:
+        text(reopened.get(key).value()) == '{"txs":1}'
+        reopened.size() == Files.size(segment)
+
+        cleanup:
+        reopened?.close()
+    }
+
+    void "the oldest segments are dropped to stay within the budget"() {
+        given:
+        var store = new ImmutableRpcDiskStore(dir, 2 * MB, MB)
+        var value = new byte[MB.intdiv(3)]
+        Arrays.fill(value, (byte) 0x30)
+
+        when:
+        (0..<12).each { store.put(new ImmutableRpcCache.Key("getblock", hash, it.toString()), value, -1) }
+
+        then:
+        store.size() <= 2 * MB
+        store.get(new ImmutableRpcCache.Key("getblock", hash, "0")) == null
+        store.get(new ImmutableRpcCache.Key("getblock", hash, "11")) != null
+
+        cleanup:
+        store.close()
+    }
+
+    void "live entries of a mostly dead segment are moved when it is compacted"() {
+        given:
+        var store = new ImmutableRpcDiskStore(dir, 100 * MB, MB)
+        var value = new byte[MB.intdiv(3)]
+        Arrays.fill(value, (byte) 0x30)
+        var small = new ImmutableRpcCache.Key("getblockheader", hash, "false")
+        store.put(new ImmutableRpcCache.Key("getblock", hash, "0"), value, -1)
+        store.put(new ImmutableRpcCache.Key("getblock", hash, "1"), value, -1)
+        store.put(small, bytes('"00"'), -1)
+        Path first = Files.list(dir).sorted().findFirst().get()
+
+        when: "the large entries of the first segment are replaced"
+        (2..<6).each { store.put(new ImmutableRpcCache.Key("getblock", hash, it.toString()), value, -1) }
+        store.put(new ImmutableRpcCache.Key("getblock", hash, "0"), value, -1)
+        store.put(new ImmutableRpcCache.Key("getblock", hash, "1"), value, -1)
+
+        then:
+        !Files.exists(first)
+        text(store.get(small).value()) == '"00"'
+        store.entries() == 7
+
+        cleanup:
+        store.close()
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8)
+    }
+
+    private static String text(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8)
+    }
+}
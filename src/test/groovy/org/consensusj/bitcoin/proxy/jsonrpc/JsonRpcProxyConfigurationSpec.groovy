@@ -24,6 +24,12 @@ class JsonRpcProxyConfigurationSpec extends Specification {
         jsonRpcProxyConfiguration.useZmq                    == false
         jsonRpcProxyConfiguration.allowList[0]              == 'getblockcount'
         jsonRpcProxyConfiguration.allowList.size()          == 22
+        jsonRpcProxyConfiguration.warmup                    == ['getblockcount', 'getbestblockhash', 'getblockchaininfo', 'getchaintips']
+        jsonRpcProxyConfiguration.staleWhileRevalidate      == ['gettxoutsetinfo']
+        jsonRpcProxyConfiguration.streamMethods             == ['getrawmempool', 'gettxoutproof', 'omni_getallbalancesforid',
+                                                                'omni_listproperties', 'omni_listblockstransactions',
+                                                                'omni_listpendingtransactions']
+        jsonRpcProxyConfiguration.maxBatchSize              == 1000
 
         cleanup:
         ctx.close()
@@ -37,7 +43,9 @@ class JsonRpcProxyConfigurationSpec extends Specification {
             'btcproxyd.rpcproxy.use-zmq' : false,
             'btcproxyd.rpcproxy.username': 'Satoshi',
             'btcproxyd.rpcproxy.password': 'Nakamoto',
-            'btcproxyd.rpcproxy.allow-list': ['I', 'Shall', 'Not', 'Fear']
+            'btcproxyd.rpcproxy.allow-list': ['I', 'Shall', 'Not', 'Fear'],
+            'btcproxyd.rpcproxy.warmup': ['getblockcount'],
+            'btcproxyd.rpcproxy.stale-while-revalidate': []
         ])
 
         when:
@@ -50,6 +58,8 @@ class JsonRpcProxyConfigurationSpec extends Specification {
         jsonRpcProxyConfiguration.password                  == 'Nakamoto'
         jsonRpcProxyConfiguration.useZmq                    == false
         jsonRpcProxyConfiguration.allowList                 == ['I', 'Shall', 'Not', 'Fear']
+        jsonRpcProxyConfiguration.warmup                    == ['getblockcount']
+        jsonRpcProxyConfiguration.staleWhileRevalidate      == []
 
         cleanup:
         ctx.close()
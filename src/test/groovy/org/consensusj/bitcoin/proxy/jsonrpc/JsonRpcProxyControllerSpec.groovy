@@ -0,0 +1,25 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import spock.lang.Specification
+
+/**
+ * Tests for {@link JsonRpcProxyController} {@code Cache-Control} handling
+ */
+class JsonRpcProxyControllerSpec extends Specification {
+
+    void "Cache-Control directives that require a fresh response"() {
+        expect:
+        JsonRpcProxyController.requiresFresh(cacheControl) == fresh
+
+        where:
+        cacheControl                || fresh
+        null                        || false
+        ""                          || false
+        "max-age=60"                || false
+        "no-cache"                  || true
+        "No-Cache"                  || true
+        "max-age=0"                 || true
+        "no-store, max-age=0"       || true
+        "no-cache-please"           || false
+    }
+}
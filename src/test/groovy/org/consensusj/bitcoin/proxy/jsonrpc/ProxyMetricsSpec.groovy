@@ -0,0 +1,57 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static org.consensusj.bitcoin.proxy.jsonrpc.MethodRoute.Handler.*
+
+/**
+ * Tests for {@link ProxyMetrics}
+ */
+class ProxyMetricsSpec extends Specification {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+    ProxyMetrics metrics = new ProxyMetrics(registry)
+
+    void "request timers are tagged by method and route and reused"() {
+        when:
+        var timer = metrics.requestTimer('getblock', IMMUTABLE)
+        timer.record(5, TimeUnit.MILLISECONDS)
+
+        then:
+        metrics.requestTimer('getblock', IMMUTABLE).is(timer)
+        registry.get('btcproxy.requests').tags('method', 'getblock', 'route', 'immutable').timer().count() == 1
+        !metrics.requestTimer('getblock', FORWARD).is(timer)
+    }
+
+    void "denied methods share a time series"() {
+        expect:
+        metrics.requestTimer('whatever', DENIED).is(metrics.requestTimer('anything', DENIED))
+        metrics.requestTimer('whatever', DENIED).id.getTag('method') == ProxyMetrics.OTHER
+    }
+
+    void "cache results are counted"() {
+        when:
+        metrics.rpcCache(ProxyMetrics.CacheResult.HIT)
+        metrics.rpcCache(ProxyMetrics.CacheResult.HIT)
+        metrics.coalescer(ProxyMetrics.CacheResult.COALESCED)
+
+        then:
+        registry.get('btcproxy.cache.requests').tags('cache', 'rpc', 'result', 'hit').counter().count() == 2
+        registry.get('btcproxy.cache.requests').tags('cache', 'coalescer', 'result', 'coalesced').counter().count() == 1
+        registry.get('btcproxy.cache.requests').tags('cache', 'rpc', 'result', 'miss').counter().count() == 0
+    }
+
+    void "metrics can be disabled"() {
+        given:
+        var disabled = new ProxyMetrics(null)
+
+        when:
+        disabled.requestTimer('getblock', FORWARD).record(1, TimeUnit.MILLISECONDS)
+        disabled.rejected(CostClass.EXPENSIVE)
+
+        then:
+        noExceptionThrown()
+    }
+}
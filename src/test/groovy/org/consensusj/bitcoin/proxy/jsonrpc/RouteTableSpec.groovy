@@ -0,0 +1,133 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+import static org.consensusj.bitcoin.proxy.jsonrpc.MethodRoute.Handler.*
+
+/**
+ * Tests for {@link RouteTable}
+ */
+class RouteTableSpec extends Specification {
+    static final String hash = "00000000000000000002a7c4c1e48d76c5a37902165a270156b7a8d72728a054"
+    static final List<String> allowList = ['getblockcount', 'getblock', 'getrawmempool', 'getblockhash',
+                                           'btcproxy.help', 'stop', 'gettxoutsetinfo']
+
+    void "methods are routed in priority order"() {
+        given:
+        var table = RouteTable.build(allowList, ['btcproxy.help', 'btcproxy.proxyinfo'], ['getrawmempool'], true, [:])
+
+        expect:
+        table.route(method).handler() == handler
+
+        where:
+        method                  || handler
+        'getblockcount'         || CACHED
+        'getblock'              || IMMUTABLE
+        'getrawmempool'         || STREAM
+        'getblockhash'          || FORWARD
+        'btcproxy.help'         || EXTRA
+        'btcproxy.proxyinfo'    || DENIED   // not on the allow list
+        'stop'                  || DENIED   // on the deny list
+        'getnewaddress'         || DENIED
+        null                    || DENIED
+    }
+
+    void "immutable-cached methods are forwarded when the cache is disabled"() {
+        given:
+        var table = RouteTable.build(allowList, [], [], false, [:])
+
+        expect:
+        table.route('getblock').handler() == FORWARD
+    }
+
+    void "without an allow list only the deny list applies"() {
+        given:
+        var table = RouteTable.build(null, ['btcproxy.help'], [], true, [:])
+
+        expect:
+        table.route('btcproxy.help').handler() == EXTRA
+        table.route('getnewaddress').handler() == FORWARD
+        !table.route('getnewaddress').coalescable()
+        table.route('getblockhash').coalescable()
+        table.route('stop').handler() == DENIED
+    }
+
+    void "without an allow list unlisted methods share one route"() {
+        given:
+        var table = RouteTable.build(null, [], [], true, [:])
+
+        expect:
+        table.route('getnewaddress').is(table.route('sendtoaddress'))
+        table.route('getnewaddress') == new MethodRoute(FORWARD, false, CostClass.NORMAL, true, null, null, null)
+        table.route('getblock').handler() == IMMUTABLE
+        table.route('getblockstats').costClass() == CostClass.EXPENSIVE
+        table.route('getdifficulty').costClass() == CostClass.CHEAP
+        table.route('getnetworkinfo').coalescable()
+    }
+
+    void "only known read-only methods are coalesced"() {
+        given:
+        var table = RouteTable.build(null, [], [], true, [:])
+
+        expect:
+        !table.route(method).coalescable()
+
+        where:
+        method << ['send', 'sendall', 'bumpfee', 'walletcreatefundedpsbt', 'createwallet', 'omni_funded_send',
+                   'sendrawtransaction', 'someunknownmethod']
+    }
+
+    void "verbose blocks and mempool listings are large results"() {
+        expect:
+        RouteTable.isLargeResult(method, params) == large
+
+        where:
+        method                  | params                     | large
+        'getblock'              | [hash]                     | false
+        'getblock'              | [hash, 0]                  | false
+        'getblock'              | [hash, 1]                  | false
+        'getblock'              | [hash, true]               | false
+        'getblock'              | [hash, 2]                  | true
+        'getblock'              | [hash, 3]                  | true
+        'getrawmempool'         | []                         | false
+        'getrawmempool'         | [true]                     | true
+        'getmempoolancestors'   | [hash, true]               | true
+        'getmempooldescendants' | [hash]                     | false
+        'getblockheader'        | [hash, 2]                  | false
+        'getblock'              | null                       | false
+    }
+
+    void "policies override the defaults"() {
+        given:
+        var policy = new MethodPolicyConfiguration('gettxoutsetinfo')
+        policy.costClass = CostClass.CHEAP
+        policy.primaryOnly = true
+        policy.timeout = Duration.ofMinutes(10)
+        policy.cacheTtl = Duration.ofSeconds(30)
+        var table = RouteTable.build(allowList, [], [], true, ['gettxoutsetinfo': policy])
+
+        when:
+        var route = table.route('gettxoutsetinfo')
+
+        then:
+        route.handler() == CACHED
+        route.costClass() == CostClass.CHEAP
+        route.primaryOnly()
+        route.timeout() == Duration.ofMinutes(10)
+        route.cacheTtl() == Duration.ofSeconds(30)
+        table.route('getblock').costClass() == CostClass.of('getblock')
+        table.route('getblock').timeout() == null
+    }
+
+    void "upstream requests made by the proxy ignore the allow and deny lists"() {
+        given:
+        var table = RouteTable.build(allowList, [], [], true, [:])
+
+        expect:
+        table.upstreamRoute('omni_listproperties').costClass() == CostClass.EXPENSIVE
+        table.upstreamRoute('sendrawtransaction').primaryOnly()
+        table.upstreamRoute(null).costClass() == CostClass.NORMAL
+    }
+}
@@ -0,0 +1,56 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import com.fasterxml.jackson.core.JsonFactory
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Tests for {@link ScannedRequest}
+ */
+class ScannedRequestSpec extends Specification {
+    static final JsonFactory factory = new JsonFactory()
+
+    void "requests are scanned for method, id and params"() {
+        when:
+        var scanned = ScannedRequest.scan(factory, json.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        scanned.isPresent()
+        scanned.get().method() == method
+        scanned.get().id() == id
+        scanned.get().hasId() == hasId
+        scanned.get().params() == params
+        scanned.get().isVersion2() == version2
+
+        where:
+        json                                                                    || method           | id    | hasId | params | version2
+        '{"jsonrpc":"1.0","id":"a","method":"getblockcount","params":[]}'       || "getblockcount"  | "a"   | true  | "[]"   | false
+        '{"method":"getblockhash","params":[ 1000 ],"id":7}'                    || "getblockhash"   | 7     | true  | "[ 1000 ]" | false
+        '{"method":"getblock","params":{"blockhash":"00ff","verbosity":2}}'     || "getblock"       | null  | false | '{"blockhash":"00ff","verbosity":2}' | false
+        '{"id":null,"method":"uptime"}'                                         || "uptime"         | null  | true  | "[]"   | false
+        '  {"method":"getblock","params":[["nested", {"x":"é"}]],"id":1}  '     || "getblock"       | 1     | true  | '[["nested", {"x":"é"}]]' | false
+        '{"jsonrpc":"2.0","method":"getblockcount","id":1}'                     || "getblockcount"  | 1     | true  | "[]"   | true
+    }
+
+    void "requests that need full parsing are not scanned"() {
+        expect:
+        ScannedRequest.scan(factory, json.getBytes(StandardCharsets.UTF_8)).isEmpty()
+
+        where:
+        json << [
+                '[{"method":"getblockcount","id":1}]',
+                '{"id":1}',
+                '{"method":42,"id":1}',
+                '{"method":"getblockcount","id":{"x":1}}',
+                '{"method":"getblockcount","params":"abc","id":1}',
+                '{"method":"getblockcount","id":1',
+                '{"method":"getblockcount","id":1} {}',
+                '{"method":"stop","method":"getblockcount","id":1}',
+                '{"method":"getblockhash","params":[1],"params":[2],"id":1}',
+                '{"method":"getblockcount","id":1,"id":2}',
+                '{"jsonrpc":2.0,"method":"getblockcount","id":1}',
+                'garbage'
+        ]
+    }
+}
@@ -0,0 +1,119 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Tests for {@link SerializedRpcResponse} id splicing
+ */
+class SerializedRpcResponseSpec extends Specification {
+    static final ObjectMapper mapper = new ObjectMapper()
+
+    void "id is spliced into the response"() {
+        given:
+        var serialized = SerializedRpcResponse.of('{"result":{"blocks":1},"error":null}'.getBytes(StandardCharsets.UTF_8), false)
+
+        when:
+        String json = new String(serialized.withId(id), StandardCharsets.UTF_8)
+        var response = mapper.readTree(json)
+
+        then:
+        json == '{"result":{"blocks":1},"error":null,"id":' + expectedId + '}'
+        response.get("result").get("blocks").asInt() == 1
+
+        where:
+        id                  || expectedId
+        "abc"               || '"abc"'
+        'quote"and\\slash'  || '"quote\\"and\\\\slash"'
+        "tab\t"             || '"tab\\u0009"'
+        "héllo"             || '"héllo"'
+        0                   || '0'
+        42                  || '42'
+        -7                  || '-7'
+        Long.MAX_VALUE      || '9223372036854775807'
+        Long.MIN_VALUE      || '-9223372036854775808'
+        null                || 'null'
+    }
+
+    void "empty object gets only an id"() {
+        when:
+        var serialized = SerializedRpcResponse.of('{ }'.getBytes(StandardCharsets.UTF_8), true)
+
+        then:
+        new String(serialized.withId(1), StandardCharsets.UTF_8) == '{ "id":1}'
+        serialized.isError()
+    }
+
+    void "upstream response with expected id is used without parsing"() {
+        given:
+        byte[] body = '{"result":800000,"error":null,"id":"btcproxy"}\n'.getBytes(StandardCharsets.UTF_8)
+
+        when:
+        var serialized = SerializedRpcResponse.fromUpstream(mapper, body, "btcproxy")
+
+        then:
+        !serialized.isError()
+        new String(serialized.withId(7), StandardCharsets.UTF_8) == '{"result":800000,"error":null,"id":7}'
+    }
+
+    void "upstream response to a forwarded client id is used without parsing"() {
+        given:
+        byte[] body = '{"result":"00ff","error":null,"id":42}'.getBytes(StandardCharsets.UTF_8)
+
+        when:
+        var serialized = SerializedRpcResponse.fromUpstream(mapper, body, '42'.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        !serialized.isError()
+        new String(serialized.withId("b"), StandardCharsets.UTF_8) == '{"result":"00ff","error":null,"id":"b"}'
+    }
+
+    void "upstream errors are detected by a non-null error member"() {
+        when:
+        var serialized = SerializedRpcResponse.fromUpstream(mapper, body.getBytes(StandardCharsets.UTF_8), "btcproxy")
+
+        then:
+        serialized.isError() == error
+        mapper.readTree(serialized.withId(1)).get("id").asInt() == 1
+
+        where:
+        body                                                                                  || error
+        '{"result":1,"error":null,"id":"btcproxy"}'                                           || false
+        '{"result":null,"error":{"code":-5,"message":"not found"},"id":"btcproxy"}'           || true
+        '{"jsonrpc":"2.0","result":1,"id":"btcproxy"}'                                        || false
+        '{"jsonrpc":"2.0","result":{"error":{"code":1}},"id":"btcproxy"}'                     || false
+        '{"jsonrpc":"2.0","error":{"code":-32601,"message":"Method not found"},"id":"btcproxy"}' || true
+        '{"error":{"code":-1,"message":"x"},"result":null,"id":"btcproxy"}'                   || true
+        '{"result":2,"id":"btcproxy"}'                                                        || false
+    }
+
+    void "the upstream HTTP status is kept"() {
+        given:
+        byte[] body = '{"result":null,"error":{"code":-32601,"message":"Method not found"},"id":"btcproxy"}'.getBytes(StandardCharsets.UTF_8)
+
+        when:
+        var serialized = SerializedRpcResponse.fromUpstream(mapper, body, "btcproxy")
+
+        then:
+        serialized.status() == 200
+        serialized.withStatus(404).status() == 404
+        serialized.withStatus(404).isError()
+        serialized.withStatus(404).withId(1) == serialized.withId(1)
+    }
+
+    void "upstream response with unexpected layout is re-serialized"() {
+        given:
+        byte[] body = '{"id":"btcproxy","result":null,"error":{"code":-5,"message":"Block not found"}}'.getBytes(StandardCharsets.UTF_8)
+
+        when:
+        var serialized = SerializedRpcResponse.fromUpstream(mapper, body, "btcproxy")
+        var response = mapper.readTree(serialized.withId("x"))
+
+        then:
+        serialized.isError()
+        response.get("id").asText() == "x"
+        response.get("error").get("code").asInt() == -5
+    }
+}
@@ -0,0 +1,116 @@
+package org.consensusj.bitcoin.proxy.jsonrpc
+
+import spock.lang.Specification
+
+/**
+ * Tests for {@link UpstreamPool} backend selection
+ */
+class UpstreamPoolSpec extends Specification {
+    UpstreamBackend primary = backend("primary")
+    UpstreamBackend node2 = backend("node2")
+    UpstreamBackend node3 = backend("node3")
+    UpstreamPool pool = new UpstreamPool(primary, [primary, node2, node3], 0)
+
+    void "a single server handles everything"() {
+        given:
+        var single = new UpstreamPool(primary, [primary], 0)
+
+        expect:
+        single.select("getblock").is(primary)
+        single.select("sendrawtransaction").is(primary)
+    }
+
+    void "write methods go to the primary"() {
+        given:
+        [primary, node2, node3].each { it.recordHeight(100) }
+        primary.begin()
+
+        expect:
+        pool.select(method).is(primary)
+
+        where:
+        method << ["sendrawtransaction", "submitblock", "getnewaddress", "omni_sendrawtx", "omni_send"]
+    }
+
+    void "wallet, write and unknown methods go to the primary"() {
+        given:
+        [primary, node2, node3].each { it.recordHeight(100) }
+        primary.begin()
+
+        expect:
+        UpstreamPool.isPrimaryOnly(method)
+        pool.select(method).is(primary)
+
+        where:
+        method << ["send", "sendall", "bumpfee", "walletcreatefundedpsbt", "walletprocesspsbt", "createwallet",
+                   "listwallets", "getreceivedbyaddress", "omni_funded_send", "omni_funded_sendall",
+                   "getpeerinfo", "someunknownmethod", null]
+    }
+
+    void "replicated read-only methods are not primary-only"() {
+        expect:
+        !UpstreamPool.isPrimaryOnly(method)
+
+        where:
+        method << ["getblock", "getblockhash", "getrawtransaction", "omni_getproperty", "omni_listblocktransactions"]
+    }
+
+    void "reads go to the backend with the lowest expected wait"() {
+        given:
+        [primary, node2, node3].each { it.recordHeight(100) }
+        primary.begin()
+        primary.begin()
+        node3.begin()
+
+        expect:
+        pool.select("getblock").is(node2)
+    }
+
+    void "a lagging backend is skipped"() {
+        given:
+        primary.recordHeight(101)
+        node2.recordHeight(100)
+        node3.recordHeight(101)
+        primary.begin()
+
+        expect:
+        pool.select("getblock").is(node3)
+    }
+
+    void "a backend that hasn't reached the latest tip is skipped"() {
+        given:
+        [primary, node2, node3].each { it.recordHeight(100) }
+        node3.recordHeight(101)
+        pool.observeTip(101)
+        node3.begin()
+        node3.begin()
+
+        expect:
+        pool.select("getblock").is(node3)
+    }
+
+    void "an unhealthy backend is skipped until its cooldown expires"() {
+        given:
+        [primary, node2, node3].each { it.recordHeight(100) }
+        primary.begin()
+        primary.begin()
+        node3.begin()
+        node2.markFailed(60_000_000_000L)
+
+        expect:
+        pool.select("getblock").is(node3)
+    }
+
+    void "the primary is used if no backend qualifies"() {
+        given:
+        pool.observeTip(101)
+        primary.begin()
+
+        expect:
+        pool.select("getblock").is(primary)
+    }
+
+    static UpstreamBackend backend(String name) {
+        return new UpstreamBackend(name, URI.create("http://${name}:8332"), "user", "pass")
+    }
+}
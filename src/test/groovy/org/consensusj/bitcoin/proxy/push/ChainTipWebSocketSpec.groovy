@@ -0,0 +1,100 @@
+package org.consensusj.bitcoin.proxy.push
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import groovy.json.JsonSlurper
+import io.micronaut.websocket.CloseReason
+import io.micronaut.websocket.WebSocketSession
+import io.reactivex.rxjava3.processors.BehaviorProcessor
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.bitcoin.json.pojo.ChainTip
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics
+import org.consensusj.bitcoin.rx.ChainTipPublisher
+import org.reactivestreams.Subscriber
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Tests for {@link ChainTipWebSocket} with stub sessions
+ */
+class ChainTipWebSocketSpec extends Specification {
+    BehaviorProcessor<ChainTip> tips = BehaviorProcessor.create()
+    PushConfiguration config = [getEnabled: { true }, getBufferSize: { 16 }, getMaxSubscribers: { 2 },
+                                getOverflow: { PushConfiguration.OverflowPolicy.CONFLATE }] as PushConfiguration
+    ChainTipGateway gateway = new ChainTipGateway([subscribe: { Subscriber s -> tips.subscribe(s) }] as ChainTipPublisher,
+            new ObjectMapper(), new ProxyMetrics(null), config)
+    ChainTipWebSocket endpoint = new ChainTipWebSocket(gateway)
+
+    void setup() {
+        gateway.start()
+    }
+
+    void cleanup() {
+        gateway.stop()
+    }
+
+    void "a client is sent the current tip and then each new tip"() {
+        given:
+        tips.onNext(tip(800000))
+        var session = new StubSession("a")
+
+        when:
+        endpoint.onOpen(session.session)
+        tips.onNext(tip(800001))
+
+        then:
+        session.heights() == [800000, 800001]
+        session.closeReason == null
+    }
+
+    void "a closed client isn't sent new tips"() {
+        given:
+        var a = new StubSession("a")
+        var b = new StubSession("b")
+        endpoint.onOpen(a.session)
+        endpoint.onOpen(b.session)
+
+        when:
+        endpoint.onClose(a.session)
+        tips.onNext(tip(800000))
+
+        then:
+        a.sent.isEmpty()
+        b.heights() == [800000]
+        gateway.topic().subscriberCount() == 1
+    }
+
+    void "clients beyond the limit are told to try again later"() {
+        given:
+        var sessions = ["a", "b", "c"].collect { new StubSession(it) }
+
+        when:
+        sessions.each { endpoint.onOpen(it.session) }
+
+        then:
+        sessions*.closeReason == [null, null, CloseReason.TRY_AGAIN_LATER]
+        gateway.topic().subscriberCount() == 2
+    }
+
+    static ChainTip tip(long height) {
+        return new ChainTip(height, Sha256Hash.of(Long.toString(height).bytes), 0, 'active')
+    }
+
+    static class StubSession {
+        final List<String> sent = []
+        CloseReason closeReason = null
+        final WebSocketSession session
+
+        StubSession(String id) {
+            session = [
+                    getId    : { id },
+                    sendAsync: { message -> sent << message; CompletableFuture.completedFuture(message) },
+                    close    : { CloseReason reason -> closeReason = reason }
+            ] as WebSocketSession
+        }
+
+        List<Long> heights() {
+            return sent.collect { new JsonSlurper().parseText(it).height as Long }
+        }
+    }
+}
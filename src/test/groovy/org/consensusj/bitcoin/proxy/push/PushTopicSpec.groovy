@@ -0,0 +1,146 @@
+package org.consensusj.bitcoin.proxy.push
+
+import org.consensusj.bitcoin.proxy.jsonrpc.ProxyMetrics
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionStage
+
+import static org.consensusj.bitcoin.proxy.push.PushConfiguration.OverflowPolicy.CONFLATE
+import static org.consensusj.bitcoin.proxy.push.PushConfiguration.OverflowPolicy.DISCONNECT
+
+/**
+ * Tests for {@link PushTopic}
+ */
+class PushTopicSpec extends Specification {
+
+    void "messages are sent to every subscriber in order"() {
+        given:
+        var topic = topic(CONFLATE)
+        var a = new TestSink(true)
+        var b = new TestSink(true)
+        topic.subscribe("a", a)
+        topic.subscribe("b", b)
+
+        when:
+        topic.publish("1")
+        topic.publish("2")
+
+        then:
+        a.sent == ["1", "2"]
+        b.sent == ["1", "2"]
+    }
+
+    void "a new subscriber is sent the latest message"() {
+        given:
+        var topic = topic(CONFLATE)
+        topic.publish("1")
+        topic.publish("2")
+        var sink = new TestSink(true)
+
+        when:
+        topic.subscribe("a", sink)
+
+        then:
+        sink.sent == ["2"]
+    }
+
+    void "a slow subscriber is conflated without delaying the others"() {
+        given:
+        var topic = topic(CONFLATE)
+        var slow = new TestSink(false)
+        var fast = new TestSink(true)
+        topic.subscribe("slow", slow)
+        topic.subscribe("fast", fast)
+
+        when: "1 is in flight, each later message replaces the queued one"
+        (1..5).each { topic.publish(it as String) }
+
+        then:
+        fast.sent == ["1", "2", "3", "4", "5"]
+        slow.sent == ["1"]
+
+        when:
+        slow.completeAll()
+
+        then: "only the latest message was kept"
+        slow.sent == ["1", "5"]
+    }
+
+    void "a slow subscriber is disconnected"() {
+        given:
+        var topic = topic(DISCONNECT)
+        var slow = new TestSink(false)
+        topic.subscribe("slow", slow)
+
+        when:
+        (1..4).each { topic.publish(it as String) }
+
+        then:
+        slow.closed
+        topic.subscriberCount() == 0
+    }
+
+    void "a failed subscriber is removed"() {
+        given:
+        var topic = topic(CONFLATE)
+        var sink = new TestSink(false)
+        topic.subscribe("a", sink)
+        topic.publish("1")
+
+        when:
+        sink.pending.first().completeExceptionally(new IOException("closed"))
+
+        then:
+        topic.subscriberCount() == 0
+    }
+
+    void "subscribers beyond the limit are rejected"() {
+        given:
+        var topic = topic(CONFLATE)
+
+        expect:
+        topic.subscribe("a", new TestSink(true))
+        topic.subscribe("b", new TestSink(true))
+        !topic.subscribe("c", new TestSink(true))
+    }
+
+    // Buffer of 2, at most 2 subscribers
+    static PushTopic topic(PushConfiguration.OverflowPolicy overflow) {
+        var config = [getEnabled: { true }, getBufferSize: { 2 }, getMaxSubscribers: { 2 }, getOverflow: { overflow }] as PushConfiguration
+        return new PushTopic("test", config, new ProxyMetrics(null))
+    }
+
+    static class TestSink implements PushSink {
+        final boolean completeImmediately
+        final List<String> sent = []
+        final List<CompletableFuture<Void>> pending = []
+        boolean closed = false
+
+        TestSink(boolean completeImmediately) {
+            this.completeImmediately = completeImmediately
+        }
+
+        @Override
+        CompletionStage<?> send(String message) {
+            sent.add(message)
+            if (completeImmediately) {
+                return CompletableFuture.completedFuture(null)
+            }
+            var future = new CompletableFuture<Void>()
+            pending.add(future)
+            return future
+        }
+
+        @Override
+        void close(String reason) {
+            closed = true
+        }
+
+        void completeAll() {
+            while (!pending.isEmpty()) {
+                pending.remove(0).complete(null)
+            }
+        }
+    }
+}
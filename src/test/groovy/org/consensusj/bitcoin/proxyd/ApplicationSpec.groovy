@@ -1,6 +1,11 @@
 package org.consensusj.bitcoin.proxyd
 
+import groovy.json.JsonSlurper
 import io.micronaut.context.annotation.Replaces
+import io.micronaut.http.HttpRequest
+import io.micronaut.http.MediaType
+import io.micronaut.http.client.HttpClient
+import io.micronaut.http.client.annotation.Client
 import io.micronaut.runtime.server.EmbeddedServer
 import io.micronaut.test.extensions.spock.annotation.MicronautTest
 import jakarta.inject.Singleton
@@ -19,6 +24,10 @@ class ApplicationSpec extends Specification {
     @Inject
     EmbeddedServer server
 
+    @Inject
+    @Client("/")
+    HttpClient httpClient
+
     @Shared URI endpoint
     @Shared DynamicRpcClient client
 
@@ -63,6 +72,118 @@ class ApplicationSpec extends Specification {
         // TODO e.httpCode == ??
     }
 
+    void 'batch request returns responses in request order'() {
+        given:
+        String batch = '''[
+            {"jsonrpc": "2.0", "id": "a", "method": "btcproxy.proxyinfo"},
+            {"jsonrpc": "2.0", "id": "b", "method": "unknownmethod"},
+            {"jsonrpc": "2.0", "id": "c"}
+        ]'''
+
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", batch).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def responses = new JsonSlurper().parseText(body)
+
+        then:
+        responses.size() == 3
+        responses[0].id == "a"
+        responses[0].result.name == server.applicationConfiguration.getName().orElseThrow()
+        responses[1].id == "b"
+        responses[1].error.code == -32601
+        responses[2].id == "c"
+        responses[2].error.code == -32600
+    }
+
+    void 'batch responses are in the JSON-RPC version of their request'() {
+        given:
+        String batch = '''[
+            {"jsonrpc": "1.0", "id": "a", "method": "btcproxy.proxyinfo"},
+            {"jsonrpc": "2.0", "id": "b", "method": "btcproxy.proxyinfo"},
+            {"jsonrpc": "2.0", "id": "c", "method": "unknownmethod"}
+        ]'''
+
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", batch).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def responses = new JsonSlurper().parseText(body)
+
+        then:
+        responses.size() == 3
+        !responses[0].containsKey("jsonrpc")
+        responses[0].containsKey("error")
+        responses[1].jsonrpc == "2.0"
+        responses[1].result.name == server.applicationConfiguration.getName().orElseThrow()
+        !responses[1].containsKey("error")
+        responses[2].jsonrpc == "2.0"
+        responses[2].error.code == -32601
+        !responses[2].containsKey("result")
+    }
+
+    void 'batch notifications get no response'() {
+        given:
+        String batch = '''[
+            {"jsonrpc": "2.0", "method": "btcproxy.proxyinfo"},
+            {"jsonrpc": "2.0", "id": "b", "method": "btcproxy.proxyinfo"},
+            {"jsonrpc": "2.0", "method": "unknownmethod"}
+        ]'''
+
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", batch).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def responses = new JsonSlurper().parseText(body)
+
+        then:
+        responses.size() == 1
+        responses[0].id == "b"
+    }
+
+    void 'batch of only notifications gets an empty response'() {
+        given:
+        String batch = '[{"jsonrpc": "2.0", "method": "btcproxy.proxyinfo"}, {"jsonrpc": "2.0", "method": "btcproxy.help"}]'
+
+        when:
+        var response = httpClient.toBlocking().exchange(HttpRequest.POST("/", batch).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+
+        then:
+        response.code() == 204
+        !response.body.present
+    }
+
+    void 'batch larger than the maximum returns a single error'() {
+        given:
+        String batch = '[' + (1..1001).collect { '{"jsonrpc": "2.0", "id": ' + it + ', "method": "btcproxy.proxyinfo"}' }.join(',') + ']'
+
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", batch).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def response = new JsonSlurper().parseText(body)
+
+        then:
+        response.error.code == -32600
+    }
+
+    void 'requests with duplicate keys are rejected'() {
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", request).contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def response = new JsonSlurper().parseText(body)
+
+        then:
+        response.error.code == -32700
+
+        where:
+        request << [
+                '{"jsonrpc": "2.0", "method": "stop", "method": "btcproxy.proxyinfo", "id": 1}',
+                '{"jsonrpc": "2.0", "method": "btcproxy.help", "params": [], "params": ["x"], "id": 1}',
+                '[{"jsonrpc": "2.0", "method": "stop", "method": "btcproxy.proxyinfo", "id": 1}]'
+        ]
+    }
+
+    void 'empty batch returns a single error'() {
+        when:
+        String body = httpClient.toBlocking().retrieve(HttpRequest.POST("/", "[]").contentType(MediaType.APPLICATION_JSON_TYPE), String)
+        def response = new JsonSlurper().parseText(body)
+
+        then:
+        response.error.code == -32600
+    }
+
     @Replaces(ChainTipPublisher)
     @Singleton
     ChainTipPublisher chainTipService() {
@@ -0,0 +1,137 @@
+package org.consensusj.bitcoin.proxyd.loadtest
+
+import groovy.transform.CompileStatic
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Open-loop JSON-RPC load generator. Requests are started at a fixed rate regardless of how long earlier
+ * requests take (so a slow server builds up a backlog instead of slowing the generator down, as it would
+ * with real clients), and are drawn from a weighted mix of traffic classes. Latencies are recorded per class.
+ */
+@CompileStatic
+class LoadGenerator {
+    /**
+     * A class of traffic
+     *
+     * @param name name used in the report
+     * @param weight relative frequency
+     * @param bodies request bodies, one is chosen at random for each request
+     */
+    static record TrafficClass(String name, int weight, List<String> bodies) {}
+
+    /**
+     * Results for one traffic class
+     */
+    static record Result(String name, long count, long errors, long p50Micros, long p90Micros, long p99Micros,
+                         long maxMicros) {
+        @Override
+        String toString() {
+            return String.format('%-12s %8d requests %6d errors   p50 %8.2f ms  p90 %8.2f ms  p99 %8.2f ms  max %8.2f ms',
+                    name, count, errors, p50Micros / 1000d, p90Micros / 1000d, p99Micros / 1000d, maxMicros / 1000d)
+        }
+    }
+
+    private final URI endpoint
+    private final List<TrafficClass> mix
+    private final int totalWeight
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newFixedThreadPool(4))
+            .connectTimeout(Duration.ofSeconds(5))
+            .build()
+    private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>()
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>()
+    private final AtomicLong outstanding = new AtomicLong()
+
+    LoadGenerator(URI endpoint, List<TrafficClass> mix) {
+        this.endpoint = endpoint
+        this.mix = List.copyOf(mix)
+        this.totalWeight = (int) mix.sum { TrafficClass c -> c.weight() }
+        mix.each { TrafficClass c ->
+            latencies.put(c.name(), new ConcurrentLinkedQueue<Long>())
+            errors.put(c.name(), new AtomicLong())
+        }
+    }
+
+    /**
+     * Generate load and wait for outstanding requests to finish
+     *
+     * @param rate requests per second
+     * @param duration how long to generate load for
+     * @return results per traffic class, in the order of the mix
+     */
+    List<Result> run(int rate, Duration duration) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor()
+        long periodNanos = TimeUnit.SECONDS.toNanos(1).intdiv(rate).longValue()
+        try {
+            scheduler.scheduleAtFixedRate({ send() } as Runnable, 0, periodNanos, TimeUnit.NANOSECONDS)
+            Thread.sleep(duration.toMillis())
+        } finally {
+            scheduler.shutdownNow()
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30)
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+        return mix.collect { TrafficClass c -> result(c.name()) }
+    }
+
+    private void send() {
+        TrafficClass trafficClass = choose()
+        List<String> bodies = trafficClass.bodies()
+        String body = bodies.get(ThreadLocalRandom.current().nextInt(bodies.size()))
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .header('Content-Type', 'application/json')
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build()
+        long start = System.nanoTime()
+        outstanding.incrementAndGet()
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete { HttpResponse<String> response, Throwable t ->
+                    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)
+                    if (t != null || response.statusCode() != 200 || response.body().contains('"error":{')) {
+                        errors.get(trafficClass.name()).incrementAndGet()
+                    }
+                    latencies.get(trafficClass.name()).add(micros)
+                    outstanding.decrementAndGet()
+                }
+    }
+
+    private TrafficClass choose() {
+        int n = ThreadLocalRandom.current().nextInt(totalWeight)
+        for (TrafficClass c : mix) {
+            n -= c.weight()
+            if (n < 0) {
+                return c
+            }
+        }
+        return mix.last()
+    }
+
+    private Result result(String name) {
+        long[] sorted = latencies.get(name).collect { Long l -> l.longValue() } as long[]
+        Arrays.sort(sorted)
+        return new Result(name, sorted.length, errors.get(name).get(),
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                sorted.length > 0 ? sorted[sorted.length - 1] : 0)
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0
+        }
+        int index = (int) Math.ceil(percent / 100d * sorted.length) - 1
+        return sorted[Math.max(index, 0)]
+    }
+}
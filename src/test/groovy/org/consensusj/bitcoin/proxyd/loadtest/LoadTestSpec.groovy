@@ -0,0 +1,76 @@
+package org.consensusj.bitcoin.proxyd.loadtest
+
+import io.micronaut.context.ApplicationContext
+import io.micronaut.runtime.server.EmbeddedServer
+import spock.lang.AutoCleanup
+import spock.lang.IgnoreIf
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+import static org.consensusj.bitcoin.proxyd.loadtest.LoadGenerator.TrafficClass
+
+/**
+ * End-to-end load test of the proxy against a {@link StubNode}, with synthetic chain tips. Only runs when the
+ * {@code loadtest} system property is set, use {@code ./gradlew loadTest} with optional
+ * {@code -Ploadtest.rate=<requests/s>}, {@code -Ploadtest.duration=<seconds>},
+ * {@code -Ploadtest.latency=<upstream ms>}, {@code -Ploadtest.payload=<upstream result bytes>} and
+ * {@code -Ploadtest.blockInterval=<seconds>}.
+ */
+@IgnoreIf({ !System.getProperty('loadtest') })
+class LoadTestSpec extends Specification {
+    static final int rate = Integer.getInteger('loadtest.rate', 500)
+    static final Duration duration = Duration.ofSeconds(Long.getLong('loadtest.duration', 30))
+    static final Duration latency = Duration.ofMillis(Long.getLong('loadtest.latency', 5))
+    static final int payload = Integer.getInteger('loadtest.payload', 1024)
+    static final Duration blockInterval = Duration.ofSeconds(Long.getLong('loadtest.blockInterval', 5))
+
+    @Shared @AutoCleanup StubNode node = new StubNode().defaults(latency, payload).start()
+    @Shared @AutoCleanup EmbeddedServer server = ApplicationContext.run(EmbeddedServer, [
+            'btcproxyd.rpcproxy.network-id': 'org.bitcoin.regtest',
+            'btcproxyd.rpcproxy.uri'       : node.uri.toString(),
+            'btcproxyd.rpcproxy.allow-list': ['getblockcount', 'getbestblockhash', 'getblockchaininfo', 'getblockhash',
+                                              'btcproxy.proxyinfo', 'omniproxy.listproperties', 'omniproxy.getproperty'],
+            'omniproxyd.enabled'           : true
+    ], 'loadtest')
+    @Shared ScheduledExecutorService miner = Executors.newSingleThreadScheduledExecutor()
+
+    void cleanupSpec() {
+        miner.shutdownNow()
+        server?.applicationContext?.getBean(SyntheticChainTips)?.close()
+    }
+
+    void "proxy sustains a mixed load"() {
+        given:
+        var tips = server.applicationContext.getBean(SyntheticChainTips)
+        tips.emit(node.tip())
+        miner.scheduleAtFixedRate({ tips.emit(node.advanceTip()) }, blockInterval.toMillis(), blockInterval.toMillis(),
+                TimeUnit.MILLISECONDS)
+        var generator = new LoadGenerator(server.URI, [
+                new TrafficClass('passthrough', 30, (1..100).collect { request('getblockhash', "[${it}]") }),
+                new TrafficClass('cached', 40, ['getblockcount', 'getbestblockhash', 'getblockchaininfo'].collect { request(it) }),
+                new TrafficClass('extra', 10, [request('btcproxy.proxyinfo')]),
+                new TrafficClass('omni', 20, [request('omniproxy.listproperties')] +
+                        (1..10).collect { request('omniproxy.getproperty', "[${it}]") })
+        ])
+
+        when:
+        var results = generator.run(rate, duration)
+        println "Load test: ${rate} requests/s for ${duration.toSeconds()}s, upstream latency ${latency.toMillis()} ms, " +
+                "payload ${payload} bytes, block every ${blockInterval.toSeconds()}s"
+        results.each { println it }
+        println "Upstream requests: ${node.requestCount}"
+
+        then:
+        results.every { it.count() > 0 }
+        results.sum { it.errors() } == 0
+    }
+
+    private static String request(String method, String params = '[]') {
+        return """{"jsonrpc":"2.0","id":1,"method":"${method}","params":${params}}"""
+    }
+}
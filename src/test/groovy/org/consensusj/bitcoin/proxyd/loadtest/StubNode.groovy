@@ -0,0 +1,177 @@
+package org.consensusj.bitcoin.proxyd.loadtest
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.transform.CompileStatic
+import org.bitcoinj.base.Sha256Hash
+import org.consensusj.bitcoin.json.pojo.ChainTip
+
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-process stub of a Bitcoin Core (or Omni Core) JSON-RPC server for load tests. Every method succeeds,
+ * after a configurable latency, with a result of a configurable size. A few methods return results
+ * consistent with a synthetic chain whose tip is advanced by {@link #advanceTip()}. Batches are supported.
+ */
+@CompileStatic
+class StubNode implements Closeable {
+    private static final String OMNI_PROPERTY = '{"propertyid":%d,"name":"Property %<d","category":"","subcategory":"",' +
+            '"data":"","url":"","divisible":true,"issuer":"mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn",' +
+            '"creationtxid":"%064x","fixedissuance":false,"managedissuance":false,"freezingenabled":false,' +
+            '"totaltokens":"1000.00000000"}'
+    private final ObjectMapper mapper = new ObjectMapper()
+    private final HttpServer server
+    private final ExecutorService executor = Executors.newCachedThreadPool()
+    private final Map<String, Duration> latencies = new ConcurrentHashMap<>()
+    private final Map<String, String> results = new ConcurrentHashMap<>()
+    private final AtomicLong height = new AtomicLong(100)
+    private final AtomicLong requests = new AtomicLong()
+    private volatile Duration defaultLatency = Duration.ZERO
+    private volatile String defaultResult = '"ok"'
+
+    StubNode() {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024)
+        server.createContext('/', this.&handle)
+        server.executor = executor
+        results.put('omni_listproperties', '[' + (1..50).collect { String.format(OMNI_PROPERTY, it, it) }.join(',') + ']')
+    }
+
+    StubNode start() {
+        server.start()
+        return this
+    }
+
+    URI getUri() {
+        return URI.create("http://127.0.0.1:${server.address.port}")
+    }
+
+    /**
+     * @param latency latency of methods without their own latency
+     * @param payloadBytes approximate size of the results of methods without their own result
+     */
+    StubNode defaults(Duration latency, int payloadBytes) {
+        defaultLatency = latency
+        defaultResult = stringResult(payloadBytes)
+        return this
+    }
+
+    StubNode latency(String method, Duration latency) {
+        latencies.put(method, latency)
+        return this
+    }
+
+    StubNode payload(String method, int payloadBytes) {
+        results.put(method, stringResult(payloadBytes))
+        return this
+    }
+
+    /**
+     * Mine a synthetic block
+     *
+     * @return the new tip
+     */
+    ChainTip advanceTip() {
+        height.incrementAndGet()
+        return tip()
+    }
+
+    ChainTip tip() {
+        long h = height.get()
+        return new ChainTip(h, Sha256Hash.wrap(hashOf(h)), 0, 'active')
+    }
+
+    /**
+     * @return the number of requests (batch elements) handled so far
+     */
+    long getRequestCount() {
+        return requests.get()
+    }
+
+    @Override
+    void close() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            JsonNode request = mapper.readTree(exchange.requestBody)
+            String body
+            if (request.isArray()) {
+                List<String> responses = []
+                Duration latency = Duration.ZERO
+                for (JsonNode element : request) {
+                    latency = latency > latencyOf(element) ? latency : latencyOf(element)
+                    responses.add(respond(element))
+                }
+                sleep(latency)
+                body = '[' + responses.join(',') + ']'
+            } else {
+                sleep(latencyOf(request))
+                body = respond(request)
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8)
+            exchange.responseHeaders.add('Content-Type', 'application/json')
+            exchange.sendResponseHeaders(200, bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(500, -1)
+        } finally {
+            exchange.close()
+        }
+    }
+
+    private Duration latencyOf(JsonNode request) {
+        return latencies.getOrDefault(request.path('method').asText(), defaultLatency)
+    }
+
+    private String respond(JsonNode request) {
+        requests.incrementAndGet()
+        String method = request.path('method').asText()
+        JsonNode params = request.path('params')
+        long h = height.get()
+        String result
+        switch (method) {
+            case 'getchaintips':
+                result = "[{\"height\":${h},\"hash\":\"${hashOf(h)}\",\"branchlen\":0,\"status\":\"active\"}]"
+                break
+            case 'getblockcount':
+                result = Long.toString(h)
+                break
+            case 'getbestblockhash':
+                result = "\"${hashOf(h)}\""
+                break
+            case 'getblockhash':
+                result = "\"${hashOf(params.path(0).asLong(h))}\""
+                break
+            case 'omni_getproperty':
+                long id = params.path(0).asLong(1)
+                result = String.format(OMNI_PROPERTY, id, id)
+                break
+            default:
+                result = results.getOrDefault(method, defaultResult)
+        }
+        return "{\"result\":${result},\"error\":null,\"id\":${request.path('id')}}"
+    }
+
+    private static String hashOf(long height) {
+        return String.format('%064x', height)
+    }
+
+    private static String stringResult(int bytes) {
+        return '"' + 'a' * Math.max(bytes - 2, 0) + '"'
+    }
+
+    private static void sleep(Duration latency) {
+        if (!latency.isZero()) {
+            Thread.sleep(latency.toMillis())
+        }
+    }
+}
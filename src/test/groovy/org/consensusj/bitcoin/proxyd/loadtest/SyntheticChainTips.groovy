@@ -0,0 +1,32 @@
+package org.consensusj.bitcoin.proxyd.loadtest
+
+import io.micronaut.context.annotation.Replaces
+import io.micronaut.context.annotation.Requires
+import io.reactivex.rxjava3.processors.BehaviorProcessor
+import jakarta.inject.Singleton
+import org.consensusj.bitcoin.json.pojo.ChainTip
+import org.consensusj.bitcoin.rx.ChainTipPublisher
+import org.reactivestreams.Subscriber
+
+/**
+ * A {@link ChainTipPublisher} driven by the load test (in the {@code loadtest} environment only)
+ */
+@Singleton
+@Replaces(ChainTipPublisher)
+@Requires(env = 'loadtest')
+class SyntheticChainTips implements ChainTipPublisher {
+    private final BehaviorProcessor<ChainTip> tips = BehaviorProcessor.create()
+
+    void emit(ChainTip tip) {
+        tips.onNext(tip)
+    }
+
+    @Override
+    void subscribe(Subscriber<? super ChainTip> subscriber) {
+        tips.subscribe(subscriber)
+    }
+
+    void close() {
+        tips.onComplete()
+    }
+}